@@ -173,6 +173,10 @@ public class SubsamplingScaleImageView
     // Map of zoom level to tile grid
     private Map<Integer, List<Tile>> tileMap;
 
+    // Bitmaps of tiles that have gone off screen, kept so they don't need to be decoded again when they come back
+    private static final long TILE_CACHE_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 16, 32 * 1024 * 1024);
+    private final TileCache<Tile> tileCache = new TileCache<>(TILE_CACHE_BYTES);
+
     // Image orientation setting
     private int orientation = ORIENTATION_0;
 
@@ -573,6 +577,7 @@ public class SubsamplingScaleImageView
             }
             tileMap = null;
         }
+        tileCache.clear();
         setGestureDetector(getContext());
     }
 
@@ -1355,7 +1360,7 @@ public class SubsamplingScaleImageView
 
             List<Tile> baseGrid = tileMap.get(fullImageSampleSize);
             for (Tile baseTile : baseGrid) {
-                TileLoadTask task = new TileLoadTask(this, decoder, baseTile);
+                TileLoadTask task = new TileLoadTask(this, decoder, baseTile, null);
                 execute(task);
             }
             refreshRequiredTiles(true);
@@ -1380,24 +1385,21 @@ public class SubsamplingScaleImageView
                 if (tile.sampleSize < sampleSize || (tile.sampleSize > sampleSize
                         && tile.sampleSize != fullImageSampleSize)) {
                     tile.visible = false;
-                    if (tile.bitmap != null) {
-                        tile.bitmap.recycle();
-                        tile.bitmap = null;
-                    }
+                    releaseTile(tile);
                 }
                 if (tile.sampleSize == sampleSize) {
                     if (tileVisible(tile)) {
                         tile.visible = true;
-                        if (!tile.loading && tile.bitmap == null && load) {
-                            TileLoadTask task = new TileLoadTask(this, decoder, tile);
+                        // cached tiles are cheap to put back, so do that even while scrolling/panning
+                        if (!tile.loading && tile.bitmap == null && !restoreCachedTile(tile) && load) {
+                            fileSRect(tile.sRect, tileReuseRect);
+                            Bitmap reuse = tileCache.takeReusable(tileReuseRect, tile.sampleSize);
+                            TileLoadTask task = new TileLoadTask(this, decoder, tile, reuse);
                             execute(task);
                         }
                     } else if (tile.sampleSize != fullImageSampleSize) {
                         tile.visible = false;
-                        if (tile.bitmap != null) {
-                            tile.bitmap.recycle();
-                            tile.bitmap = null;
-                        }
+                        releaseTile(tile);
                     }
                 } else if (tile.sampleSize == fullImageSampleSize) {
                     tile.visible = true;
@@ -1406,6 +1408,27 @@ public class SubsamplingScaleImageView
         }
     }
 
+    /**
+     * Moves a tile's bitmap into the tile cache, if it has one.
+     */
+    private void releaseTile(Tile tile) {
+        if (tile.bitmap != null) {
+            tileCache.put(tile, tile.bitmap, tile.fileSRect, tile.sampleSize);
+            tile.bitmap = null;
+        }
+    }
+
+    /**
+     * @return true if the tile's bitmap was in the tile cache and has been put back
+     */
+    private boolean restoreCachedTile(Tile tile) {
+        Bitmap cached = tileCache.take(tile);
+        if (cached == null) return false;
+        tile.bitmap = cached;
+        invalidate();
+        return true;
+    }
+
     /**
      * Determine whether tile is visible.
      */
@@ -1730,12 +1753,15 @@ public class SubsamplingScaleImageView
         private final WeakReference<SubsamplingScaleImageView> viewRef;
         private final WeakReference<ImageRegionDecoder> decoderRef;
         private final WeakReference<Tile> tileRef;
+        // a bitmap the tile can be decoded into, owned by this task
+        private Bitmap reuse;
         private Exception exception;
 
-        TileLoadTask(SubsamplingScaleImageView view, ImageRegionDecoder decoder, Tile tile) {
+        TileLoadTask(SubsamplingScaleImageView view, ImageRegionDecoder decoder, Tile tile, @Nullable Bitmap reuse) {
             this.viewRef = new WeakReference<>(view);
             this.decoderRef = new WeakReference<>(decoder);
             this.tileRef = new WeakReference<>(tile);
+            this.reuse = reuse;
             tile.loading = true;
         }
 
@@ -1754,7 +1780,9 @@ public class SubsamplingScaleImageView
                             if (view.source.getSRegion() != null) {
                                 tile.fileSRect.offset(view.source.getSRegion().left, view.source.getSRegion().top);
                             }
-                            return decoder.decodeRegion(tile.fileSRect, tile.sampleSize);
+                            Bitmap reuse = this.reuse;
+                            this.reuse = null;
+                            return decoder.decodeRegion(tile.fileSRect, tile.sampleSize, reuse);
                         } else {
                             tile.loading = false;
                         }
@@ -1776,6 +1804,11 @@ public class SubsamplingScaleImageView
 
         @Override
         protected void onPostExecute(Bitmap bitmap) {
+            if (reuse != null) {
+                // the tile wasn't decoded after all
+                reuse.recycle();
+                reuse = null;
+            }
             final SubsamplingScaleImageView subsamplingScaleImageView = viewRef.get();
             final Tile tile = tileRef.get();
             if (subsamplingScaleImageView != null && tile != null) {
@@ -2003,6 +2036,9 @@ public class SubsamplingScaleImageView
         return exifOrientation;
     }
 
+    // scratch rect for working out which cached bitmaps a tile decode can reuse
+    private final Rect tileReuseRect = new Rect();
+
     private void execute(AsyncTask<Void, Void, ?> asyncTask) {
         asyncTask.executeOnExecutor(executor);
     }
@@ -0,0 +1,170 @@
+package com.davemorrissey.labs.subscaleview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.*;
+
+/**
+ * Holds on to the bitmaps of tiles that have gone off screen, so that panning or zooming back to them doesn't need
+ * them to be decoded again. The cache is bounded by bitmap bytes; the least recently cached bitmaps fall out first,
+ * into a small set of bitmaps that new tile decodes can reuse as {@link android.graphics.BitmapFactory.Options#inBitmap}
+ * targets, instead of allocating new ones.
+ * <p>
+ * Region decoders write into a reused bitmap without resizing it, so a bitmap is only handed out for reuse to a tile
+ * whose decoded size is known to be exactly the same as that of the tile it came from. That is the case for tiles of
+ * the same source size at the same sample size, and for any tiles whose source size divides evenly into the same size
+ * at their own sample size, which lets bitmaps be reused across zoom levels.
+ *
+ * @param <K> the key tiles are cached by
+ */
+class TileCache<K> {
+    private static final int MAX_REUSABLE = 4;
+
+    private final long maxBytes;
+    // access order, so iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry> cached = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<Entry> reusable = new ArrayDeque<>();
+    private long cachedBytes;
+
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key        the tile the bitmap belongs to
+     * @param bitmap     the bitmap for the tile, which the tile no longer references
+     * @param fileSRect  the source rect the bitmap was decoded from
+     * @param sampleSize the sample size the bitmap was decoded at
+     */
+    synchronized void put(@NonNull K key, @NonNull Bitmap bitmap, @NonNull Rect fileSRect, int sampleSize) {
+        Entry previous = cached.remove(key);
+        if (previous != null) {
+            cachedBytes -= previous.bitmap.getAllocationByteCount();
+            previous.bitmap.recycle();
+        }
+        Entry entry = new Entry(bitmap, new ReuseKey(fileSRect, sampleSize));
+        cached.put(key, entry);
+        cachedBytes += bitmap.getAllocationByteCount();
+        trim();
+    }
+
+    /**
+     * @return the cached bitmap for this tile, which is removed from the cache, or null if there is none
+     */
+    @Nullable
+    synchronized Bitmap take(@NonNull K key) {
+        Entry entry = cached.remove(key);
+        if (entry == null) return null;
+        cachedBytes -= entry.bitmap.getAllocationByteCount();
+        return entry.bitmap;
+    }
+
+    /**
+     * @return a bitmap that a decode of this source rect at this sample size can be written into, or null if there
+     * isn't one; the bitmap is removed from the cache
+     */
+    @Nullable
+    synchronized Bitmap takeReusable(@NonNull Rect fileSRect, int sampleSize) {
+        ReuseKey key = new ReuseKey(fileSRect, sampleSize);
+        for (Iterator<Entry> iterator = reusable.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.reuseKey.equals(key)) {
+                iterator.remove();
+                return entry.bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives back a bitmap from {@link #takeReusable(Rect, int)} that ended up not being used.
+     */
+    synchronized void putReusable(@NonNull Bitmap bitmap, @NonNull Rect fileSRect, int sampleSize) {
+        addReusable(new Entry(bitmap, new ReuseKey(fileSRect, sampleSize)));
+    }
+
+    synchronized void clear() {
+        for (Entry entry : cached.values()) {
+            entry.bitmap.recycle();
+        }
+        cached.clear();
+        cachedBytes = 0;
+        for (Entry entry : reusable) {
+            entry.bitmap.recycle();
+        }
+        reusable.clear();
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = cached.values().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            cachedBytes -= eldest.bitmap.getAllocationByteCount();
+            addReusable(eldest);
+        }
+    }
+
+    private void addReusable(Entry entry) {
+        if (!entry.bitmap.isMutable() || entry.bitmap.isRecycled()) {
+            entry.bitmap.recycle();
+            return;
+        }
+        reusable.addFirst(entry);
+        while (reusable.size() > MAX_REUSABLE) {
+            reusable.removeLast().bitmap.recycle();
+        }
+    }
+
+    private static class Entry {
+        private final Bitmap bitmap;
+        private final ReuseKey reuseKey;
+
+        private Entry(Bitmap bitmap, ReuseKey reuseKey) {
+            this.bitmap = bitmap;
+            this.reuseKey = reuseKey;
+        }
+    }
+
+    /**
+     * Identifies the size of a decoded region, without having to know how the decoder rounds when the sample size
+     * doesn't divide the source size evenly.
+     */
+    private static class ReuseKey {
+        private final int width;
+        private final int height;
+        // 0 if the width and height are the exact decoded size
+        private final int sampleSize;
+
+        private ReuseKey(Rect fileSRect, int sampleSize) {
+            int width = fileSRect.width();
+            int height = fileSRect.height();
+            if (width % sampleSize == 0 && height % sampleSize == 0) {
+                this.width = width / sampleSize;
+                this.height = height / sampleSize;
+                this.sampleSize = 0;
+            } else {
+                this.width = width;
+                this.height = height;
+                this.sampleSize = sampleSize;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ReuseKey)) return false;
+            ReuseKey other = (ReuseKey) o;
+            return width == other.width && height == other.height && sampleSize == other.sampleSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * width + height) + sampleSize;
+        }
+    }
+}
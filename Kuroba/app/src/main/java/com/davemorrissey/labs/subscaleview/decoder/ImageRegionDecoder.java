@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.*;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.davemorrissey.labs.subscaleview.ImageSource;
 
@@ -52,6 +53,21 @@ public interface ImageRegionDecoder {
     @NonNull
     Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize);
 
+    /**
+     * Decode a region of the image with the given sample size, reusing an existing bitmap's memory if possible. The
+     * default implementation ignores the bitmap and calls {@link #decodeRegion(Rect, int)}.
+     *
+     * @param sRect      Source image rectangle to decode.
+     * @param sampleSize Sample size.
+     * @param reuse      A mutable bitmap that is exactly the size the decoded region will be, which nothing else
+     *                   references anymore, or null.
+     * @return The decoded region; this may or may not be the reused bitmap.
+     */
+    @NonNull
+    default Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize, @Nullable Bitmap reuse) {
+        return decodeRegion(sRect, sampleSize);
+    }
+
     /**
      * Status check. Should return false before initialisation and after recycle.
      *
@@ -116,18 +116,16 @@ public class SkiaImageRegionDecoder
     @Override
     @NonNull
     public Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize) {
+        return decodeRegion(sRect, sampleSize, null);
+    }
+
+    @Override
+    @NonNull
+    public Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize, @Nullable Bitmap reuse) {
         getDecodeLock().lock();
         try {
             if (decoder != null && !decoder.isRecycled()) {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inSampleSize = sampleSize;
-                options.inPreferredConfig = bitmapConfig;
-                Bitmap bitmap = decoder.decodeRegion(sRect, options);
-                if (bitmap == null) {
-                    throw new RuntimeException(
-                            "Skia image decoder returned null bitmap - image format may not be supported");
-                }
-                return bitmap;
+                return decodeRegion(decoder, sRect, sampleSize, bitmapConfig, reuse);
             } else {
                 throw new IllegalStateException("Cannot decode region after decoder has been recycled");
             }
@@ -136,6 +134,37 @@ public class SkiaImageRegionDecoder
         }
     }
 
+    /**
+     * Decoded bitmaps are mutable, so that they can be reused for later decodes once they are no longer displayed.
+     */
+    @NonNull
+    static Bitmap decodeRegion(
+            BitmapRegionDecoder decoder, Rect sRect, int sampleSize, Bitmap.Config config, @Nullable Bitmap reuse
+    ) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+        Bitmap bitmap = null;
+        if (reuse != null && reuse.isMutable() && !reuse.isRecycled() && reuse.getConfig() == config) {
+            options.inBitmap = reuse;
+            try {
+                bitmap = decoder.decodeRegion(sRect, options);
+            } catch (IllegalArgumentException e) {
+                // the bitmap couldn't be reused after all; decode into a new one
+                options.inBitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            options.inBitmap = null;
+            bitmap = decoder.decodeRegion(sRect, options);
+        }
+        if (bitmap == null) {
+            throw new RuntimeException("Skia image decoder returned null bitmap - image format may not be supported");
+        }
+        return bitmap;
+    }
+
     @Override
     public synchronized boolean isReady() {
         return decoder != null && !decoder.isRecycled();
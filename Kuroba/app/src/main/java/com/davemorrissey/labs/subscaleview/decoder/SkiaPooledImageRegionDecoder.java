@@ -0,0 +1,204 @@
+package com.davemorrissey.labs.subscaleview.decoder;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.*;
+import android.net.Uri;
+
+import androidx.annotation.Keep;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.davemorrissey.labs.subscaleview.ImageSource;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An implementation of {@link ImageRegionDecoder} that keeps a pool of {@link SkiaImageRegionDecoder}s open over the
+ * same source. {@link BitmapRegionDecoder} is synchronized internally, so a single instance decodes tiles one at a time
+ * no matter how many threads are loading them; with a pool, tiles are decoded in parallel.
+ * <p>
+ * Only file sources can be cheaply opened more than once, so any other source uses a single decoder. Additional
+ * decoders are only opened when all the open ones are busy, up to a limit based on the number of cores and on the
+ * memory available.
+ */
+public class SkiaPooledImageRegionDecoder
+        implements ImageRegionDecoder {
+    private static final int MAX_DECODERS = 4;
+
+    private final Bitmap.Config bitmapConfig;
+
+    private Context context;
+    private ImageSource source;
+    private int maxDecoders = 1;
+
+    private final List<SkiaImageRegionDecoder> decoders = new ArrayList<>();
+    private final ArrayDeque<SkiaImageRegionDecoder> available = new ArrayDeque<>();
+    private int opening;
+    private boolean recycled;
+
+    @Keep
+    @SuppressWarnings("unused")
+    public SkiaPooledImageRegionDecoder() {
+        this(null);
+    }
+
+    @SuppressWarnings({"WeakerAccess", "SameParameterValue"})
+    public SkiaPooledImageRegionDecoder(@Nullable Bitmap.Config bitmapConfig) {
+        this.bitmapConfig = bitmapConfig;
+    }
+
+    @Override
+    @NonNull
+    public Point init(Context context, @NonNull ImageSource source)
+            throws Exception {
+        SkiaImageRegionDecoder first = new SkiaImageRegionDecoder(bitmapConfig);
+        Point dimensions = first.init(context, source);
+        synchronized (this) {
+            this.context = context.getApplicationContext();
+            this.source = source;
+            this.maxDecoders = calculateMaxDecoders(context, getSourceFile(source));
+            decoders.add(first);
+            available.add(first);
+        }
+        return dimensions;
+    }
+
+    @Override
+    @NonNull
+    public Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize) {
+        return decodeRegion(sRect, sampleSize, null);
+    }
+
+    @Override
+    @NonNull
+    public Bitmap decodeRegion(@NonNull Rect sRect, int sampleSize, @Nullable Bitmap reuse) {
+        SkiaImageRegionDecoder decoder = acquire();
+        try {
+            return decoder.decodeRegion(sRect, sampleSize, reuse);
+        } finally {
+            release(decoder);
+        }
+    }
+
+    @Override
+    public synchronized boolean isReady() {
+        return !recycled && !decoders.isEmpty();
+    }
+
+    @Override
+    public synchronized void recycle() {
+        recycled = true;
+        // busy decoders are recycled when they are released
+        for (SkiaImageRegionDecoder decoder : available) {
+            decoder.recycle();
+        }
+        decoders.removeAll(available);
+        available.clear();
+        context = null;
+        source = null;
+        notifyAll();
+    }
+
+    private SkiaImageRegionDecoder acquire() {
+        synchronized (this) {
+            while (true) {
+                if (recycled) {
+                    throw new IllegalStateException("Cannot decode region after decoder has been recycled");
+                }
+                if (!available.isEmpty()) {
+                    return available.poll();
+                }
+                if (decoders.size() + opening < maxDecoders) {
+                    opening++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a decoder", e);
+                }
+            }
+        }
+
+        // opening a decoder reads the image headers, so don't hold up other threads while doing it
+        SkiaImageRegionDecoder decoder = null;
+        try {
+            Context context;
+            ImageSource source;
+            synchronized (this) {
+                context = this.context;
+                source = this.source;
+            }
+            if (context != null && source != null) {
+                decoder = new SkiaImageRegionDecoder(bitmapConfig);
+                decoder.init(context, source);
+            }
+        } catch (Exception e) {
+            Logger.w(this, "Failed to open an additional region decoder", e);
+            decoder = null;
+        }
+
+        synchronized (this) {
+            opening--;
+            if (decoder != null && !recycled) {
+                decoders.add(decoder);
+                return decoder;
+            }
+            if (decoder != null) {
+                decoder.recycle();
+            } else {
+                // don't keep trying to open more decoders if it doesn't work
+                maxDecoders = Math.max(1, decoders.size());
+            }
+            notifyAll();
+        }
+        // wait for one of the open decoders instead
+        return acquire();
+    }
+
+    private synchronized void release(SkiaImageRegionDecoder decoder) {
+        if (recycled) {
+            decoder.recycle();
+            decoders.remove(decoder);
+        } else {
+            available.add(decoder);
+        }
+        notifyAll();
+    }
+
+    @Nullable
+    private static File getSourceFile(ImageSource source) {
+        Uri uri = source.getUri();
+        String uriString = uri != null ? uri.toString() : "";
+        if (uriString.startsWith(ImageSource.FILE_PREFIX) && !uriString.startsWith(ImageSource.ASSET_PREFIX)) {
+            return new File(uriString.substring(ImageSource.FILE_PREFIX.length()));
+        }
+        return null;
+    }
+
+    /**
+     * Each decoder holds on to its own copy of the image's index in native memory, roughly proportional to the file's
+     * size, so open fewer decoders for large files or when memory is tight.
+     */
+    private static int calculateMaxDecoders(Context context, @Nullable File file) {
+        if (file == null || !file.isFile()) return 1;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null || activityManager.isLowRamDevice()) return 1;
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        if (memoryInfo.lowMemory) return 1;
+
+        int count = Math.min(Runtime.getRuntime().availableProcessors(), MAX_DECODERS);
+        long budget = memoryInfo.availMem / 16;
+        while (count > 1 && file.length() * count > budget) {
+            count--;
+        }
+        return Math.max(1, count);
+    }
+}
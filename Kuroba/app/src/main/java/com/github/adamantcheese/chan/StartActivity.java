@@ -54,10 +54,12 @@ import com.github.adamantcheese.chan.core.manager.*;
 import com.github.adamantcheese.chan.core.model.orm.*;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.repository.SiteRepository;
+import com.github.adamantcheese.chan.core.saver.ImageSaver;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.core.site.SiteResolver;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
+import com.github.adamantcheese.chan.ui.cell.PostTextCache;
 import com.github.adamantcheese.chan.ui.controller.*;
 import com.github.adamantcheese.chan.ui.helper.ImagePickDelegate;
 import com.github.adamantcheese.chan.ui.helper.RuntimePermissionsHelper;
@@ -109,6 +111,8 @@ public class StartActivity
     WatchManager watchManager;
     @Inject
     FilterWatchManager filterWatchManager;
+    @Inject
+    ImageSaver imageSaver;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -132,6 +136,7 @@ public class StartActivity
         imagePickDelegate = new ImagePickDelegate(this);
         runtimePermissionsHelper = new RuntimePermissionsHelper(this);
         updateManager = new UpdateManager(this);
+        imageSaver.resumeSavedQueue(this);
 
         // Setup base controllers, and decide if to use the split layout for tablets
         drawerController = new DrawerController(this);
@@ -473,6 +478,7 @@ public class StartActivity
     @Override
     public void onConfigurationChanged(@NonNull Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
+        PostTextCache.clear();
 
         if (isAndroid10()
                 && (newConfig.uiMode & Configuration.UI_MODE_NIGHT_MASK) != currentNightModeBits
@@ -565,6 +571,7 @@ public class StartActivity
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(Chan.ActivityForegroundStatus status) {
         if (status == IN_BACKGROUND) {
+            // purging writes out any queued loadable updates first
             DatabaseUtils.runTaskAsync(databaseLoadableManager.purgeOld());
             File requestedFiles = new File(getCacheDir(), "requested");
             File[] files = requestedFiles.listFiles();
@@ -58,6 +58,8 @@ public class DatabaseHelper
 
     public DatabaseHelper() {
         super(getAppContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        // lets reads run on their own connections while a write is in progress, see DatabaseUtils
+        setWriteAheadLoggingEnabled(true);
     }
 
     private <T> Dao<T, Integer> getDaoForClass(Class<T> c) {
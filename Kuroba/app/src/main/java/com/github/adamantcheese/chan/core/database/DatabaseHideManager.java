@@ -30,7 +30,7 @@ public class DatabaseHideManager {
      * to already hidden posts and if there are hides them as well.
      */
     public List<Post> filterHiddenPosts(List<Post> posts, int siteId, String board) {
-        return DatabaseUtils.runTask(() -> {
+        return DatabaseUtils.runReadTask(() -> {
             List<Integer> postNoList = new ArrayList<>(posts.size());
             for (Post post : posts) {
                 postNoList.add(post.no);
@@ -93,8 +93,7 @@ public class DatabaseHideManager {
 
     private void hideRepliesToAlreadyHiddenPosts(
             Map<Integer, Post> postsFastLookupMap, Map<Integer, PostHide> hiddenPostsLookupMap
-    )
-            throws SQLException {
+    ) {
 
         List<PostHide> newHiddenPosts = new ArrayList<>();
 
@@ -126,9 +125,13 @@ public class DatabaseHideManager {
             return;
         }
 
-        for (PostHide postHide : newHiddenPosts) {
-            helper.getPostHideDao().createIfNotExists(postHide);
-        }
+        // this is called from a read, the lookup map is already up to date so the write can happen whenever
+        DatabaseUtils.runTaskAsync(() -> {
+            for (PostHide postHide : newHiddenPosts) {
+                helper.getPostHideDao().createIfNotExists(postHide);
+            }
+            return null;
+        });
     }
 
     private void applyFiltersToReplies(List<Post> posts, Map<Integer, Post> postsFastLookupMap) {
@@ -16,6 +16,8 @@
  */
 package com.github.adamantcheese.chan.core.database;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import android.annotation.SuppressLint;
 
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
@@ -23,6 +25,7 @@ import com.github.adamantcheese.chan.core.repository.SiteRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.features.theme.Highlightable;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.j256.ormlite.stmt.*;
 import com.j256.ormlite.support.DatabaseConnection;
 
@@ -31,12 +34,19 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
 
 public class DatabaseLoadableManager {
     private final DatabaseHelper helper;
     private final SiteRepository siteRepository;
 
     private static final long HISTORY_LIMIT = 250L;
+    // how long queued loadable updates wait for more changes before they're written out
+    private static final long FLUSH_DELAY_MS = 2000L;
+
+    // Write-behind queue of loadables to update, by id; a loadable updated multiple times before a flush is written once
+    private final Map<Integer, Loadable> pendingUpdates = new LinkedHashMap<>();
+    private ScheduledFuture<?> pendingFlush;
     @SuppressLint("ConstantLocale")
     public static final SimpleDateFormat EPOCH_DATE_FORMAT =
             new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
@@ -79,6 +89,55 @@ public class DatabaseLoadableManager {
         }
     }
 
+    /**
+     * Queue the loadable to be written to the database soon, instead of right away. Updates to the same loadable before
+     * then are written once, in a single transaction with every other queued loadable.<br>
+     * Anything queued is also written before any read from this class, so reads always see the latest state.
+     */
+    public void queueUpdate(Loadable loadable) {
+        if (!loadable.isThreadMode() || loadable.id == 0) return;
+        synchronized (pendingUpdates) {
+            pendingUpdates.put(loadable.id, loadable);
+            if (pendingFlush == null) {
+                pendingFlush = BackgroundUtils.backgroundScheduledService.schedule(this::flushPendingUpdates,
+                        FLUSH_DELAY_MS,
+                        MILLISECONDS
+                );
+            }
+        }
+    }
+
+    /**
+     * Write out any queued loadable updates now, in the background; call this at lifecycle boundaries.
+     */
+    public void flushPendingUpdates() {
+        synchronized (pendingUpdates) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (pendingUpdates.isEmpty()) return;
+        }
+        DatabaseUtils.runTaskAsync(() -> {
+            writePendingUpdates();
+            return null;
+        });
+    }
+
+    // Must be called on the database thread
+    private void writePendingUpdates()
+            throws SQLException {
+        List<Loadable> toWrite;
+        synchronized (pendingUpdates) {
+            if (pendingUpdates.isEmpty()) return;
+            toWrite = new ArrayList<>(pendingUpdates.values());
+            pendingUpdates.clear();
+        }
+        for (Loadable loadable : toWrite) {
+            helper.getLoadableDao().update(loadable);
+        }
+    }
+
     /**
      * Call this when you use a thread loadable as a foreign object on your table
      *
@@ -101,6 +160,7 @@ public class DatabaseLoadableManager {
 
     private Callable<Loadable> getLoadable(final Loadable loadable) {
         return () -> {
+            writePendingUpdates();
             QueryBuilder<Loadable, Integer> builder = helper.getLoadableDao().queryBuilder();
             List<Loadable> results = builder
                     .where()
@@ -134,7 +194,10 @@ public class DatabaseLoadableManager {
     }
 
     public Callable<List<Loadable>> getLoadables(Site site) {
-        return () -> helper.getLoadableDao().queryForEq("site", site.id());
+        return () -> {
+            writePendingUpdates();
+            return helper.getLoadableDao().queryForEq("site", site.id());
+        };
     }
 
     public Callable<Object> deleteLoadables(List<Loadable> siteLoadables) {
@@ -166,6 +229,7 @@ public class DatabaseLoadableManager {
      */
     public Callable<Void> purgeOld() {
         return () -> {
+            writePendingUpdates();
             DatabaseConnection connection = helper.getLoadableDao().startThreadConnection();
             Calendar oneMonthAgo = GregorianCalendar.getInstance();
             oneMonthAgo.add(Calendar.MONTH, -1);
@@ -189,6 +253,7 @@ public class DatabaseLoadableManager {
      */
     public Callable<Void> clearHistory() {
         return () -> {
+            writePendingUpdates();
             UpdateBuilder<Loadable, Integer> builder =
                     helper.getLoadableDao().updateBuilder().updateColumnValue("lastLoadDate", EPOCH_DATE);
             builder.where().notIn("id", helper.getPinDao().queryBuilder().selectColumns("loadable_id"));
@@ -202,6 +267,7 @@ public class DatabaseLoadableManager {
      */
     public Callable<List<History>> getHistory() {
         return () -> {
+            writePendingUpdates();
             List<History> history = new ArrayList<>();
             for (Loadable l : helper
                     .getLoadableDao()
@@ -17,6 +17,7 @@
 package com.github.adamantcheese.chan.core.database;
 
 import static com.github.adamantcheese.chan.Chan.instance;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import androidx.annotation.NonNull;
 
@@ -26,11 +27,21 @@ import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.misc.TransactionManager;
 
 import java.sql.SQLException;
+import java.util.Locale;
 import java.util.concurrent.*;
 
 public class DatabaseUtils {
-    // The database only allows for one connection at a time, so we use this to schedule all database operations.
+    // The database only allows for one writer at a time, so we use this to schedule all database writes.
     private static final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
+    // With write-ahead logging, read-only queries get their own connections and run alongside the writer and each other.
+    // Reads don't wait for writes that are still queued, so only use this for data that isn't written asynchronously
+    // right before it is read.
+    private static final ExecutorService databaseReadExecutor = Executors.newFixedThreadPool(3);
+
+    private static final QueryStats writeStats = new QueryStats();
+    private static final QueryStats readStats = new QueryStats();
+    // tasks that take longer than this are logged, in debug builds
+    private static final long SLOW_TASK_MS = 50;
 
     /**
      * Summary of the database tables row count, for the developer screen.
@@ -88,12 +99,37 @@ public class DatabaseUtils {
     }
 
     public static <T> void runTaskAsync(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
-        databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult));
+        databaseExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult, true));
     }
 
     public static <T> T runTask(final Callable<T> taskCallable) {
+        return waitFor(databaseExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {}, true)));
+    }
+
+    /**
+     * Run a read-only task in parallel with other reads and the writer; it is not run in a transaction.
+     */
+    public static <T> void runReadTaskAsync(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
+        databaseReadExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult, false));
+    }
+
+    /**
+     * Run a read-only task in parallel with other reads and the writer, and wait for it; it is not run in a transaction.
+     */
+    public static <T> T runReadTask(final Callable<T> taskCallable) {
+        return waitFor(databaseReadExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {}, false)));
+    }
+
+    /**
+     * @return timing and queue depth for database tasks, for the developer screen
+     */
+    public static String getQueryStats() {
+        return "Writes: " + writeStats + "\nReads: " + readStats;
+    }
+
+    private static <T> T waitFor(Future<T> future) {
         try {
-            return databaseExecutor.submit(new DatabaseCallable<>(taskCallable, result -> {})).get();
+            return future.get();
         } catch (InterruptedException e) {
             // Since we don't rethrow InterruptedException we need to at least restore the
             // "interrupted" flag.
@@ -108,28 +144,82 @@ public class DatabaseUtils {
             implements Callable<T> {
         private final Callable<T> task;
         private final TaskResult<T> result;
+        private final boolean write;
+        private final QueryStats stats;
+        private final long submitTime = System.nanoTime();
 
-        public DatabaseCallable(Callable<T> task, @NonNull TaskResult<T> result) {
+        public DatabaseCallable(Callable<T> task, @NonNull TaskResult<T> result, boolean write) {
             this.task = task;
             this.result = result;
+            this.write = write;
+            stats = write ? writeStats : readStats;
+            stats.onQueued();
         }
 
         @Override
         public T call() {
+            long startTime = System.nanoTime();
             try {
-                DatabaseHelper databaseHelper = instance(DatabaseHelper.class);
-                synchronized (databaseHelper.getConnectionSource()) {
-                    final T res = TransactionManager.callInTransaction(databaseHelper.getConnectionSource(), task);
-                    BackgroundUtils.runOnMainThread(() -> result.onComplete(res));
-                    return res;
+                final T res;
+                if (write) {
+                    DatabaseHelper databaseHelper = instance(DatabaseHelper.class);
+                    synchronized (databaseHelper.getConnectionSource()) {
+                        res = TransactionManager.callInTransaction(databaseHelper.getConnectionSource(), task);
+                    }
+                } else {
+                    res = task.call();
                 }
+                BackgroundUtils.runOnMainThread(() -> result.onComplete(res));
+                return res;
             } catch (Exception e) {
                 Logger.e(this, "executeTask", e);
                 throw new RuntimeException(e);
+            } finally {
+                long endTime = System.nanoTime();
+                stats.onFinished(startTime - submitTime, endTime - startTime);
+                long ms = NANOSECONDS.toMillis(endTime - startTime);
+                if (ms >= SLOW_TASK_MS) {
+                    Logger.vd(this, "Slow " + (write ? "write" : "read") + " of " + ms + "ms for " + task.getClass());
+                }
             }
         }
     }
 
+    private static class QueryStats {
+        private int queued;
+        private int peakQueued;
+        private long count;
+        private long totalWaitNanos;
+        private long totalRunNanos;
+        private long maxRunNanos;
+
+        private synchronized void onQueued() {
+            queued++;
+            peakQueued = Math.max(peakQueued, queued);
+        }
+
+        private synchronized void onFinished(long waitNanos, long runNanos) {
+            queued--;
+            count++;
+            totalWaitNanos += waitNanos;
+            totalRunNanos += runNanos;
+            maxRunNanos = Math.max(maxRunNanos, runNanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ENGLISH,
+                    "%d done, avg %.1fms run (max %.1fms), avg %.1fms waiting; %d queued (peak %d)",
+                    count,
+                    count == 0 ? 0.0 : totalRunNanos / 1e6 / count,
+                    maxRunNanos / 1e6,
+                    count == 0 ? 0.0 : totalWaitNanos / 1e6 / count,
+                    queued,
+                    peakQueued
+            );
+        }
+    }
+
     public interface TaskResult<T> {
         void onComplete(T result);
     }
@@ -0,0 +1,127 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import android.text.TextUtils;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Filters;
+import com.github.adamantcheese.chan.features.filtering.FilterMatcher;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, versioned snapshot of a set of enabled filters.<br>
+ * Built once and shared between all the post parse tasks of a load, so that parsing doesn't need to go back to the
+ * database for every post. Filters are split by board (lazily, as boards are requested) and by filter type.
+ * A new snapshot is created by {@link FilterEngine} whenever the filters change.
+ */
+public class CompiledFilters {
+    public final int version;
+    private final Filters filters;
+    private final Map<String, BoardFilters> byBoard = new ConcurrentHashMap<>();
+
+    public CompiledFilters(int version, @NonNull List<Filter> enabledFilters) {
+        this.version = version;
+        // copy each filter so that edits made to database objects don't leak into this snapshot
+        Filters copy = new Filters();
+        for (Filter f : enabledFilters) {
+            copy.add(f.clone());
+        }
+        filters = copy;
+    }
+
+    /**
+     * @return all filters in this snapshot; do not modify the returned list
+     */
+    public Filters all() {
+        return filters;
+    }
+
+    /**
+     * @param board the board to get the filters for
+     * @return the subset of filters that apply to the given board, in their original order
+     */
+    @AnyThread
+    @NonNull
+    public BoardFilters forBoard(@NonNull Board board) {
+        String key = board.boardUniqueId();
+        BoardFilters boardFilters = byBoard.get(key);
+        if (boardFilters == null) {
+            // computing it twice on a race is harmless, both results are identical
+            boardFilters = new BoardFilters(board);
+            byBoard.put(key, boardFilters);
+        }
+        return boardFilters;
+    }
+
+    private static boolean matchesBoard(Filter filter, Board board) {
+        if (filter.allBoards || TextUtils.isEmpty(filter.boards)) return true;
+        for (String uniqueId : filter.boards.split(",")) {
+            if (board.matchesUniqueId(uniqueId)) return true;
+        }
+        return false;
+    }
+
+    public class BoardFilters {
+        private final Filters boardFilters = new Filters();
+        private final Map<FilterType, Filters> byType = new EnumMap<>(FilterType.class);
+        private final FilterMatcher matcher;
+
+        private BoardFilters(Board board) {
+            for (FilterType type : FilterType.values()) {
+                byType.put(type, new Filters());
+            }
+            for (Filter f : filters) {
+                if (!matchesBoard(f, board)) continue;
+                boardFilters.add(f);
+                for (FilterType type : FilterType.forFlags(f.type)) {
+                    //noinspection ConstantConditions
+                    byType.get(type).add(f);
+                }
+            }
+            matcher = new FilterMatcher(boardFilters);
+        }
+
+        /**
+         * @return all filters for this board; do not modify the returned list
+         */
+        public Filters all() {
+            return boardFilters;
+        }
+
+        /**
+         * @return all filters for this board that apply to the given type; do not modify the returned list
+         */
+        public Filters ofType(FilterType type) {
+            //noinspection ConstantConditions
+            return byType.get(type);
+        }
+
+        /**
+         * @return a matcher for all of this board's filters at once
+         */
+        public FilterMatcher matcher() {
+            return matcher;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import static com.github.adamantcheese.chan.core.manager.FilterEngine.FilterActi
 import static com.github.adamantcheese.chan.core.manager.FilterType.*;
 import static com.github.adamantcheese.chan.core.site.SiteEndpoints.IconType.BOARD_FLAG;
 import static com.github.adamantcheese.chan.core.site.SiteEndpoints.IconType.COUNTRY_FLAG;
+import static com.github.adamantcheese.chan.ui.helper.RefreshUIMessage.Reason.FILTERS_CHANGED;
 
 import android.text.TextUtils;
 
@@ -36,11 +37,17 @@ import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Filters;
+import com.github.adamantcheese.chan.ui.helper.RefreshUIMessage;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.github.adamantcheese.chan.utils.StringUtils;
 import com.j256.ormlite.dao.Dao.CreateOrUpdateStatus;
 
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.*;
 
 public class FilterEngine {
@@ -57,23 +64,59 @@ public class FilterEngine {
 
     private final DatabaseFilterManager databaseFilterManager;
 
-    private final Map<String, Pattern> patternCache = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+
+    // the last built snapshot of enabled filters, rebuilt from the database if its version is out of date
+    private volatile CompiledFilters compiledFilters;
+    private final AtomicInteger filtersVersion = new AtomicInteger();
 
     public FilterEngine(DatabaseFilterManager databaseFilterManager) {
         this.databaseFilterManager = databaseFilterManager;
+        EventBus.getDefault().register(this);
+    }
+
+    @Subscribe
+    public void onEvent(RefreshUIMessage message) {
+        if (message.reason != FILTERS_CHANGED) return;
+        invalidateCompiledFilters();
     }
 
     public void deleteFilter(Filter filter) {
         DatabaseUtils.runTask(databaseFilterManager.deleteFilter(filter));
+        invalidateCompiledFilters();
     }
 
     public CreateOrUpdateStatus createOrUpdateFilter(Filter filter) {
-        return DatabaseUtils.runTask(databaseFilterManager.createOrUpdateFilter(filter));
+        CreateOrUpdateStatus status = DatabaseUtils.runTask(databaseFilterManager.createOrUpdateFilter(filter));
+        invalidateCompiledFilters();
+        return status;
+    }
+
+    /**
+     * Call after changing filters in the database directly, rather than through this class.
+     */
+    public void invalidateCompiledFilters() {
+        filtersVersion.incrementAndGet();
+    }
+
+    /**
+     * @return a snapshot of the currently enabled filters; this only hits the database if the filters have changed
+     * since the last call, so it is cheap to call once per load and share the result between parse tasks
+     */
+    @AnyThread
+    public CompiledFilters getCompiledFilters() {
+        int version = filtersVersion.get();
+        CompiledFilters current = compiledFilters;
+        if (current != null && current.version == version) return current;
+
+        current = new CompiledFilters(version, getEnabledFilters());
+        compiledFilters = current;
+        return current;
     }
 
     public Filters getAllFilters() {
         try {
-            return DatabaseUtils.runTask(databaseFilterManager.getFilters());
+            return DatabaseUtils.runReadTask(databaseFilterManager.getFilters());
         } catch (Exception e) {
             Logger.w(this, "Couldn't get all filters. Returning empty list.");
             return new Filters();
@@ -144,17 +187,31 @@ public class FilterEngine {
      */
     @AnyThread
     public boolean matches(Filter filter, Post.Builder post) {
+        return matches(filter, post, (type, text) -> matches(filter, type, text, false));
+    }
+
+    /**
+     * Which fields of a post a filter is tested against, and how image hash matches are applied; shared by everything
+     * that filters posts, so they only differ in how a single field is tested.
+     *
+     * @param filter  the filter to use
+     * @param post    the post content to test against
+     * @param matcher tests the filter against a single field of the post
+     * @return true if the filter matches and should be applied to the content, false if not
+     */
+    @AnyThread
+    public static boolean matches(Filter filter, Post.Builder post, FieldMatcher matcher) {
         if (!post.moderatorCapcode.isEmpty() || post.sticky) return false;
         if (filter.onlyOnOP && !post.op) return false;
         if (filter.applyToSaved && !post.isSavedReply) return false;
 
-        if (matches(filter, TRIPCODE, post.tripcode, false)) return true;
-        if (matches(filter, NAME, post.getName(), false)) return true;
-        if (matches(filter, COMMENT, post.comment, false)) return true;
-        if (matches(filter, ID, post.posterId, false)) return true;
-        if (matches(filter, SUBJECT, post.getSubject(), false)) return true;
+        if (matcher.matches(TRIPCODE, post.tripcode)) return true;
+        if (matcher.matches(NAME, post.getName())) return true;
+        if (matcher.matches(COMMENT, post.comment)) return true;
+        if (matcher.matches(ID, post.posterId)) return true;
+        if (matcher.matches(SUBJECT, post.getSubject())) return true;
         for (PostImage image : post.images) {
-            if (matches(filter, IMAGE_HASH, image.fileHash, false)) {
+            if (matcher.matches(IMAGE_HASH, image.fileHash)) {
                 //for filtering image hashes, we don't want to apply the post-level filter unless the user set it as such
                 //this takes care of it at an image level, either flagging it to be hidden, which applies a
                 //custom spoiler image, or removes the image from the post entirely since this is a Post.Builder instance
@@ -179,22 +236,30 @@ public class FilterEngine {
                 break;
             }
         }
-        if (!flagCode.isEmpty() && matches(filter, FLAG_CODE, flagCode, false)) {
+        if (!flagCode.isEmpty() && matcher.matches(FLAG_CODE, flagCode)) {
             return true;
         }
 
-        if (post.images != null) {
+        if (post.images != null && filter.hasFilter(FILENAME)) {
             StringBuilder files = new StringBuilder();
             for (PostImage image : post.images) {
                 files.append(image.filename).append(" ");
             }
             String fnames = files.toString();
-            return !fnames.isEmpty() && matches(filter, FILENAME, fnames, false);
+            return !fnames.isEmpty() && matcher.matches(FILENAME, fnames);
         }
 
         return false;
     }
 
+    public interface FieldMatcher {
+        /**
+         * @param text the field's content, may be null
+         * @return true if the filter matches this field of the post
+         */
+        boolean matches(FilterType type, @Nullable CharSequence text);
+    }
+
     public boolean matches(Filter filter, FilterType type, CharSequence text, boolean forceCompile) {
         return getMatchResult(filter, type, text, forceCompile) != null;
     }
@@ -204,30 +269,29 @@ public class FilterEngine {
         if ((filter.type & type.flag) == 0) return null;
         if (text == null) return null;
 
+        // no locking here, a race just means the same pattern gets compiled twice
         Pattern pattern = null;
         Pattern negativePattern = null;
-        synchronized (patternCache) {
-            if (!forceCompile) {
-                pattern = patternCache.get(filter.pattern);
-                negativePattern = patternCache.get(filter.negativePattern);
-            }
+        if (!forceCompile) {
+            pattern = patternCache.get(filter.pattern);
+            negativePattern = patternCache.get(filter.negativePattern);
+        }
 
-            int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
+        int extraFlags = type == FLAG_CODE ? Pattern.CASE_INSENSITIVE : 0;
 
-            if (pattern == null) {
-                pattern = compile(filter.pattern, extraFlags);
-                if (pattern != null) {
-                    patternCache.put(filter.pattern, pattern);
-                    Logger.d(this, "Resulting positive pattern: " + pattern.pattern());
-                }
+        if (pattern == null) {
+            pattern = compile(filter.pattern, extraFlags);
+            if (pattern != null) {
+                patternCache.put(filter.pattern, pattern);
+                Logger.d(this, "Resulting positive pattern: " + pattern.pattern());
             }
+        }
 
-            if (negativePattern == null) {
-                negativePattern = compile(filter.negativePattern, extraFlags);
-                if (negativePattern != null) {
-                    patternCache.put(filter.negativePattern, negativePattern);
-                    Logger.d(this, "Resulting negative pattern: " + negativePattern.pattern());
-                }
+        if (negativePattern == null) {
+            negativePattern = compile(filter.negativePattern, extraFlags);
+            if (negativePattern != null) {
+                patternCache.put(filter.negativePattern, negativePattern);
+                Logger.d(this, "Resulting negative pattern: " + negativePattern.pattern());
             }
         }
 
@@ -252,7 +316,7 @@ public class FilterEngine {
 
     @AnyThread
     @Nullable
-    public Pattern compile(String rawPattern, int extraPatternFlags) {
+    public static Pattern compile(String rawPattern, int extraPatternFlags) {
         if (TextUtils.isEmpty(rawPattern)) {
             return null;
         }
@@ -48,11 +48,13 @@ public class FilterWatchManager
     private final FilterEngine filterEngine;
     private final WatchManager watchManager;
 
-    //filterLoaders keeps track of ChanThreadLoaders so they can be cleared correctly each alarm trigger
+    //filterLoaders keeps a ChanThreadLoader per board across alarm triggers, so unchanged catalogs aren't sent again
+    //freshFilterLoaders is set when filters change, as posts have to be parsed again against the new filters
     //ignoredPosts keeps track of threads pinned by the filter manager and ignores them for future alarm triggers
     //this lets you unpin threads that are pinned by the filter pin manager and not have them come back
     //note that ignoredPosts is currently only saved while the application is running and not in the database
-    private final List<ChanThreadLoader> filterLoaders = new ArrayList<>();
+    private final Map<Board, CatalogLoader> filterLoaders = new HashMap<>();
+    private boolean freshFilterLoaders = false;
     private final Set<CatalogPost> ignoredPosts = Collections.synchronizedSet(new HashSet<>());
     //keep track of how many boards we've checked and their posts so we can cut out things from the ignored posts
     private final AtomicInteger numBoardsChecked = new AtomicInteger();
@@ -87,6 +89,7 @@ public class FilterWatchManager
     @Subscribe
     public void onEvent(RefreshUIMessage message) {
         if (message.reason != FILTERS_CHANGED) return;
+        freshFilterLoaders = true;
         if (filterEngine.getEnabledWatchFilters().isEmpty()) {
             WakeManager.getInstance().unregisterWakeable(this);
         } else {
@@ -110,18 +113,19 @@ public class FilterWatchManager
                                 + " filter loaders, started at "
                                 + StringUtils.getCurrentTimeDefaultLocale()
                 );
-                for (ChanThreadLoader loader : filterLoaders) {
-                    loader.requestFreshData();
+                // queued behind pins, and with a limit on how many load at once from the same site
+                for (CatalogLoader loader : filterLoaders.values()) {
+                    RefreshScheduler.getInstance()
+                            .schedule(RefreshScheduler.getHost(loader.loadable),
+                                    RefreshScheduler.Priority.FILTER_CATALOG,
+                                    loader
+                            );
                 }
             }
         }
     }
 
     private void populateFilterLoaders() {
-        for (ChanThreadLoader loader : filterLoaders) {
-            loader.clearListeners();
-        }
-        filterLoaders.clear();
         //get a set of boards to background load
         Set<Board> boards = new HashSet<>();
         for (BoardRepository.SiteBoards siteBoard : boardRepository.getSaved()) {
@@ -131,8 +135,21 @@ public class FilterWatchManager
         }
         numBoardsChecked.set(boards.size());
 
+        Iterator<Map.Entry<Board, CatalogLoader>> it = filterLoaders.entrySet().iterator();
+        while (it.hasNext()) {
+            CatalogLoader loader = it.next().getValue();
+            RefreshScheduler.getInstance().finished(loader, 0);
+            if (freshFilterLoaders || !boards.contains(loader.loadable.board)) {
+                loader.chanLoader.clearListeners();
+                it.remove();
+            }
+        }
+        freshFilterLoaders = false;
+
         for (Board b : boards) {
-            filterLoaders.add(setupLoader(Loadable.forCatalog(b)));
+            if (!filterLoaders.containsKey(b)) {
+                filterLoaders.put(b, setupLoader(Loadable.forCatalog(b)));
+            }
         }
     }
 
@@ -142,7 +159,7 @@ public class FilterWatchManager
         if (!externallyCheckedPosts.contains(postForThread) && boardMatchAnyWatchFilters(loadableForThread.board)) {
             Logger.i(this, "Following linked thread: " + loadableForThread.title);
             externallyCheckedPosts.add(postForThread);
-            setupLoader(loadableForThread).requestFreshData();
+            setupLoader(loadableForThread).start();
         }
     }
 
@@ -155,28 +172,45 @@ public class FilterWatchManager
         return false;
     }
 
-    private ChanThreadLoader setupLoader(Loadable loadable) {
-        CatalogLoader backgroundLoader = new CatalogLoader(loadable);
-        ChanThreadLoader catalogLoader = new ChanThreadLoader(loadable);
-        catalogLoader.addListener(backgroundLoader);
-        return catalogLoader;
+    private CatalogLoader setupLoader(Loadable loadable) {
+        // only the filter results are looked at, so skip building everything needed to display the posts
+        CatalogLoader backgroundLoader = new CatalogLoader(loadable, new ChanThreadLoader(loadable, true));
+        backgroundLoader.chanLoader.addListener(backgroundLoader);
+        backgroundLoader.chanLoader.addProgressListener(backgroundLoader.bytesReceived);
+        return backgroundLoader;
     }
 
     private class CatalogLoader
-            implements NetUtilsClasses.ResponseResult<ChanThread> {
+            implements NetUtilsClasses.ResponseResult<ChanThread>, RefreshScheduler.Refresh {
+        private final Loadable loadable;
+        private final ChanThreadLoader chanLoader;
+        private final RefreshScheduler.ByteCounter bytesReceived = new RefreshScheduler.ByteCounter();
         private final boolean onlyCheckOp; // externally loaded threads only check the OP
+        private List<Post> lastPosts; // the posts of the last scan, handed back as-is if nothing changed since
 
-        private CatalogLoader(Loadable loadable) {
+        private CatalogLoader(Loadable loadable, ChanThreadLoader chanLoader) {
+            this.loadable = loadable;
+            this.chanLoader = chanLoader;
             this.onlyCheckOp = loadable.isThreadMode();
         }
 
+        @Override
+        public void start() {
+            // validators from the last scan are sent along, so an unchanged catalog isn't downloaded or parsed again
+            chanLoader.requestRefresh();
+        }
+
         @Override
         public void onSuccess(ChanThread result) {
+            RefreshScheduler.getInstance().finished(this, bytesReceived.take());
+            // the loaded post list is only replaced when the server sent something new
+            boolean unchanged = result.getPosts() == lastPosts;
+            lastPosts = result.getPosts();
             List<Post> toCheck = onlyCheckOp ? Collections.singletonList(result.getOp()) : result.getPosts();
             for (Post p : toCheck) {
                 CatalogPost catalogPost = new CatalogPost(p);
-                //make pins for the necessary stuff
-                if (p.filterWatch && !ignoredPosts.contains(catalogPost)) {
+                //make pins for the necessary stuff, an unchanged catalog was already checked last time
+                if (!unchanged && p.filterWatch && !ignoredPosts.contains(catalogPost)) {
                     final Loadable pinLoadable =
                             Loadable.forThread(p.board, p.no, PostHelper.getTitle(p, result.loadable));
                     pinLoadable.thumbnailUrl = p.image() == null ? null : p.image().getThumbnailUrl();
@@ -200,7 +234,10 @@ public class FilterWatchManager
             if (!onlyCheckOp) {
                 Logger.i(
                         this,
-                        "Filter loader for /" + result.loadable.boardCode + "/ processed, left " + numBoardsChecked
+                        "Filter loader for /"
+                                + result.loadable.boardCode
+                                + (unchanged ? "/ unchanged, left " : "/ processed, left ")
+                                + numBoardsChecked
                 );
             }
             checkComplete();
@@ -208,6 +245,7 @@ public class FilterWatchManager
 
         @Override
         public void onFailure(Exception error) {
+            RefreshScheduler.getInstance().finished(this, bytesReceived.take());
             if (!onlyCheckOp) {
                 Logger.i(this, "Filter loader failed, left " + numBoardsChecked, error);
             }
@@ -0,0 +1,268 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.manager;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StringUtils;
+
+import java.util.*;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Runs the periodic refreshes of pins and watch filter catalogs, so that a wake doesn't send every request at once.
+ * Each host gets a small budget of concurrent requests; whatever doesn't fit is queued, highest priority first, and
+ * started as earlier requests finish.
+ * <p>
+ * Requests made while a background wake cycle is going are counted, along with the bytes they received, and reported
+ * once the queue empties.
+ * <p>
+ * All state is only touched from the main thread.
+ */
+public class RefreshScheduler {
+    private static final int MAX_CONCURRENT_PER_HOST = 2;
+    // a refresh that never reported back stops taking up its host's budget after this
+    private static final long STALE_REFRESH_MS = MINUTES.toMillis(2);
+
+    private static RefreshScheduler instance;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private long sequence;
+
+    // counters for the current background wake cycle; cycleStart is 0 if there isn't one
+    private long cycleStart;
+    private int cycleRequests;
+    private long cycleBytes;
+
+    /**
+     * In the order refreshes are started in, when more are waiting than a host's budget allows.
+     */
+    public enum Priority {
+        // the thread that's currently open
+        FOREGROUND_THREAD,
+        // pins of threads with the user's own posts in them, which are the ones that can get quotes
+        PIN_WITH_QUOTES,
+        PIN,
+        FILTER_CATALOG
+    }
+
+    public interface Refresh {
+        /**
+         * Start the request; once it's done, report that with {@link RefreshScheduler#finished(Refresh, long)}.
+         */
+        void start();
+    }
+
+    public static RefreshScheduler getInstance() {
+        if (instance == null) {
+            instance = new RefreshScheduler();
+        }
+
+        return instance;
+    }
+
+    private RefreshScheduler() {}
+
+    /**
+     * @return the host that refreshes of this loadable go to, for {@link #schedule(String, Priority, Refresh)}
+     */
+    public static String getHost(Loadable loadable) {
+        return loadable.isThreadMode()
+                ? loadable.board.site.endpoints().thread(loadable).host()
+                : loadable.board.site.endpoints().catalog(loadable.board).host();
+    }
+
+    /**
+     * @return the host that the thread index of this board comes from
+     */
+    public static String getIndexHost(Board board) {
+        return board.site.endpoints().pages(board).host();
+    }
+
+    /**
+     * Queue a refresh; it's started right away if its host has any budget left. Scheduling a refresh that is already
+     * queued only raises its priority, if the new one is higher.
+     */
+    @MainThread
+    public void schedule(@NonNull String host, @NonNull Priority priority, @NonNull Refresh refresh) {
+        BackgroundUtils.ensureMainThread();
+        HostQueue queue = hosts.get(host);
+        if (queue == null) {
+            queue = new HostQueue();
+            hosts.put(host, queue);
+        }
+        if (queue.running.containsKey(refresh)) return;
+        for (Iterator<Queued> iterator = queue.pending.iterator(); iterator.hasNext(); ) {
+            Queued queued = iterator.next();
+            if (queued.refresh == refresh) {
+                if (queued.priority.ordinal() <= priority.ordinal()) return;
+                iterator.remove();
+                break;
+            }
+        }
+        queue.pending.add(new Queued(refresh, priority, sequence++));
+        startRefreshes(queue);
+    }
+
+    /**
+     * Report that a refresh is done, successful or not, freeing up its host's budget. If it hadn't started yet, it's
+     * just dropped from the queue; this is also how to cancel a refresh.
+     *
+     * @param bytes how much was received for it, 0 if that isn't known
+     */
+    @MainThread
+    public void finished(@NonNull Refresh refresh, long bytes) {
+        BackgroundUtils.ensureMainThread();
+        for (HostQueue queue : hosts.values()) {
+            if (queue.running.remove(refresh) != null) {
+                cycleBytes += cycleStart > 0 ? bytes : 0;
+                startRefreshes(queue);
+                break;
+            }
+            boolean removed = false;
+            for (Iterator<Queued> iterator = queue.pending.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().refresh == refresh) {
+                    iterator.remove();
+                    removed = true;
+                    break;
+                }
+            }
+            if (removed) break;
+        }
+        checkCycleComplete();
+    }
+
+    /**
+     * Called at the start of a background wake, before the wakeables schedule their refreshes.
+     */
+    @MainThread
+    void beginCycle() {
+        if (cycleStart > 0) {
+            // the last one never emptied the queue, report what it got done so far
+            reportCycle();
+        }
+        cycleStart = SystemClock.elapsedRealtime();
+        cycleRequests = 0;
+        cycleBytes = 0;
+        // wakeables schedule their refreshes right after this; if none do, the cycle is empty
+        BackgroundUtils.runOnMainThread(this::checkCycleComplete);
+    }
+
+    private void startRefreshes(HostQueue queue) {
+        long now = SystemClock.elapsedRealtime();
+        for (Iterator<Map.Entry<Refresh, Long>> iterator = queue.running.entrySet().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().getValue() > STALE_REFRESH_MS) {
+                Logger.w(this, "Refresh never finished, releasing its slot");
+                iterator.remove();
+            }
+        }
+        while (queue.running.size() < MAX_CONCURRENT_PER_HOST && !queue.pending.isEmpty()) {
+            Refresh refresh = queue.pending.poll().refresh;
+            queue.running.put(refresh, now);
+            if (cycleStart > 0) {
+                cycleRequests++;
+            }
+            refresh.start();
+        }
+    }
+
+    private void checkCycleComplete() {
+        if (cycleStart == 0) return;
+        for (HostQueue queue : hosts.values()) {
+            if (!queue.running.isEmpty() || !queue.pending.isEmpty()) return;
+        }
+        reportCycle();
+        cycleStart = 0;
+    }
+
+    private void reportCycle() {
+        Logger.i(
+                this,
+                "Wake cycle used "
+                        + cycleRequests
+                        + " requests and "
+                        + cycleBytes
+                        + " bytes in "
+                        + (SystemClock.elapsedRealtime() - cycleStart)
+                        + "ms, finished at "
+                        + StringUtils.getCurrentTimeDefaultLocale()
+        );
+    }
+
+    /**
+     * Adds up the bytes received by a loader, for {@link #finished(Refresh, long)}. Add it as a progress listener.
+     */
+    public static class ByteCounter
+            implements ProgressResponseBody.ProgressListener {
+        private long bytes;
+        private long lastBytesRead;
+
+        @Override
+        public void onDownloadProgress(HttpUrl source, long bytesRead, long contentLength, boolean start, boolean done) {
+            if (start) {
+                lastBytesRead = 0;
+            }
+            bytes += Math.max(0, bytesRead - lastBytesRead);
+            lastBytesRead = bytesRead;
+        }
+
+        /**
+         * @return the bytes received since the last call
+         */
+        public long take() {
+            long taken = bytes;
+            bytes = 0;
+            return taken;
+        }
+    }
+
+    private static class HostQueue {
+        private final PriorityQueue<Queued> pending = new PriorityQueue<>();
+        // refresh to the time it was started at
+        private final Map<Refresh, Long> running = new HashMap<>();
+    }
+
+    private static class Queued
+            implements Comparable<Queued> {
+        private final Refresh refresh;
+        private final Priority priority;
+        private final long sequence;
+
+        private Queued(Refresh refresh, Priority priority, long sequence) {
+            this.refresh = refresh;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Queued other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -85,6 +85,8 @@ public class WakeManager {
             Logger.vd(this, "Early; previous @ " + StringUtils.getTimeDefaultLocale(lastBackgroundUpdateTime));
         } else {
             lastBackgroundUpdateTime = currentTime;
+            // wakeables only queue their requests with the scheduler, which spreads them out and reports on them
+            RefreshScheduler.getInstance().beginCycle();
             for (Wakeable wakeable : wakeableSet) {
                 wakeable.onWake();
             }
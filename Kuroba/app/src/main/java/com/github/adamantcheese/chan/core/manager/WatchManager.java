@@ -42,12 +42,15 @@ import com.github.adamantcheese.chan.core.database.DatabasePinManager;
 import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.repository.PageRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPageThread;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPages;
 import com.github.adamantcheese.chan.core.site.loader.ChanThreadLoader;
 import com.github.adamantcheese.chan.features.notifications.LastPageNotification;
 import com.github.adamantcheese.chan.features.notifications.WatchNotification;
@@ -560,16 +563,55 @@ public class WatchManager
             waitingForPinWatchersForBackgroundUpdate = new HashSet<>();
         }
 
+        // Pins that are due are checked against their board's thread index first, so that there's one request per
+        // board, and only the threads that actually changed are loaded in full
+        Map<Board, List<PinWatcher>> boardIndexWatchers = new HashMap<>();
         List<Pin> watchingPins = getWatchingPins();
         for (Pin pin : watchingPins) {
             PinWatcher pinWatcher = getPinWatcher(pin);
-            if (pinWatcher != null && pinWatcher.update(fromBackground)) {
+            if (pinWatcher == null) continue;
+            if (pinWatcher.usesBoardIndex() && pinWatcher.isDue(fromBackground)) {
+                List<PinWatcher> watchers = boardIndexWatchers.get(pin.loadable.board);
+                if (watchers == null) {
+                    watchers = new ArrayList<>();
+                    boardIndexWatchers.put(pin.loadable.board, watchers);
+                }
+                watchers.add(pinWatcher);
+                if (fromBackground) {
+                    waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
+                }
+            } else if (pinWatcher.update(fromBackground)) {
                 if (fromBackground) {
                     waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
                 }
             }
         }
 
+        for (Map.Entry<Board, List<PinWatcher>> entry : boardIndexWatchers.entrySet()) {
+            Board board = entry.getKey();
+            List<PinWatcher> watchers = entry.getValue();
+            // the index goes first in line among the pins it's for, since it decides which of them need loading
+            RefreshScheduler.Priority priority = RefreshScheduler.Priority.PIN;
+            for (PinWatcher pinWatcher : watchers) {
+                if (pinWatcher.getRefreshPriority().compareTo(priority) < 0) {
+                    priority = pinWatcher.getRefreshPriority();
+                }
+            }
+            RefreshScheduler.getInstance()
+                    .schedule(RefreshScheduler.getIndexHost(board), priority, new RefreshScheduler.Refresh() {
+                        @Override
+                        public void start() {
+                            PageRepository.requestPagesNow(board,
+                                    pages -> BackgroundUtils.runOnMainThread(() -> {
+                                        onBoardIndex(pages, watchers, fromBackground);
+                                        // the page repository doesn't say how big the index was
+                                        RefreshScheduler.getInstance().finished(this, 0);
+                                    })
+                            );
+                        }
+                    });
+        }
+
         if (fromBackground && !waitingForPinWatchersForBackgroundUpdate.isEmpty()) {
             Logger.i(
                     this,
@@ -581,9 +623,25 @@ public class WatchManager
         }
     }
 
+    private void onBoardIndex(ChanPages pages, List<PinWatcher> watchers, boolean fromBackground) {
+        int loads = 0;
+        for (PinWatcher pinWatcher : watchers) {
+            if (pinWatcher.updateFromIndex(pages, fromBackground)) {
+                loads++;
+            } else {
+                pinWatcherFinished(pinWatcher);
+            }
+        }
+        Logger.vd(this, "Board index checked, " + loads + " of " + watchers.size() + " pins need loading");
+    }
+
     private void pinWatcherUpdated(PinWatcher pinWatcher) {
         postToEventBus(new PinMessages.PinChangedMessage(pinWatcher.pin));
+        pinWatcherFinished(pinWatcher);
+    }
 
+    // remove the watcher from the ones being waited on for a background update, if it was
+    private void pinWatcherFinished(PinWatcher pinWatcher) {
         synchronized (WatchManager.this) {
             if (waitingForPinWatchersForBackgroundUpdate != null) {
                 waitingForPinWatchersForBackgroundUpdate.remove(pinWatcher);
@@ -629,9 +687,14 @@ public class WatchManager
     }
 
     public class PinWatcher
-            implements NetUtilsClasses.ResponseResult<ChanThread>, PageRepository.PageCallback {
+            implements NetUtilsClasses.ResponseResult<ChanThread>, PageRepository.PageCallback,
+                       RefreshScheduler.Refresh {
         private final Pin pin;
         private ChanThreadLoader chanLoader;
+        private final RefreshScheduler.ByteCounter bytesReceived = new RefreshScheduler.ByteCounter();
+        // whether the scheduled load was requested from a background update
+        private boolean refreshFromBackground;
+        private boolean hasSavedReplies;
 
         private final List<Post> posts = new ArrayList<>();
         private final List<Post> quotes = new ArrayList<>();
@@ -639,11 +702,18 @@ public class WatchManager
         private boolean wereNewPosts = false;
         private boolean notified = true;
 
+        // the thread's state in its board index as of the last full load, and as of the load in progress
+        private ChanPageThread indexState;
+        private ChanPageThread pendingIndexState;
+        // set if the site's index doesn't have any state to compare against
+        private boolean indexUnsupported = false;
+
         public PinWatcher(Pin pin) {
             this.pin = pin;
 
             Logger.vd(this, "created for " + pin.loadable.toString());
             chanLoader = ChanLoaderManager.obtain(pin.loadable, this);
+            chanLoader.addProgressListener(bytesReceived);
             PageRepository.addListener(this);
         }
 
@@ -687,9 +757,11 @@ public class WatchManager
                         this,
                         "PinWatcher: destroyed for pin with id " + pin.id + " and loadable" + pin.loadable.toString()
                 );
+                chanLoader.removeProgressListener(bytesReceived);
                 ChanLoaderManager.release(chanLoader, this);
                 chanLoader = null;
             }
+            RefreshScheduler.getInstance().finished(this, 0);
             PageRepository.removeListener(this);
         }
 
@@ -701,23 +773,88 @@ public class WatchManager
             if (!pin.isError && pin.watching) {
                 //check last page stuff, get the page for the OP and notify in the onPages method
                 doPageNotification();
-                if (fromBackground) {
-                    // Always load regardless of timer, since the time left is not accurate for 15min+ intervals
-                    chanLoader.clearTimer();
-                    chanLoader.requestAdditionalData();
+                if (isDue(fromBackground)) {
+                    load(fromBackground);
                     return true;
-                } else {
-                    if (chanLoader.getTimeUntilLoadMore() < 0L) {
-                        chanLoader.requestAdditionalData();
-                        return true;
-                    }
-                    return false;
                 }
+                return false;
             } else {
                 return false;
             }
         }
 
+        private boolean isDue(boolean fromBackground) {
+            if (pin.isError || !pin.watching) return false;
+            if (fromBackground) {
+                // Wakes are inexact, so load anything that would be due before the next one; threads that have gone quiet
+                // enough to still not be due by then are left for a later wake
+                // Threads about to fall off the board aren't worth waking up for; they're still checked in the foreground
+                return !isOnLastPage() && chanLoader.getTimeUntilLoadMore() < ChanSettings.watchBackgroundInterval.get();
+            }
+            return chanLoader.getTimeUntilLoadMore() < 0L;
+        }
+
+        private boolean isOnLastPage() {
+            ChanPage page = PageRepository.getPage(pin.loadable);
+            return page != null && page.page >= pin.loadable.board.pages;
+        }
+
+        private RefreshScheduler.Priority getRefreshPriority() {
+            if (chanLoader != null && chanLoader.getListenerCount() > 1) {
+                // something besides this watcher is listening, which means the thread is open
+                return RefreshScheduler.Priority.FOREGROUND_THREAD;
+            }
+            return hasSavedReplies ? RefreshScheduler.Priority.PIN_WITH_QUOTES : RefreshScheduler.Priority.PIN;
+        }
+
+        private void load(boolean fromBackground) {
+            refreshFromBackground = fromBackground;
+            RefreshScheduler.getInstance()
+                    .schedule(RefreshScheduler.getHost(pin.loadable), getRefreshPriority(), this);
+        }
+
+        @Override
+        public void start() {
+            // the watcher may have been destroyed while this was queued
+            if (chanLoader == null) {
+                RefreshScheduler.getInstance().finished(this, 0);
+                return;
+            }
+            bytesReceived.take();
+            if (refreshFromBackground) {
+                chanLoader.clearTimer();
+            }
+            chanLoader.requestAdditionalData();
+        }
+
+        private boolean usesBoardIndex() {
+            return !indexUnsupported;
+        }
+
+        /**
+         * @param pages the freshly fetched index for this pin's board
+         * @return true if a data call was requested, because the thread changed or its state couldn't be determined
+         */
+        private boolean updateFromIndex(ChanPages pages, boolean fromBackground) {
+            // the watcher may have been destroyed or paused while the index was loading
+            if (chanLoader == null || pin.isError || !pin.watching) return false;
+
+            ChanPageThread state = pages.findThread(pin.loadable.no);
+            if (state != null && state.isSameAs(indexState)) {
+                chanLoader.skipLoad();
+                return false;
+            }
+
+            if (!pages.isEmpty() && pages.get(0).threadStates.isEmpty()) {
+                // nothing to compare against for this site, don't bother with the index for this pin from here on
+                indexUnsupported = true;
+            }
+            // changed, never compared, or no longer in the index (archived or deleted); a full load will tell
+            pendingIndexState = state;
+            load(fromBackground);
+            return true;
+        }
+
         @Override
         public void onFailure(Exception error) {
             // Ignore normal network errors, we only pause pins when there is absolutely no way
@@ -727,7 +864,9 @@ public class WatchManager
                 pin.isError = true;
                 pin.watching = false;
             }
+            pendingIndexState = null;
 
+            RefreshScheduler.getInstance().finished(this, bytesReceived.take());
             pinWatcherUpdated(this);
         }
 
@@ -740,6 +879,13 @@ public class WatchManager
             }
 
             pin.isError = false;
+            RefreshScheduler.getInstance().finished(this, bytesReceived.take());
+
+            // loads not started from the index leave the last known state alone; at worst that's one extra load later
+            if (pendingIndexState != null) {
+                indexState = pendingIndexState;
+                pendingIndexState = null;
+            }
 
             // Populate posts list
             posts.clear();
@@ -755,13 +901,12 @@ public class WatchManager
                     savedReplies.add(item);
                 }
             }
+            hasSavedReplies = !savedReplies.isEmpty();
 
             // Now get a list of posts that have a quote to a saved reply, but not self-replies
-            for (Post post : thread.getPosts()) {
-                for (Post saved : savedReplies) {
-                    if (post.repliesTo.contains(saved.no) && !post.isSavedReply) {
-                        quotes.add(post);
-                    }
+            for (Post post : thread.getReplyGraph().getRepliesToAny(savedReplies)) {
+                if (!post.isSavedReply) {
+                    quotes.add(post);
                 }
             }
 
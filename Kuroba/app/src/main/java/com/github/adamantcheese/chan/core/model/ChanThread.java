@@ -25,6 +25,7 @@ import android.text.style.StyleSpan;
 import android.text.style.UnderlineSpan;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
@@ -44,10 +45,13 @@ public class ChanThread {
     // every time it is needed somewhere.
     @NonNull
     private List<Post> posts;
+    // Index of the above posts by their number and by who replied to them, kept alongside the list
+    @NonNull
+    private ReplyGraph replyGraph;
 
     public ChanThread(@NonNull Loadable loadable, @NonNull List<Post> posts) {
         this.loadable = loadable;
-        this.posts = Collections.unmodifiableList(new ArrayList<>(posts));
+        setNewPosts(posts);
     }
 
     public synchronized int getImagesCount() {
@@ -71,8 +75,25 @@ public class ChanThread {
         return posts;
     }
 
+    /**
+     * @return an index of all posts in this thread by post number and replies; this is a snapshot and will not be
+     * modified
+     */
+    @NonNull
+    public synchronized ReplyGraph getReplyGraph() {
+        return replyGraph;
+    }
+
     public synchronized void setNewPosts(@NonNull List<Post> newPosts) {
+        setNewPosts(newPosts, null);
+    }
+
+    /**
+     * @param graph the graph for the new posts, if one was already built for them
+     */
+    public synchronized void setNewPosts(@NonNull List<Post> newPosts, @Nullable ReplyGraph graph) {
         this.posts = Collections.unmodifiableList(new ArrayList<>(newPosts));
+        this.replyGraph = graph != null ? graph : ReplyGraph.build(newPosts, Collections.emptySet(), replyGraph);
     }
 
     /**
@@ -93,6 +93,11 @@ public class Post
 
     public final CharSequence nameTripcodeIdCapcodeSpan;
 
+    /**
+     * A hash of the unparsed post content, used to tell if the server copy of this post changed since it was parsed.
+     */
+    public final int sourceHash;
+
     /**
      * These post numbers replied to this post.
      */
@@ -158,6 +163,7 @@ public class Post
         isSavedReply = builder.isSavedReply;
         subjectSpan = builder.subjectSpan;
         nameTripcodeIdCapcodeSpan = builder.nameTripcodeIdCapcodeSpan;
+        sourceHash = builder.sourceHash;
 
         repliesTo = Collections.unmodifiableSet(builder.repliesToNos);
     }
@@ -308,6 +314,7 @@ public class Post
                 )
                 .isSavedReply(isSavedReply)
                 .spans(subjectSpan, nameTripcodeIdCapcodeSpan)
+                .sourceHash(sourceHash)
                 .repliesTo(repliesTo)
                 .build();
         clone.repliesFrom.addAll(repliesFrom);
@@ -393,6 +400,8 @@ public class Post
         public CharSequence subjectSpan;
         public CharSequence nameTripcodeIdCapcodeSpan;
 
+        public int sourceHash;
+
         public final Set<Integer> repliesToNos = new HashSet<>();
 
         public Builder() {
@@ -571,6 +580,25 @@ public class Post
             return this;
         }
 
+        public Builder sourceHash(int sourceHash) {
+            this.sourceHash = sourceHash;
+            return this;
+        }
+
+        /**
+         * Hashes the unparsed content of this post; this should be called before any parsing happens, ie when the post
+         * is first read in from the server response.
+         *
+         * @return a hash that changes if the post's content was changed on the server
+         */
+        public int computeSourceHash() {
+            int hash = Objects.hash(comment.toString(), subject.toString(), name, tripcode, posterId, moderatorCapcode);
+            for (PostImage image : images) {
+                hash = 31 * hash + Objects.hash(image.serverFilename, image.deleted);
+            }
+            return hash;
+        }
+
         /**
          * Specify that this post replies to these post number
          *
@@ -627,6 +655,7 @@ public class Post
                     )
                     .isSavedReply(isSavedReply)
                     .spans(subjectSpan, nameTripcodeIdCapcodeSpan)
+                    .sourceHash(sourceHash)
                     .repliesTo(repliesToNos);
         }
 
@@ -0,0 +1,288 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.*;
+
+/**
+ * An index of a thread's posts by number, along with who replied to whom.<br>
+ * Lookups by post number go through an open-addressed table of primitive ints, and the replies to each post are kept as
+ * compact int arrays of post positions, so walking a reply chain is linear in the size of the chain.<br>
+ * A graph is an immutable snapshot; building a new one from a previous graph only processes the posts that were added
+ * since, as long as the earlier posts are the same.
+ */
+public class ReplyGraph {
+    private static final int[] NO_REPLIES = new int[0];
+
+    // by position in the thread
+    private final Post[] posts;
+    private final int size;
+    // positions of the posts that replied to the post at a given position; only the first replyCounts[i] are valid
+    private final int[][] replies;
+    private final int[] replyCounts;
+    // post numbers whose replies to other posts are left out
+    private final Set<Integer> removedNos;
+
+    // open-addressed post number -> position + 1 table, 0 is an empty slot
+    private final int[] tableKeys;
+    private final int[] tableValues;
+    private final int tableMask;
+
+    private ReplyGraph(
+            Post[] posts, int[][] replies, int[] replyCounts, Set<Integer> removedNos, int[] tableKeys, int[] tableValues
+    ) {
+        this.posts = posts;
+        this.size = posts.length;
+        this.replies = replies;
+        this.replyCounts = replyCounts;
+        this.removedNos = removedNos;
+        this.tableKeys = tableKeys;
+        this.tableValues = tableValues;
+        this.tableMask = tableKeys.length - 1;
+    }
+
+    /**
+     * @param posts      all the posts in the thread, in order
+     * @param removedNos numbers of removed posts; replies from these are not recorded
+     * @param previous   the graph for a previous version of this thread; if the given posts start with the same posts
+     *                   as this graph, only the rest are processed
+     */
+    public static ReplyGraph build(
+            @NonNull List<Post> posts, @NonNull Set<Integer> removedNos, @Nullable ReplyGraph previous
+    ) {
+        Post[] postArray = posts.toArray(new Post[0]);
+        Set<Integer> removed = removedNos.isEmpty() ? Collections.emptySet() : new HashSet<>(removedNos);
+
+        int start = 0;
+        int[][] replies = new int[postArray.length][];
+        int[] replyCounts = new int[postArray.length];
+        if (previous != null && previous.canExtendTo(postArray, removed)) {
+            // the arrays for these posts are shared with the previous graph until they are appended to
+            start = previous.size;
+            System.arraycopy(previous.replies, 0, replies, 0, start);
+            System.arraycopy(previous.replyCounts, 0, replyCounts, 0, start);
+        }
+
+        int[] tableKeys;
+        int[] tableValues;
+        int capacity = tableCapacity(postArray.length);
+        if (start > 0 && previous.tableKeys.length == capacity) {
+            tableKeys = previous.tableKeys.clone();
+            tableValues = previous.tableValues.clone();
+        } else {
+            tableKeys = new int[capacity];
+            tableValues = new int[capacity];
+            for (int i = 0; i < start; i++) {
+                insert(tableKeys, tableValues, postArray[i].no, i);
+            }
+        }
+        for (int i = start; i < postArray.length; i++) {
+            insert(tableKeys, tableValues, postArray[i].no, i);
+            replies[i] = NO_REPLIES;
+        }
+
+        // replies only go to posts that are already in the table, which is all of them at this point
+        boolean[] owned = new boolean[postArray.length];
+        for (int i = start; i < postArray.length; i++) {
+            Post source = postArray[i];
+            if (removed.contains(source.no)) continue;
+            for (int replyTo : source.repliesTo) {
+                int target = find(tableKeys, tableValues, replyTo);
+                if (target < 0) continue; // a reply to a post that doesn't exist, or is in another thread
+                if (!owned[target]) {
+                    // copy before the first write, the previous graph may still be in use
+                    replies[target] = Arrays.copyOf(replies[target], Math.max(4, replyCounts[target] * 2));
+                    owned[target] = true;
+                } else if (replyCounts[target] == replies[target].length) {
+                    replies[target] = Arrays.copyOf(replies[target], replyCounts[target] * 2);
+                }
+                replies[target][replyCounts[target]++] = i;
+            }
+        }
+
+        return new ReplyGraph(postArray, replies, replyCounts, removed, tableKeys, tableValues);
+    }
+
+    /**
+     * @param posts the same posts as this graph's, in the same order, with some of them replaced by copies
+     * @return this graph, for the given posts
+     */
+    public ReplyGraph withPosts(@NonNull List<Post> posts) {
+        Post[] postArray = posts.toArray(new Post[0]);
+        if (postArray.length != size) {
+            throw new IllegalArgumentException("Not the same posts as the graph");
+        }
+        // the reply arrays are never written to once a graph is built, so they can be shared
+        return new ReplyGraph(postArray, replies, replyCounts, removedNos, tableKeys, tableValues);
+    }
+
+    private boolean canExtendTo(Post[] newPosts, Set<Integer> newRemovedNos) {
+        if (newPosts.length < size || !removedNos.equals(newRemovedNos)) return false;
+        for (int i = 0; i < size; i++) {
+            // changed posts are new objects, and their quotes may have changed too
+            if (posts[i] != newPosts[i]) return false;
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the position of the post with the given number, or -1 if it isn't in the thread
+     */
+    public int indexOf(int no) {
+        return find(tableKeys, tableValues, no);
+    }
+
+    public boolean contains(int no) {
+        return indexOf(no) >= 0;
+    }
+
+    @Nullable
+    public Post getPost(int no) {
+        int index = indexOf(no);
+        return index < 0 ? null : posts[index];
+    }
+
+    public int getReplyCount(int no) {
+        int index = indexOf(no);
+        return index < 0 ? 0 : replyCounts[index];
+    }
+
+    /**
+     * @return the posts that replied to the given post, in thread order
+     */
+    @NonNull
+    public List<Post> getReplies(int no) {
+        int index = indexOf(no);
+        if (index < 0) return Collections.emptyList();
+        List<Post> ret = new ArrayList<>(replyCounts[index]);
+        for (int i = 0; i < replyCounts[index]; i++) {
+            ret.add(posts[replies[index][i]]);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the numbers of the posts that replied to the given post, in thread order
+     */
+    @NonNull
+    public List<Integer> getReplyNos(int no) {
+        int index = indexOf(no);
+        if (index < 0) return Collections.emptyList();
+        List<Integer> ret = new ArrayList<>(replyCounts[index]);
+        for (int i = 0; i < replyCounts[index]; i++) {
+            ret.add(posts[replies[index][i]].no);
+        }
+        return ret;
+    }
+
+    /**
+     * @return every post that replied to any of the given posts, once each, in thread order
+     */
+    @NonNull
+    public List<Post> getRepliesToAny(@NonNull List<Post> targets) {
+        boolean[] replied = new boolean[size];
+        int count = 0;
+        for (Post target : targets) {
+            int index = indexOf(target.no);
+            if (index < 0) continue;
+            for (int i = 0; i < replyCounts[index]; i++) {
+                if (!replied[replies[index][i]]) {
+                    replied[replies[index][i]] = true;
+                    count++;
+                }
+            }
+        }
+        List<Post> ret = new ArrayList<>(count);
+        for (int i = 0; i < size && ret.size() < count; i++) {
+            if (replied[i]) {
+                ret.add(posts[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the given post, and all the posts that replied to it, recursively; empty if the post isn't in the thread
+     */
+    @NonNull
+    public Set<Post> findPostWithReplies(int no) {
+        int start = indexOf(no);
+        if (start < 0) return new LinkedHashSet<>();
+
+        boolean[] visited = new boolean[size];
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited[start] = true;
+        Set<Post> ret = new LinkedHashSet<>();
+        while (head < tail) {
+            int current = queue[head++];
+            ret.add(posts[current]);
+            for (int i = 0; i < replyCounts[current]; i++) {
+                int reply = replies[current][i];
+                if (!visited[reply]) {
+                    visited[reply] = true;
+                    queue[tail++] = reply;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static int tableCapacity(int count) {
+        // at most half full
+        int capacity = 16;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void insert(int[] keys, int[] values, int key, int index) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = index + 1;
+    }
+
+    private static int find(int[] keys, int[] values, int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) return values[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // post numbers are sequential, spread them out over the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.adamantcheese.chan.core.net;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+
+import kotlin.Triple;
+
+/**
+ * An in-memory cache for decoded images, keyed by source, requested width and requested height.<br>
+ * There are two tiers: a strong LRU tier bounded by allocated bitmap bytes, and a secondary tier of soft references
+ * that holds whatever falls out of the strong tier until the garbage collector actually needs the memory; bitmaps
+ * found there are promoted back into the strong tier.<br>
+ * A request that misses can still be served from a larger cached copy of the same source, by scaling that copy down,
+ * so the same image at slightly different sizes doesn't need to be fetched and decoded again. That scaling is left to
+ * the caller, see {@link #getLarger(String, int, int)}, so it's never done under the cache's lock.
+ */
+public class ImageMemoryCache {
+    // source, width, height
+    private final LruCache<Triple<String, Integer, Integer>, Bitmap> strong;
+    private final Map<Triple<String, Integer, Integer>, KeyedReference> soft = new HashMap<>();
+    private final ReferenceQueue<Bitmap> clearedReferences = new ReferenceQueue<>();
+    // every key in either tier, by source
+    private final Map<String, Set<Triple<String, Integer, Integer>>> variants = new HashMap<>();
+    private boolean clearing;
+
+    private long hits;
+    private long softHits;
+    private long scaledHits;
+    private long misses;
+    private long evictions;
+    private long softCleared;
+
+    /**
+     * @param maxBytes the maximum number of allocated bitmap bytes to strongly hold on to
+     */
+    public ImageMemoryCache(int maxBytes) {
+        strong = new LruCache<Triple<String, Integer, Integer>, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(@NonNull Triple<String, Integer, Integer> key, @NonNull Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(
+                    boolean evicted,
+                    @NonNull Triple<String, Integer, Integer> key,
+                    @NonNull Bitmap oldValue,
+                    @Nullable Bitmap newValue
+            ) {
+                onStrongRemoved(evicted, key, oldValue);
+            }
+        };
+    }
+
+    /**
+     * @param source an identifier for the image, usually its URL
+     * @param width  the requested width, 0 for unbounded
+     * @param height the requested height, 0 for unbounded
+     * @return a cached bitmap for the request, or null if there is none; a larger one may still be available from
+     * {@link #getLarger(String, int, int)}
+     */
+    @AnyThread
+    @Nullable
+    public synchronized Bitmap get(@NonNull String source, int width, int height) {
+        drainClearedReferences();
+        Triple<String, Integer, Integer> key = new Triple<>(source, width, height);
+        Bitmap bitmap = strong.get(key);
+        if (bitmap != null) {
+            hits++;
+            return bitmap;
+        }
+
+        bitmap = getSoft(key);
+        if (bitmap != null) {
+            softHits++;
+            strong.put(key, bitmap);
+            return bitmap;
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * @param source an identifier for the image, usually its URL
+     * @param width  the requested width, 0 for unbounded
+     * @param height the requested height, 0 for unbounded
+     * @param bitmap the bitmap to cache for this request
+     */
+    @AnyThread
+    public synchronized void put(@NonNull String source, int width, int height, @NonNull Bitmap bitmap) {
+        drainClearedReferences();
+        Triple<String, Integer, Integer> key = new Triple<>(source, width, height);
+        addVariant(key);
+        soft.remove(key);
+        strong.put(key, bitmap);
+    }
+
+    @AnyThread
+    public synchronized void clear() {
+        clearing = true;
+        strong.evictAll();
+        clearing = false;
+        soft.clear();
+        variants.clear();
+    }
+
+    @AnyThread
+    public synchronized String getStats() {
+        drainClearedReferences();
+        return "Strong: " + strong.size() / 1024 + "/" + strong.maxSize() / 1024 + "KiB, " + soft.size()
+                + " soft references\n" + "Hits: " + hits + ", soft hits: " + softHits + ", scaled hits: " + scaledHits
+                + ", misses: " + misses + "\nEvictions: " + evictions + ", soft references cleared: " + softCleared;
+    }
+
+    private void onStrongRemoved(boolean evicted, Triple<String, Integer, Integer> key, Bitmap oldValue) {
+        if (!evicted || clearing) return;
+        // the bitmap might still be on screen, so it can't be recycled or pooled; let the GC decide when it goes
+        evictions++;
+        soft.put(key, new KeyedReference(key, oldValue, clearedReferences));
+    }
+
+    @Nullable
+    private Bitmap getSoft(Triple<String, Integer, Integer> key) {
+        KeyedReference reference = soft.remove(key);
+        if (reference == null) return null;
+        Bitmap bitmap = reference.get();
+        if (bitmap == null || bitmap.isRecycled()) {
+            removeVariant(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return the smallest cached bitmap of this source that was requested at a size that covers this request, or null
+     * if there is none; scale it down off the main thread, then hand both to
+     * {@link #putScaled(String, int, int, Bitmap, Bitmap)}
+     */
+    @AnyThread
+    @Nullable
+    public synchronized Bitmap getLarger(@NonNull String source, int width, int height) {
+        drainClearedReferences();
+        Set<Triple<String, Integer, Integer>> keys = variants.get(source);
+        if (keys == null) return null;
+
+        Bitmap best = null;
+        for (Triple<String, Integer, Integer> candidate : keys) {
+            if (!covers(candidate.getSecond(), width) || !covers(candidate.getThird(), height)) continue;
+            Bitmap bitmap = strong.get(candidate);
+            if (bitmap == null) {
+                KeyedReference reference = soft.get(candidate);
+                bitmap = reference == null ? null : reference.get();
+            }
+            if (bitmap == null || bitmap.isRecycled()) continue;
+            if (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount()) {
+                best = bitmap;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param larger the bitmap that {@link #getLarger(String, int, int)} returned for this request
+     * @param scaled that bitmap scaled down to fit this request; may be the same bitmap if it already fit
+     */
+    @AnyThread
+    public synchronized void putScaled(
+            @NonNull String source, int width, int height, @NonNull Bitmap larger, @NonNull Bitmap scaled
+    ) {
+        scaledHits++;
+        if (scaled != larger) {
+            put(source, width, height, scaled);
+            return;
+        }
+
+        // already small enough as-is; just mark it as used, rather than holding a second entry for it
+        Set<Triple<String, Integer, Integer>> keys = variants.get(source);
+        if (keys == null) return;
+        for (Triple<String, Integer, Integer> key : new ArrayList<>(keys)) {
+            Bitmap cached = strong.get(key);
+            if (cached == null) {
+                KeyedReference reference = soft.get(key);
+                cached = reference == null ? null : reference.get();
+            }
+            if (cached == larger) {
+                touch(key);
+                return;
+            }
+        }
+    }
+
+    private void touch(Triple<String, Integer, Integer> key) {
+        if (strong.get(key) == null) {
+            Bitmap bitmap = getSoft(key);
+            if (bitmap != null) {
+                strong.put(key, bitmap);
+            }
+        }
+    }
+
+    /**
+     * @return true if an image requested with the cached bound is at least as large as one requested with the
+     * requested bound; 0 is unbounded
+     */
+    private static boolean covers(int cachedBound, int requestedBound) {
+        return cachedBound == 0 || (requestedBound != 0 && cachedBound >= requestedBound);
+    }
+
+    private void addVariant(Triple<String, Integer, Integer> key) {
+        Set<Triple<String, Integer, Integer>> keys = variants.get(key.getFirst());
+        if (keys == null) {
+            keys = new HashSet<>();
+            variants.put(key.getFirst(), keys);
+        }
+        keys.add(key);
+    }
+
+    private void removeVariant(Triple<String, Integer, Integer> key) {
+        Set<Triple<String, Integer, Integer>> keys = variants.get(key.getFirst());
+        if (keys == null) return;
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            variants.remove(key.getFirst());
+        }
+    }
+
+    private void drainClearedReferences() {
+        KeyedReference reference;
+        while ((reference = (KeyedReference) clearedReferences.poll()) != null) {
+            // only drop the key if it wasn't put back in the meantime
+            if (soft.get(reference.key) == reference) {
+                soft.remove(reference.key);
+                removeVariant(reference.key);
+                softCleared++;
+            }
+        }
+    }
+
+    private static class KeyedReference
+            extends SoftReference<Bitmap> {
+        private final Triple<String, Integer, Integer> key;
+
+        private KeyedReference(
+                Triple<String, Integer, Integer> key, Bitmap referent, ReferenceQueue<? super Bitmap> queue
+        ) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.adamantcheese.chan.core.net;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import okhttp3.*;
+import okio.*;
+
+/**
+ * A disk cache for full-size media, so that it never has to be held on the heap as a whole.<br>
+ * Response bodies are streamed straight into a file in here, which can then be opened by path by the region decoder or
+ * by GifDrawable; files are keyed by URL, so opening the same media again doesn't need a request at all. The least
+ * recently used files are trimmed once the cache goes over {@link #MAX_CACHE_BYTES}, except for the ones a view has
+ * marked as in use with {@link #acquire(File)}.<br>
+ * Requests for this media should skip OkHttp's own cache, as this cache already has a copy.
+ */
+public class MediaDiskCache {
+    private static final long MAX_CACHE_BYTES = 100 * MB;
+    private static final File MEDIA_DIR = new File(getCacheDir(), "media");
+
+    // file name to the number of views using it
+    private static final Map<String, Integer> inUse = new HashMap<>();
+
+    private static File getFile(HttpUrl url) {
+        return new File(MEDIA_DIR, ByteString.encodeUtf8(url.toString()).md5().hex());
+    }
+
+    /**
+     * @return the cached file for this url, or null if it isn't cached
+     */
+    @AnyThread
+    @Nullable
+    public static File get(@NonNull HttpUrl url) {
+        File file = getFile(url);
+        if (!file.isFile()) return null;
+        // mark as recently used; this is a write, so it's kept off the caller's thread
+        long now = System.currentTimeMillis();
+        //noinspection ResultOfMethodCallIgnored
+        BackgroundUtils.runOnBackgroundThread(() -> file.setLastModified(now));
+        return file;
+    }
+
+    /**
+     * Keep this file from being trimmed until it is released again; every acquire needs a matching release.
+     */
+    @AnyThread
+    public static void acquire(@NonNull File file) {
+        synchronized (inUse) {
+            Integer count = inUse.get(file.getName());
+            inUse.put(file.getName(), count == null ? 1 : count + 1);
+        }
+    }
+
+    @AnyThread
+    public static void release(@NonNull File file) {
+        synchronized (inUse) {
+            Integer count = inUse.get(file.getName());
+            if (count == null || count <= 1) {
+                inUse.remove(file.getName());
+            } else {
+                inUse.put(file.getName(), count - 1);
+            }
+        }
+    }
+
+    @WorkerThread
+    private static void trim() {
+        File[] files = MEDIA_DIR.listFiles();
+        if (files == null || files.length == 0) return;
+        Arrays.sort(files, (f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
+        // always keep the most recent file, even if it is larger than the cache on its own
+        long total = files[0].length();
+        for (int i = 1; i < files.length; i++) {
+            total += files[i].length();
+            if (total <= MAX_CACHE_BYTES) continue;
+            synchronized (inUse) {
+                // a view may not have opened its file yet, or may open it again later, so those are left alone
+                if (!inUse.containsKey(files[i].getName())) {
+                    //noinspection ResultOfMethodCallIgnored
+                    files[i].delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams a response body into the cache file for the given url, and returns that file.
+     */
+    public static class FileConverter
+            implements NetUtilsClasses.Converter<File, Response> {
+        private final HttpUrl url;
+
+        /**
+         * @param url the url to cache the response under; this is not taken from the response, as redirects change it
+         */
+        public FileConverter(@NonNull HttpUrl url) {
+            this.url = url;
+        }
+
+        @Override
+        public File convert(Response response)
+                throws Exception {
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("No body!");
+            //noinspection ResultOfMethodCallIgnored
+            MEDIA_DIR.mkdirs();
+            File file = getFile(url);
+            // unique temp file, as the same url may be downloading for more than one view at a time
+            File temp = File.createTempFile(file.getName(), ".tmp", MEDIA_DIR);
+            try (BufferedSink sink = Okio.buffer(Okio.sink(temp))) {
+                sink.writeAll(body.source());
+            } catch (Exception e) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw e;
+            }
+            // write then rename, so a partially written file is never opened
+            if (!temp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Failed to move media into cache");
+            }
+            try {
+                trim();
+            } catch (Exception e) {
+                Logger.w("MediaDiskCache", "Failed to trim media cache", e);
+            }
+            return file;
+        }
+    }
+}
@@ -15,7 +15,6 @@ import android.webkit.WebSettings;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.collection.LruCache;
 import androidx.core.util.Pair;
 
 import com.franmontiel.persistentcookiejar.PersistentCookieJar;
@@ -38,7 +37,6 @@ import kotlin.Triple;
 import kotlin.io.FilesKt;
 import okhttp3.*;
 import okhttp3.internal.http2.StreamResetException;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 public class NetUtils {
     public static final int MB = 1024 * 1024;
@@ -59,6 +57,19 @@ public class NetUtils {
             .cookieJar(new WebviewSyncCookieManager(new PersistentCookieJar(new SetCookieCache(),
                     new SharedPrefsCookiePersistor(getAppContext())
             )))
+            .addInterceptor(chain -> {
+                // interceptor to resume cut off downloads for any request tagged with a file converter; checking for a
+                // partial file touches the disk, so it's done here on OkHttp's thread, not the caller's
+                NetUtilsClasses.TempFileConverter converter =
+                        chain.request().tag(NetUtilsClasses.TempFileConverter.class);
+                if (converter == null) return chain.proceed(chain.request());
+                Request.Builder request = chain.request().newBuilder();
+                Headers resumeHeaders = converter.getResumeHeaders();
+                for (int i = 0; i < resumeHeaders.size(); i++) {
+                    request.header(resumeHeaders.name(i), resumeHeaders.value(i));
+                }
+                return chain.proceed(request.build());
+            })
             .addNetworkInterceptor(chain -> {
                 // interceptor to add the User-Agent for all requests
                 Request request = chain
@@ -67,6 +78,14 @@ public class NetUtils {
                         .header("User-Agent", WebSettings.getDefaultUserAgent(AndroidUtils.getAppContext()))
                         .build();
                 return chain.proceed(request);
+            })
+            .addNetworkInterceptor(chain -> {
+                // interceptor to report download progress for any request tagged with a progress listener
+                Response response = chain.proceed(chain.request());
+                ProgressResponseBody.ProgressListener progressListener =
+                        chain.request().tag(ProgressResponseBody.ProgressListener.class);
+                if (progressListener == null) return response;
+                return response.newBuilder().body(new ProgressResponseBody(response, progressListener)).build();
             }));
 
     /**
@@ -115,17 +134,11 @@ public class NetUtils {
 
     // max 1/4 the maximum Dalvik runtime size
     // by default, the max heap size of stock android is 512MiB; keep that in mind if you change things here
-    // url, width, height request -> bitmap
-    private static final LruCache<Triple<HttpUrl, Integer, Integer>, Bitmap> imageCache =
-            new LruCache<Triple<HttpUrl, Integer, Integer>, Bitmap>((int) (getRuntime().maxMemory() / 4)) {
-                @Override
-                protected int sizeOf(@NonNull Triple<HttpUrl, Integer, Integer> key, Bitmap value) {
-                    return value.getByteCount();
-                }
-            };
+    public static final ImageMemoryCache imageCache = new ImageMemoryCache((int) (getRuntime().maxMemory() / 4));
 
     public static void clearImageCache() {
-        imageCache.evictAll();
+        imageCache.clear();
+        BitmapPool.clear();
     }
 
     public static Call makeHttpCall(HttpCall<?> httpCall) {
@@ -154,9 +167,7 @@ public class NetUtils {
         httpCall.setup(requestBuilder, progressListener);
         OkHttpClient client = applicationClient; // default to this client
         if (ChanSettings.verboseLogs.get()) {
-            HttpLoggingInterceptor debuggingInterceptor = new HttpLoggingInterceptor();
-            debuggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
-            client = applicationClient.newBuilder().addNetworkInterceptor(debuggingInterceptor).build();
+            client = applicationClient.getLoggingClient();
         }
         for (Interceptor i : extraInterceptors) {
             client = client.newBuilder().addInterceptor(i).build();
@@ -180,7 +191,8 @@ public class NetUtils {
     }
 
     /**
-     * Get a raw, cached response.
+     * Get a raw, cached response, streamed to a file.
+     * If a previous request for the same file was cut off, only the rest of it is requested.
      * Files will be deleted after an hour, when the application goes into the background!
      *
      * @param url              the url to download as a file
@@ -197,14 +209,26 @@ public class NetUtils {
             @NonNull final ResponseResult<File> result,
             @Nullable final ProgressResponseBody.ProgressListener progressListener
     ) {
-        return makeRequest(applicationClient.getHttpRedirectClient(),
+        // the converter is tagged onto the request by makeCall, which lets the client's interceptor resume the download
+        return makeCall(applicationClient.getHttpRedirectClient(),
                 url,
                 new NetUtilsClasses.TempFileConverter(filename, fileExt),
                 new MainThreadResponseResult<>(result),
                 progressListener,
                 ONE_DAY_CACHE,
-                0
-        );
+                null,
+                0,
+                true
+        ).first;
+    }
+
+    /**
+     * @param url the url of a response
+     * @return the file the OkHttp cache would store the body of the response for this url in; this may not exist
+     */
+    static File getCachedBodyFile(HttpUrl url) {
+        // OkHttp's DiskLruCache keeps the response body of each entry in "key.1"
+        return new File(OK_HTTP_CACHE.directory(), Cache.key(url) + ".1");
     }
 
     /**
@@ -256,8 +280,15 @@ public class NetUtils {
         return ret == null ? null : ret.getFirst();
     }
 
+    // (url, width, height) -> the single call fetching and decoding that bitmap
+    private static final RequestCoalescer<Triple<String, Integer, Integer>, BitmapRunnable> bitmapRequests =
+            new RequestCoalescer<>();
+
     /**
-     * Request a bitmap with resizing.
+     * Request a bitmap with resizing.<br>
+     * Enqueued requests for the same url and size share a single call and decode while it is in flight; the returned
+     * call only cancels the shared one once every request sharing it has been cancelled. The first request's timeout
+     * is used for the shared call.
      *
      * @param url        The request URL. If null, null will be returned.
      * @param result     The callback for this call. If null, null will be returned.
@@ -266,7 +297,8 @@ public class NetUtils {
      * @param timeoutMs  Optional timeout value, in milliseconds (-1 for no timeout)
      * @param enqueue    Should this be enqueued or not
      * @param mainThread Should this result be run on the main thread or not (most wrappers do)
-     * @return An enqueued bitmap call.
+     * @return An enqueued bitmap call. The callback is only set if this isn't enqueued, for the caller to run the call
+     * with; an enqueued call may be shared, and its callback belongs to the shared call.
      */
     public static Triple<Call, Callback, Runnable> makeBitmapRequest(
             final HttpUrl url,
@@ -278,142 +310,183 @@ public class NetUtils {
             boolean enqueue,
             boolean mainThread
     ) {
-        BitmapRunnable runnable = new BitmapRunnable(url, null, null, result);
         if (url == null || result == null) return null;
-        Bitmap cachedBitmap = imageCache.get(new Triple<>(url, width, height));
+        BitmapRunnable runnable = new BitmapRunnable(url, result, mainThread, progressListener);
+        Bitmap cachedBitmap = imageCache.get(url.toString(), width, height);
         if (cachedBitmap != null) {
             runnable.setBitmap(cachedBitmap);
             runnable.setFromCache(true);
-            runOrEnqueueOnMainThread(runnable, mainThread);
+            runOrEnqueueOnMainThread(runnable);
             return null;
         }
-        OkHttpClient client = applicationClient.getHttpRedirectClient();
-        if (timeoutMs != -1) {
-            client = client.newBuilder().callTimeout(timeoutMs, TimeUnit.MILLISECONDS).build();
+
+        Bitmap larger = imageCache.getLarger(url.toString(), width, height);
+        if (larger != null) {
+            // scaling a large bitmap down can take a while, so it's never done on the caller's thread
+            BackgroundUtils.runOnBackgroundThread(() -> {
+                Bitmap scaled = BitmapUtils.scaleDown(larger, width, height);
+                imageCache.putScaled(url.toString(), width, height, larger, scaled);
+                runnable.setBitmap(scaled);
+                runnable.setFromCache(true);
+                runOrEnqueueOnMainThread(runnable);
+            });
+            return null;
         }
-        client = client.newBuilder().addNetworkInterceptor(chain -> {
-            Response originalResponse = chain.proceed(chain.request());
-            return originalResponse
-                    .newBuilder()
-                    .body(new ProgressResponseBody(originalResponse, progressListener))
-                    .build();
-        }).build();
-        Call call = client.newCall(new Request.Builder()
+
+        if (!enqueue) {
+            // the caller will run this themselves, so it can't be shared
+            Pair<Call, Callback> call = makeBitmapCall(url, width, height, timeoutMs, progressListener, (e, b) -> {
+                runnable.setException(e);
+                runnable.setBitmap(b);
+                runOrEnqueueOnMainThread(runnable);
+            });
+            return new Triple<>(call.first, call.second, runnable);
+        }
+
+        Call call = bitmapRequests.subscribe(new Triple<>(url.toString(), width, height), runnable, group -> {
+            // forward progress to everyone currently waiting on this call
+            ProgressResponseBody.ProgressListener sharedProgress = (source, bytesRead, contentLength, start, done) -> {
+                for (BitmapRunnable subscriber : group.getSubscribers()) {
+                    if (subscriber.progressListener != null) {
+                        subscriber.progressListener.onDownloadProgress(source,
+                                bytesRead,
+                                contentLength,
+                                start,
+                                done
+                        );
+                    }
+                }
+            };
+            Pair<Call, Callback> shared = makeBitmapCall(url, width, height, timeoutMs, sharedProgress, (e, b) -> {
+                for (BitmapRunnable subscriber : group.finish()) {
+                    subscriber.setException(e);
+                    subscriber.setBitmap(b);
+                    runOrEnqueueOnMainThread(subscriber);
+                }
+            });
+            shared.first.enqueue(shared.second);
+            return shared.first;
+        });
+        return new Triple<>(call, null, runnable);
+    }
+
+    public static String getBitmapRequestStats() {
+        return bitmapRequests.getStats();
+    }
+
+    private static Pair<Call, Callback> makeBitmapCall(
+            final HttpUrl url,
+            final int width,
+            final int height,
+            final int timeoutMs,
+            @Nullable final ProgressResponseBody.ProgressListener progressListener,
+            final BitmapDelivery delivery
+    ) {
+        Call call = applicationClient.getHttpRedirectClient().newCall(new Request.Builder()
                 .url(url)
                 .addHeader("Referer", url.toString())
                 .cacheControl(ONE_YEAR_CACHE)
+                .tag(ProgressResponseBody.ProgressListener.class, progressListener)
                 .build());
+        if (timeoutMs != -1) {
+            call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
         Callback callback = new Callback() {
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
                 if (!isCancelledException(e)) {
                     Logger.w("NetUtils", "Error loading bitmap from " + url);
-                    runnable.setException(e);
-                    runOrEnqueueOnMainThread(runnable, mainThread);
                 }
+                delivery.deliver(e, null);
             }
 
             @Override
             public void onResponse(@NotNull Call call, @NotNull Response response) {
                 try (ResponseBody body = response.body()) {
                     if (body == null) {
-                        runnable.setException(new NullPointerException("No response data"));
-                        runOrEnqueueOnMainThread(runnable, mainThread);
+                        delivery.deliver(new NullPointerException("No response data"), null);
                         return;
                     }
 
                     if (!response.isSuccessful()) {
-                        runnable.setException(new HttpCodeException(response));
-                        runOrEnqueueOnMainThread(runnable, mainThread);
+                        delivery.deliver(new HttpCodeException(response), null);
                         return;
                     }
 
+                    Bitmap b;
                     if ("webm".equalsIgnoreCase(Files.getFileExtension(url.toString()))) {
                         File tempFile = new File(getCacheDir(), UUID.randomUUID().toString());
                         if (!tempFile.createNewFile()) {
                             tempFile.delete();
-                            runnable.setException(new IOException("Failed to create temp file for decode."));
-                            runOrEnqueueOnMainThread(runnable, mainThread);
+                            delivery.deliver(new IOException("Failed to create temp file for decode."), null);
+                            return;
                         }
                         FilesKt.writeBytes(tempFile, body.bytes());
-                        Bitmap b = BitmapUtils.decodeFilePreviewImage(tempFile, 0, 0, mainThread ? null : bitmap -> {
-                            //noinspection ResultOfMethodCallIgnored
-                            tempFile.delete();
-                            checkBitmap(runnable, url, width, height, bitmap, false);
-                        }, false);
-                        if (b != null) {
-                            //noinspection ResultOfMethodCallIgnored
-                            tempFile.delete();
-                            checkBitmap(runnable, url, width, height, b, true);
-                        }
+                        b = BitmapUtils.decodeFilePreviewImage(tempFile, 0, 0, null, false);
+                        //noinspection ResultOfMethodCallIgnored
+                        tempFile.delete();
                     } else {
                         ExceptionCatchingInputStream wrappedStream =
                                 new ExceptionCatchingInputStream(body.byteStream());
-                        Bitmap b = BitmapUtils.decode(wrappedStream, width, height);
+                        b = BitmapUtils.decode(wrappedStream, width, height);
                         if (wrappedStream.getException() != null) {
-                            runnable.setException(wrappedStream.getException());
-                            runOrEnqueueOnMainThread(runnable, mainThread);
+                            delivery.deliver(wrappedStream.getException(), null);
                             return;
                         }
-                        checkBitmap(runnable, url, width, height, b, mainThread);
                     }
+
+                    if (b == null) {
+                        delivery.deliver(new NullPointerException("Bitmap returned is null"), null);
+                        return;
+                    }
+                    b.prepareToDraw();
+                    imageCache.put(url.toString(), width, height, b);
+                    delivery.deliver(null, b);
                 } catch (Exception e) {
-                    runnable.setException(e);
-                    runOrEnqueueOnMainThread(runnable, mainThread);
+                    delivery.deliver(e, null);
                 } catch (OutOfMemoryError e) {
+                    BitmapPool.clear();
                     getRuntime().gc();
-                    runnable.setException(new IOException(e));
-                    runOrEnqueueOnMainThread(runnable, mainThread);
+                    delivery.deliver(new IOException(e), null);
                 }
             }
         };
-        if (enqueue) {
-            call.enqueue(callback);
-        }
-        return new Triple<>(call, callback, runnable);
-    }
-
-    private static void checkBitmap(
-            BitmapRunnable runnable,
-            HttpUrl url,
-            int requestWidth,
-            int requestedHeight,
-            Bitmap result,
-            boolean mainThread
-    ) {
-        if (result == null) {
-            runnable.setException(new NullPointerException("Bitmap returned is null"));
-        } else {
-            result.prepareToDraw();
-            imageCache.put(new Triple<>(url, requestWidth, requestedHeight), result);
-            runnable.setBitmap(result);
-        }
-        runOrEnqueueOnMainThread(runnable, mainThread);
+        return new Pair<>(call, callback);
     }
 
-    private static void runOrEnqueueOnMainThread(BitmapRunnable runnable, boolean mainThread) {
-        if (mainThread) {
+    private static void runOrEnqueueOnMainThread(BitmapRunnable runnable) {
+        if (runnable.mainThread) {
             BackgroundUtils.runOnMainThread(runnable);
         } else {
             runnable.run();
         }
     }
 
+    private interface BitmapDelivery {
+        void deliver(@Nullable Exception exception, @Nullable Bitmap bitmap);
+    }
+
     private static class BitmapRunnable
             implements Runnable {
         private final HttpUrl url;
         private Exception exception;
         private Bitmap bitmap;
         private final BitmapResult result;
+        private final boolean mainThread;
+        @Nullable
+        private final ProgressResponseBody.ProgressListener progressListener;
         private boolean fromCache = false;
 
         public BitmapRunnable(
-                final HttpUrl url, Exception exception, Bitmap bitmap, BitmapResult result
+                final HttpUrl url,
+                BitmapResult result,
+                boolean mainThread,
+                @Nullable ProgressResponseBody.ProgressListener progressListener
         ) {
             this.url = url;
-            this.exception = exception;
-            this.bitmap = bitmap;
             this.result = result;
+            this.mainThread = mainThread;
+            this.progressListener = progressListener;
         }
 
         public Exception getException() {
@@ -612,23 +685,28 @@ public class NetUtils {
             int timeoutMs,
             boolean enqueue
     ) {
-        OkHttpClient.Builder clientBuilder = client.newBuilder();
-        clientBuilder.callTimeout(timeoutMs, TimeUnit.MILLISECONDS);
-        clientBuilder.addNetworkInterceptor(chain -> {
-            Response originalResponse = chain.proceed(chain.request());
-            return originalResponse
-                    .newBuilder()
-                    .body(new ProgressResponseBody(originalResponse, progressListener))
-                    .build();
-        });
-        Request.Builder builder = new Request.Builder().url(url).addHeader("Referer", url.toString());
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .addHeader("Referer", url.toString())
+                .tag(ProgressResponseBody.ProgressListener.class, progressListener);
+        if (converter instanceof NetUtilsClasses.TempFileConverter) {
+            builder.tag(NetUtilsClasses.TempFileConverter.class, (NetUtilsClasses.TempFileConverter) converter);
+        }
         if (cacheControl != null) {
             builder.cacheControl(cacheControl);
         }
         if (extraHeaders != null) {
-            builder.headers(extraHeaders);
+            // added on top of the ones above, replacing only headers of the same name
+            for (String name : extraHeaders.names()) {
+                builder.removeHeader(name);
+                for (String value : extraHeaders.values(name)) {
+                    builder.addHeader(name, value);
+                }
+            }
         }
-        Call call = clientBuilder.build().newCall(builder.build());
+        Call call = client.newCall(builder.build());
+        // a timeout of 0 is no timeout, same as OkHttpClient.Builder#callTimeout
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
         Callback callback = new Callback() {
             @Override
             public void onFailure(@NotNull Call call, @NotNull IOException e) {
@@ -1,14 +1,18 @@
 package com.github.adamantcheese.chan.core.net;
 
 import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.DAYS;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.system.Os;
 import android.util.JsonReader;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.core.net.interceptors.CloudflareInterceptor;
@@ -22,11 +26,12 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
 import java.io.*;
-import java.util.List;
+import java.util.*;
 
 import kotlin.io.FilesKt;
 import okhttp3.*;
 import okhttp3.internal.http.HttpStatusCodesKt;
+import okhttp3.logging.HttpLoggingInterceptor;
 import okio.*;
 
 /**
@@ -39,14 +44,30 @@ public class NetUtilsClasses {
      */
     public static class OkHttpClientWithUtils
             extends OkHttpClient {
+        // derived clients are built once and reused; they share this client's connection pool and dispatcher
+        private OkHttpClient httpRedirectClient;
+        private OkHttpClient loggingClient;
 
         public OkHttpClientWithUtils(Builder builder) {
             super(builder);
         }
 
         // This adds an HTTP redirect follower to the base client
-        public OkHttpClient getHttpRedirectClient() {
-            return newBuilder().addInterceptor(new HttpEquivRefreshInterceptor()).build();
+        public synchronized OkHttpClient getHttpRedirectClient() {
+            if (httpRedirectClient == null) {
+                httpRedirectClient = newBuilder().addInterceptor(new HttpEquivRefreshInterceptor()).build();
+            }
+            return httpRedirectClient;
+        }
+
+        // This adds header logging to the base client
+        public synchronized OkHttpClient getLoggingClient() {
+            if (loggingClient == null) {
+                HttpLoggingInterceptor debuggingInterceptor = new HttpLoggingInterceptor();
+                debuggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+                loggingClient = newBuilder().addNetworkInterceptor(debuggingInterceptor).build();
+            }
+            return loggingClient;
         }
 
         public OkHttpClient getCloudflareClient(Context context) {
@@ -269,27 +290,174 @@ public class NetUtilsClasses {
         return new Object();
     };
 
+    /**
+     * Streams a response body into a file in cache/requested, without holding it in memory.<br>
+     * Interrupted downloads leave a partial file behind, which {@link #getResumeHeaders()} turns into a Range
+     * request, so a retry only fetches the rest. If the response was served entirely from the OkHttp cache, the cached
+     * file is hard linked into place instead of being copied, so it isn't stored twice.
+     */
     public static class TempFileConverter
             implements Converter<File, Response> {
-        private final String filename;
-        private final String fileExt;
+        // partial files currently being written to; concurrent downloads of the same file don't share them
+        private static final Set<String> activePartFiles = new HashSet<>();
+
+        private final File file;
+        private final File partFile;
+        private final File validatorFile;
 
         public TempFileConverter(String filename, String fileExt) {
-            this.filename = filename;
-            this.fileExt = fileExt;
+            file = new File(new File(getCacheDir(), "requested"),
+                    StringUtils.fileNameRemoveBadCharacters(filename) + "." + fileExt
+            );
+            partFile = new File(file.getPath() + ".part");
+            validatorFile = new File(file.getPath() + ".validator");
+        }
+
+        /**
+         * @return headers to add to the request for this file, asking for only the missing part if a previous attempt
+         * was cut off; empty if there's nothing to resume
+         */
+        @WorkerThread
+        public Headers getResumeHeaders() {
+            Headers.Builder headers = new Headers.Builder();
+            synchronized (activePartFiles) {
+                // another download is writing to the partial file, this one will get the whole file on its own
+                if (activePartFiles.contains(partFile.getPath())) return headers.build();
+            }
+            long partLength = partFile.length();
+            if (partLength > 0 && validatorFile.isFile()) {
+                try {
+                    String validator = FilesKt.readText(validatorFile, UTF_8).trim();
+                    if (!validator.isEmpty()) {
+                        // if the file changed since, the server sends all of it instead
+                        headers.add("Range", "bytes=" + partLength + "-").add("If-Range", validator);
+                    }
+                } catch (Exception ignored) {}
+            }
+            return headers.build();
         }
 
         @Override
         public @Nullable File convert(Response response)
                 throws Exception {
-            File tempFile = new File(new File(getCacheDir(), "requested"),
-                    StringUtils.fileNameRemoveBadCharacters(filename) + "." + fileExt
-            );
             ResponseBody body = response.body();
             if (body == null) throw new IOException("No body!");
-            tempFile.getParentFile().mkdirs();
-            FilesKt.writeBytes(tempFile, body.bytes());
-            return tempFile;
+            //noinspection ResultOfMethodCallIgnored
+            file.getParentFile().mkdirs();
+
+            if (linkFromCache(response)) {
+                synchronized (activePartFiles) {
+                    // a partial file that another download is still writing to isn't this one's to clean up
+                    if (!activePartFiles.contains(partFile.getPath())) {
+                        deletePartial();
+                    }
+                }
+                return file;
+            }
+
+            File target = partFile;
+            synchronized (activePartFiles) {
+                if (!activePartFiles.add(partFile.getPath())) {
+                    // someone else is downloading this same file right now; don't interfere with their partial file
+                    target = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+                }
+            }
+            try {
+                boolean append = false;
+                if (response.code() == HTTP_PARTIAL) {
+                    if (target != partFile) {
+                        // the partial file this range continues belongs to another download; leave it alone
+                        throw new IOException("Partial file is in use by another download");
+                    }
+                    if (getRangeStart(response) != partFile.length()) {
+                        deletePartial();
+                        throw new IOException("Server returned an unexpected range");
+                    }
+                    append = true;
+                } else if (target == partFile) {
+                    // a whole new response, remember how to check that a resumed download is still the same file
+                    String validator = response.header("ETag", response.header("Last-Modified"));
+                    if (validator != null) {
+                        FilesKt.writeText(validatorFile, validator, UTF_8);
+                    } else {
+                        //noinspection ResultOfMethodCallIgnored
+                        validatorFile.delete();
+                    }
+                }
+
+                // okio moves the body over in segments, so only a small fixed amount is in memory at a time
+                try (BufferedSink sink = Okio.buffer(append ? Okio.appendingSink(target) : Okio.sink(target))) {
+                    sink.writeAll(body.source());
+                }
+
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                if (!target.renameTo(file)) throw new IOException("Could not move downloaded file into place");
+                if (target == partFile) {
+                    //noinspection ResultOfMethodCallIgnored
+                    validatorFile.delete();
+                }
+                return file;
+            } finally {
+                if (target == partFile) {
+                    synchronized (activePartFiles) {
+                        activePartFiles.remove(partFile.getPath());
+                    }
+                } else {
+                    //noinspection ResultOfMethodCallIgnored
+                    target.delete();
+                }
+            }
+        }
+
+        /**
+         * @return true if the response came straight from the OkHttp cache, and its file was linked into place
+         */
+        private boolean linkFromCache(Response response) {
+            Response cacheResponse = response.cacheResponse();
+            if (response.networkResponse() != null || cacheResponse == null) return false;
+            // the cache stores bodies as they came over the network, so only plain, complete bodies can be used
+            if (response.code() != HTTP_OK || cacheResponse.header("Content-Encoding") != null) {
+                return false;
+            }
+            File cached = NetUtils.getCachedBodyFile(response.request().url());
+            String contentLength = cacheResponse.header("Content-Length");
+            if (!cached.isFile() || (contentLength != null && !contentLength.equals(String.valueOf(cached.length())))) {
+                return false;
+            }
+            try {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                Os.link(cached.getAbsolutePath(), file.getAbsolutePath());
+                // the link has the cached file's age; reset it, so it isn't cleaned up as an old request right away
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private void deletePartial() {
+            //noinspection ResultOfMethodCallIgnored
+            partFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            validatorFile.delete();
+        }
+
+        /**
+         * @return the first byte of a Content-Range header, e.g. "bytes 100-199/200", or -1 if there isn't one
+         */
+        private static long getRangeStart(Response response) {
+            String contentRange = response.header("Content-Range");
+            if (contentRange == null || !contentRange.startsWith("bytes ")) return -1;
+            int dash = contentRange.indexOf('-');
+            if (dash < 0) return -1;
+            try {
+                return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
     }
 
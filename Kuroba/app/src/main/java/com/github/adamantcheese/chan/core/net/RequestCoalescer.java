@@ -0,0 +1,181 @@
+package com.github.adamantcheese.chan.core.net;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import okhttp3.*;
+import okio.Timeout;
+
+/**
+ * Lets concurrent requests for the same thing share a single in-flight call.<br>
+ * The first subscriber for a key starts the shared call; anyone subscribing to the same key before it finishes is
+ * attached to it instead of making their own. Each subscriber gets their own {@link Call} back, and cancelling it only
+ * detaches that subscriber; the shared call is only cancelled once every subscriber has gone away.<br>
+ * Whoever handles the shared call's result should call {@link Group#finish()} to get the subscribers to deliver to.
+ *
+ * @param <K> the key requests are coalesced on
+ * @param <S> the type of subscriber
+ */
+public class RequestCoalescer<K, S> {
+    private final Map<K, Group> inFlight = new HashMap<>();
+
+    private long issued;
+    private long coalesced;
+    private long cancelled;
+
+    /**
+     * @param key        the key for this request
+     * @param subscriber the subscriber to attach to the shared call
+     * @param starter    used to create and enqueue the shared call, if there isn't one in flight for the key already
+     * @return a call that represents this subscriber only; cancelling it detaches the subscriber from the shared call
+     */
+    @AnyThread
+    public synchronized Call subscribe(@NonNull K key, @NonNull S subscriber, @NonNull CallStarter<K, S> starter) {
+        Group group = inFlight.get(key);
+        if (group == null) {
+            group = new Group(key);
+            group.subscribers.add(subscriber);
+            inFlight.put(key, group);
+            issued++;
+            group.call = starter.start(group);
+        } else {
+            group.subscribers.add(subscriber);
+            coalesced++;
+        }
+        return new Subscription(group, subscriber);
+    }
+
+    public synchronized String getStats() {
+        return "Issued: " + issued + ", coalesced: " + coalesced + ", shared calls cancelled: " + cancelled
+                + ", in flight: " + inFlight.size();
+    }
+
+    private synchronized void unsubscribe(Group group, S subscriber) {
+        if (group.finished || !removeIdentity(group.subscribers, subscriber)) return;
+        if (!group.subscribers.isEmpty()) return;
+        // nobody is interested anymore
+        group.finished = true;
+        inFlight.remove(group.key);
+        cancelled++;
+        if (group.call != null) {
+            group.call.cancel();
+        }
+    }
+
+    private static <T> boolean removeIdentity(List<T> list, T item) {
+        for (Iterator<T> iterator = list.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == item) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public interface CallStarter<K, S> {
+        /**
+         * @param group the group to start a shared call for; keep a reference to it to finish it later
+         * @return the shared call, already enqueued
+         */
+        Call start(RequestCoalescer<K, S>.Group group);
+    }
+
+    public class Group {
+        public final K key;
+        private final List<S> subscribers = new ArrayList<>();
+        private Call call;
+        private boolean finished;
+
+        private Group(K key) {
+            this.key = key;
+        }
+
+        /**
+         * Marks the shared call as done; subscribers for the key after this start a new call.
+         *
+         * @return the subscribers that are still attached, in the order they subscribed
+         */
+        public List<S> finish() {
+            synchronized (RequestCoalescer.this) {
+                if (!finished) {
+                    finished = true;
+                    inFlight.remove(key);
+                }
+                List<S> ret = new ArrayList<>(subscribers);
+                subscribers.clear();
+                return ret;
+            }
+        }
+
+        /**
+         * @return a copy of the subscribers currently attached
+         */
+        public List<S> getSubscribers() {
+            synchronized (RequestCoalescer.this) {
+                return new ArrayList<>(subscribers);
+            }
+        }
+    }
+
+    private class Subscription
+            implements Call {
+        private final Group group;
+        private final S subscriber;
+        private volatile boolean canceled;
+
+        private Subscription(Group group, S subscriber) {
+            this.group = group;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            unsubscribe(group, subscriber);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return true;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return group.call.request();
+        }
+
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return group.call.timeout();
+        }
+
+        @NotNull
+        @Override
+        public Response execute() {
+            throw new IllegalStateException("Already Executed");
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback callback) {
+            throw new IllegalStateException("Already Executed");
+        }
+
+        @SuppressWarnings("MethodDoesntCallSuperMethod")
+        @NotNull
+        @Override
+        public Call clone() {
+            return group.call.clone();
+        }
+    }
+}
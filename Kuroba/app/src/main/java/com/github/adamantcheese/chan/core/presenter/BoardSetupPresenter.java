@@ -23,10 +23,11 @@ import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.repository.BoardRepository;
 import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
-import com.github.adamantcheese.chan.ui.helper.BoardHelper;
+import com.github.adamantcheese.chan.ui.helper.BoardSearchIndex;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -44,6 +45,8 @@ public class BoardSetupPresenter
     private BoardRepository.SitesBoards allBoardsObservable;
 
     private BackgroundUtils.Cancelable suggestionCall;
+    // only touched from the background; replaced whenever the site's boards are
+    private BoardSearchIndex boardSearchIndex;
 
     @Inject
     public BoardSetupPresenter(BoardManager boardManager) {
@@ -156,27 +159,23 @@ public class BoardSetupPresenter
         }
 
         final String query = userQuery == null ? null : userQuery.replace("/", "").replace("\\", "");
-        suggestionCall = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+        // also stops the search itself if it's already running, not just its result
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        BackgroundUtils.Cancelable call = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
             List<BoardSuggestion> suggestions = new ArrayList<>();
             if (site.boardsType().canList) {
                 Boards siteBoards = boardManager.getSiteBoards(site);
-                Boards allUnsavedBoards = new Boards();
-                for (Board siteBoard : siteBoards) {
-                    if (!siteBoard.saved) {
-                        allUnsavedBoards.add(siteBoard);
-                    }
-                }
-
                 Boards toSuggest;
                 if (TextUtils.isEmpty(query)) {
-                    toSuggest = new Boards(allUnsavedBoards);
+                    toSuggest = siteBoards;
                 } else {
-                    toSuggest = BoardHelper.search(allUnsavedBoards, query);
+                    toSuggest = getBoardSearchIndex(siteBoards).search(query, canceled);
                 }
 
                 for (Board board : toSuggest) {
-                    BoardSuggestion suggestion = new BoardSuggestion(board);
-                    suggestions.add(suggestion);
+                    if (!board.saved) {
+                        suggestions.add(new BoardSuggestion(board));
+                    }
                 }
             } else {
                 if (!TextUtils.isEmpty(query)) {
@@ -195,6 +194,17 @@ public class BoardSetupPresenter
                 addCallback.suggestionsWereChanged(result);
             }
         });
+        suggestionCall = () -> {
+            canceled.set(true);
+            call.cancel();
+        };
+    }
+
+    private synchronized BoardSearchIndex getBoardSearchIndex(Boards siteBoards) {
+        if (boardSearchIndex == null || !boardSearchIndex.isFor(siteBoards)) {
+            boardSearchIndex = new BoardSearchIndex(siteBoards);
+        }
+        return boardSearchIndex;
     }
 
     private void setOrder() {
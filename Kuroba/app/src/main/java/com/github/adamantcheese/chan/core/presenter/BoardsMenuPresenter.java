@@ -35,10 +35,11 @@ import com.github.adamantcheese.chan.core.site.Site;
 import com.github.adamantcheese.chan.core.site.SiteIcon;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
 import com.github.adamantcheese.chan.core.site.common.CommonSite;
-import com.github.adamantcheese.chan.ui.helper.BoardHelper;
+import com.github.adamantcheese.chan.ui.helper.BoardSearchIndex;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -96,6 +97,8 @@ public class BoardsMenuPresenter
         public List<Item> items = new ArrayList<>();
         private BackgroundUtils.Cancelable boardsCall;
         private final Context context;
+        // one per site's list of boards; lists that are replaced get a new index
+        private Map<Boards, BoardSearchIndex> boardSearchIndexes = new IdentityHashMap<>();
 
         public Items(Context context) {
             this.context = context;
@@ -105,7 +108,10 @@ public class BoardsMenuPresenter
             if (boardsCall != null) {
                 boardsCall.cancel();
             }
-            boardsCall = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            // also stops the search itself if it's already running, not just its result
+            AtomicBoolean canceled = new AtomicBoolean(false);
+            BackgroundUtils.Cancelable call = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+                Map<Boards, BoardSearchIndex> searchIndexes = getBoardSearchIndexes(allBoards);
                 List<Item> newItems = new ArrayList<>();
                 int itemIdCounter = 1;
 
@@ -126,7 +132,7 @@ public class BoardsMenuPresenter
                     } else {
                         // cap the amount of outputs to 5 instead of all boards, which could be a lot!
                         int count = 0;
-                        for (Board b : BoardHelper.search(boards, filter)) {
+                        for (Board b : searchIndexes.get(boards).search(filter, canceled)) {
                             if (count == 5) break;
                             newItems.add(new Item(itemIdCounter++, b));
                             count++;
@@ -156,6 +162,24 @@ public class BoardsMenuPresenter
                 setChanged();
                 notifyObservers();
             });
+            boardsCall = () -> {
+                canceled.set(true);
+                call.cancel();
+            };
+        }
+
+        private synchronized Map<Boards, BoardSearchIndex> getBoardSearchIndexes(
+                List<BoardRepository.SiteBoards> allBoards
+        ) {
+            Map<Boards, BoardSearchIndex> indexes = new IdentityHashMap<>();
+            for (BoardRepository.SiteBoards siteAndBoards : allBoards) {
+                BoardSearchIndex index = boardSearchIndexes.get(siteAndBoards.boards);
+                indexes.put(siteAndBoards.boards,
+                        index != null ? index : new BoardSearchIndex(siteAndBoards.boards)
+                );
+            }
+            boardSearchIndexes = indexes;
+            return indexes;
         }
 
         public int getCount() {
@@ -36,12 +36,14 @@ import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.site.http.Reply;
+import com.github.adamantcheese.chan.utils.BitmapReencoder;
 import com.github.adamantcheese.chan.utils.BitmapUtils;
 
 public class ImageReencodingPresenter {
     private final Context context;
     private final ImageReencodingPresenterCallback callback;
     private final Reply draft;
+    private final BitmapReencoder reencoder = new BitmapReencoder(BitmapReencoder.DEFAULT_MEMORY_CEILING);
 
     public ImageReencodingPresenter(Context context, ImageReencodingPresenterCallback callback, Loadable loadable) {
         this.context = context;
@@ -92,7 +94,7 @@ public class ImageReencodingPresenter {
         try {
             CompressFormat reencodeFormat =
                     callback.getReencodeFormat() == null ? getCurrentFileFormat() : callback.getReencodeFormat();
-            draft.file = BitmapUtils.reencodeBitmapFile(draft.file, options, reencodeFormat);
+            draft.file = reencoder.reencode(draft.file, options, reencodeFormat);
         } catch (Throwable error) {
             showToast(context, getString(R.string.could_not_apply_image_options, error.getMessage()));
             return;
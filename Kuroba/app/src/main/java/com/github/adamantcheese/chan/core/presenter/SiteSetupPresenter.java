@@ -38,7 +38,7 @@ public class SiteSetupPresenter {
     }
 
     public void show() {
-        callback.setBoardCount(DatabaseUtils.runTask(databaseBoardManager.getSiteSavedBoards(site)).size());
+        callback.setBoardCount(DatabaseUtils.runReadTask(databaseBoardManager.getSiteSavedBoards(site)).size());
         if (hasLogin) {
             callback.setIsLoggedIn(site.api().isLoggedIn());
         }
@@ -114,7 +114,7 @@ public class ThreadPresenter
 
             loadable.lastLoadDate =
                     ChanSettings.showHistory.get() ? GregorianCalendar.getInstance().getTime() : loadable.lastLoadDate;
-            DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
+            databaseLoadableManager.queueUpdate(loadable);
 
             chanLoader = ChanLoaderManager.obtain(loadable, this);
             chanLoader.addProgressListener(this);
@@ -135,6 +135,7 @@ public class ThreadPresenter
             ChanLoaderManager.release(chanLoader, this);
             chanLoader = null;
             loadable = null;
+            databaseLoadableManager.flushPendingUpdates();
 
             threadPresenterCallback.showLoading();
         }
@@ -146,16 +147,32 @@ public class ThreadPresenter
     }
 
     public void updateDatabaseLoadable() {
-        DatabaseUtils.runTaskAsync(databaseLoadableManager.updateLoadable(loadable, false));
+        databaseLoadableManager.queueUpdate(loadable);
     }
 
     public boolean isBound() {
         return chanLoader != null;
     }
 
+    /**
+     * Reload on request of the user; an unchanged thread or catalog is kept as-is.
+     */
     public void requestData() {
         BackgroundUtils.ensureMainThread();
 
+        if (isBound()) {
+            threadPresenterCallback.refreshUI();
+            threadPresenterCallback.showLoading();
+            chanLoader.requestRefresh();
+        }
+    }
+
+    /**
+     * Reload and parse everything again, for when filters, saved replies or the theme changed.
+     */
+    public void requestFreshData() {
+        BackgroundUtils.ensureMainThread();
+
         if (isBound()) {
             threadPresenterCallback.refreshUI();
             threadPresenterCallback.showLoading();
@@ -195,9 +212,13 @@ public class ThreadPresenter
     }
 
     public void onSearchEntered(String entered) {
+        onSearchEntered(entered, null);
+    }
+
+    private void onSearchEntered(String entered, @Nullable Runnable onShown) {
         searchQuery = entered;
         if (isBound() && chanLoader.getThread() != null) {
-            showPosts();
+            showPosts(onShown);
             if (TextUtils.isEmpty(entered)) {
                 threadPresenterCallback.setSearchStatus(null, true, false);
             } else {
@@ -210,8 +231,7 @@ public class ThreadPresenter
         if (this.postsOrder != postsOrder) {
             this.postsOrder = postsOrder;
             if (isBound() && chanLoader.getThread() != null) {
-                scrollTo(0, false);
-                showPosts();
+                showPosts(() -> scrollTo(0, false));
             }
         }
     }
@@ -262,11 +282,32 @@ public class ThreadPresenter
             return;
         }
 
+        // the marked post can only be scrolled to once the new posts are displayed
+        Runnable onShown = null;
+        if (loadable.markedNo >= 0) {
+            Post markedPost = PostUtils.findPostById(loadable.markedNo, chanLoader.getThread());
+            if (markedPost != null) {
+                boolean fromUrl = StartActivity.loadedFromURL;
+                StartActivity.loadedFromURL = false;
+                onShown = () -> {
+                    if (!isBound()) return;
+                    highlightPostNo(markedPost.no);
+                    if (BackgroundUtils.isInForeground()) {
+                        scrollToPost(markedPost, false);
+                    }
+                    if (fromUrl) {
+                        BackgroundUtils.runOnMainThread(() -> scrollToPost(markedPost, false), 1000);
+                    }
+                };
+            }
+            loadable.markedNo = -1;
+        }
+
         //allow for search refreshes inside the catalog
         if (result.loadable.isCatalogMode() && !TextUtils.isEmpty(searchQuery)) {
-            onSearchEntered(searchQuery);
+            onSearchEntered(searchQuery, onShown);
         } else {
-            showPosts();
+            showPosts(onShown);
         }
 
         if (loadable.isThreadMode()) {
@@ -297,21 +338,6 @@ public class ThreadPresenter
             }
         }
 
-        if (loadable.markedNo >= 0) {
-            Post markedPost = PostUtils.findPostById(loadable.markedNo, chanLoader.getThread());
-            if (markedPost != null) {
-                highlightPostNo(markedPost.no);
-                if (BackgroundUtils.isInForeground()) {
-                    scrollToPost(markedPost, false);
-                }
-                if (StartActivity.loadedFromURL) {
-                    BackgroundUtils.runOnMainThread(() -> scrollToPost(markedPost, false), 1000);
-                    StartActivity.loadedFromURL = false;
-                }
-            }
-            loadable.markedNo = -1;
-        }
-
         updateDatabaseLoadable();
 
         threadPresenterCallback.updateSubtitle(result.summarize(false));
@@ -464,11 +490,12 @@ public class ThreadPresenter
         if (isBound() && loadable.isThreadMode()) {
             if (searchOpen) {
                 searchQuery = null;
-                showPosts();
+                showPosts(() -> {
+                    highlightPostNo(post.no);
+                    scrollToPost(post, false);
+                });
                 threadPresenterCallback.setSearchStatus(null, false, true);
                 threadPresenterCallback.showSearch(false);
-                highlightPostNo(post.no);
-                scrollToPost(post, false);
             } else {
                 threadPresenterCallback.postClicked(post);
             }
@@ -706,7 +733,7 @@ public class ThreadPresenter
                     }
                 }
                 //force reload for reply highlighting
-                requestData();
+                requestFreshData();
                 break;
             case POST_OPTION_UNSAVE:
                 if (!isBound()) break;
@@ -726,7 +753,7 @@ public class ThreadPresenter
                     }
                 }
                 //force reload for reply highlighting
-                requestData();
+                requestFreshData();
                 break;
             case POST_OPTION_PIN:
                 Loadable threadPin = Loadable.forThread(post.board, post.no, PostHelper.getTitle(post, loadable));
@@ -889,14 +916,8 @@ public class ThreadPresenter
 
     @Override
     public void onShowPostReplies(Post post) {
-        if (!isBound()) return;
-        List<Post> posts = new ArrayList<>();
-        for (int no : post.repliesFrom) {
-            Post replyPost = PostUtils.findPostById(no, chanLoader.getThread());
-            if (replyPost != null) {
-                posts.add(replyPost);
-            }
-        }
+        if (!isBound() || chanLoader.getThread() == null) return;
+        List<Post> posts = chanLoader.getThread().getReplyGraph().getReplies(post.no);
         if (posts.size() > 0) {
             threadPresenterCallback.showPostsPopup(post, posts);
         }
@@ -1156,8 +1177,18 @@ public class ThreadPresenter
     }
 
     private void showPosts() {
+        showPosts(null);
+    }
+
+    /**
+     * @param onShown optional, called once the posts are displayed; the displayed list is only up to date from then
+     */
+    private void showPosts(@Nullable Runnable onShown) {
         if (chanLoader != null && chanLoader.getThread() != null) {
-            threadPresenterCallback.showPosts(chanLoader.getThread(), new PostsFilter(postsOrder, searchQuery));
+            threadPresenterCallback.showPosts(chanLoader.getThread(),
+                    new PostsFilter(postsOrder, searchQuery),
+                    onShown
+            );
         }
     }
 
@@ -1166,10 +1197,7 @@ public class ThreadPresenter
 
         if (isBound()) {
             if (wholeChain) {
-                ChanThread thread = chanLoader.getThread();
-                if (thread != null) {
-                    posts.addAll(PostUtils.findPostWithReplies(post.no, thread.getPosts()));
-                }
+                posts.addAll(PostUtils.findPostWithReplies(post.no, chanLoader.getThread()));
             } else {
                 posts.add(PostUtils.findPostById(post.no, chanLoader.getThread()));
             }
@@ -1243,7 +1271,10 @@ public class ThreadPresenter
 
     public interface ThreadPresenterCallback
             extends ProgressResponseBody.ProgressListener {
-        void showPosts(ChanThread thread, PostsFilter filter);
+        /**
+         * @param onShown optional, called on the main thread once the posts are displayed
+         */
+        void showPosts(ChanThread thread, PostsFilter filter, @Nullable Runnable onShown);
 
         void postClicked(Post post);
 
@@ -12,11 +12,9 @@ import android.util.TypedValue;
 import androidx.renderscript.RenderScript;
 
 import com.github.adamantcheese.chan.R;
+import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class BitmapRepository {
     public static RenderScript rs;
 
@@ -112,14 +110,13 @@ public class BitmapRepository {
         }
     }
 
-    private static final Map<Integer, Bitmap> exceptionMap = new HashMap<>();
-
     public static Bitmap getHttpExceptionBitmap(Context c, Exception e) {
         if (!(e instanceof NetUtilsClasses.HttpCodeException)) return paddedError;
         NetUtilsClasses.HttpCodeException httpException = (NetUtilsClasses.HttpCodeException) e;
-        if (exceptionMap.containsKey(httpException.code)) return exceptionMap.get(httpException.code);
-
         String code = String.valueOf(httpException.code);
+        Bitmap cached = NetUtils.imageCache.get("http_exception_" + code, 0, 0);
+        if (cached != null) return cached;
+
         Bitmap res = BitmapRepository.paddedError.copy(BitmapRepository.paddedError.getConfig(), true);
         Canvas temp = new Canvas(res);
         RectF bounds = new RectF(0, 0, temp.getWidth(), temp.getHeight());
@@ -142,7 +139,7 @@ public class BitmapRepository {
         temp.drawText(code, bounds.centerX(), bounds.centerY() + textOffset, errorBorderTextPaint);
         temp.drawText(code, bounds.centerX(), bounds.centerY() + textOffset, errorTextPaint);
 
-        exceptionMap.put(httpException.code, res);
+        NetUtils.imageCache.put("http_exception_" + code, 0, 0, res);
 
         return res;
     }
@@ -128,7 +128,7 @@ public class BoardRepository
     }
 
     private void updateObservablesSync() {
-        updateWith(DatabaseUtils.runTask(databaseBoardManager.getBoardsForAllSitesOrdered(allSites.getAll())));
+        updateWith(DatabaseUtils.runReadTask(databaseBoardManager.getBoardsForAllSitesOrdered(allSites.getAll())));
     }
 
     private void updateObservablesAsync() {
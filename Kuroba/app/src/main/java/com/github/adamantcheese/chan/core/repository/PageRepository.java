@@ -94,6 +94,21 @@ public class PageRepository {
         }
     }
 
+    /**
+     * Request the pages for a board right away, regardless of when they were last fetched. The result is stored as
+     * usual, and is also passed to the given callback, on a background thread. If the request fails, the callback gets
+     * an empty set of pages.
+     */
+    public static void requestPagesNow(final Board b, NetUtilsClasses.NoFailResponseResult<ChanPages> callback) {
+        b.site.api().pages(b, (NetUtilsClasses.NoFailResponseResult<ChanPages>) result -> {
+            // empty pages are a failed request for most sites, don't replace anything good with those
+            if (!result.isEmpty()) {
+                addPages(b, result);
+            }
+            callback.onSuccess(result);
+        });
+    }
+
     public static synchronized void addPages(Board board, ChanPages pages) {
         savedBoards.add(board);
         requestedBoards.remove(board);
@@ -8,6 +8,7 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.core.database.*;
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.model.orm.*;
 import com.github.adamantcheese.chan.core.settings.primitives.JsonSettings;
 import com.github.adamantcheese.chan.core.site.Site;
@@ -40,14 +41,14 @@ public class SiteRepository {
     }
 
     public void updateUserSettings(Site site, JsonSettings jsonSettings) {
-        SiteModel siteModel = DatabaseUtils.runTask(databaseSiteManager.get(site.id()));
+        SiteModel siteModel = DatabaseUtils.runReadTask(databaseSiteManager.get(site.id()));
         if (siteModel == null) throw new NullPointerException("siteModel == null");
         siteModel.storeUserSettings(jsonSettings);
         DatabaseUtils.runTaskAsync(databaseSiteManager.update(siteModel));
     }
 
     public Map<Integer, Integer> getOrdering() {
-        return DatabaseUtils.runTask(databaseSiteManager.getOrdering());
+        return DatabaseUtils.runReadTask(databaseSiteManager.getOrdering());
     }
 
     public void updateSiteOrderingAsync(List<Site> sites) {
@@ -67,7 +68,7 @@ public class SiteRepository {
         initialized = true;
         List<Site> sites = new ArrayList<>();
 
-        List<SiteModel> models = DatabaseUtils.runTask(databaseSiteManager.getAll());
+        List<SiteModel> models = DatabaseUtils.runReadTask(databaseSiteManager.getAll());
 
         for (SiteModel siteModel : models) {
             SiteConfigSettingsHolder holder;
@@ -176,6 +177,7 @@ public class SiteRepository {
         }
 
         databaseFilterManager.deleteFilters(filtersToDelete).call();
+        instance(FilterEngine.class).invalidateCompiledFilters();
     }
 
     public class Sites
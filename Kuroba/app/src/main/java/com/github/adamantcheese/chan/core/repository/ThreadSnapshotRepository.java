@@ -0,0 +1,162 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.repository;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+
+import android.util.JsonReader;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.site.loader.ChanLoaderResponse;
+import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
+import com.github.adamantcheese.chan.utils.Logger;
+import com.github.adamantcheese.chan.utils.StringUtils;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Keeps the raw server data for recently loaded threads on disk, gzipped, so that a thread can be shown straight away
+ * on a cold open or after process death, and then be refreshed from the network in the background.<br>
+ * Snapshots are rewritten whenever a thread loads with changes, so pinned threads stay fresh through the watcher; only
+ * the most recently written {@link #MAX_SNAPSHOTS} are kept. Writes and deletes happen in order on their own thread.
+ */
+public class ThreadSnapshotRepository {
+    private static final int MAX_SNAPSHOTS = 150;
+    // the directory is only listed and trimmed after this many writes
+    private static final int WRITES_PER_TRIM = 25;
+    private static final File SNAPSHOT_DIR = new File(getCacheDir(), "thread_snapshots");
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // the hash of the last body written for each snapshot file, to skip rewriting unchanged threads; writer thread only
+    private static final Map<String, ByteString> writtenHashes = new LinkedHashMap<String, ByteString>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ByteString> eldest) {
+            return size() > MAX_SNAPSHOTS;
+        }
+    };
+    // starts full, so the first write after launch trims whatever the last run left behind
+    private static int writesSinceTrim = WRITES_PER_TRIM;
+
+    private static File getSnapshotFile(Loadable loadable) {
+        return new File(SNAPSHOT_DIR,
+                StringUtils.fileNameRemoveBadCharacters(loadable.siteId + "_" + loadable.boardCode + "_" + loadable.no)
+                        + ".json.gz"
+        );
+    }
+
+    /**
+     * Queues the data to be written out, unless it's the same as what was last written for this thread.
+     *
+     * @param loadable the thread the data is for
+     * @param data     the raw response body for the thread; this is taken over, and must not be used afterwards
+     */
+    @AnyThread
+    public static void saveSnapshot(Loadable loadable, Buffer data) {
+        if (!loadable.isThreadMode()) return;
+        File snapshot = getSnapshotFile(loadable);
+        writer.execute(() -> {
+            ByteString hash = data.sha1();
+            if (hash.equals(writtenHashes.get(snapshot.getName())) && snapshot.exists()) return;
+            if (writeSnapshot(loadable, snapshot, data)) {
+                writtenHashes.put(snapshot.getName(), hash);
+            } else {
+                writtenHashes.remove(snapshot.getName());
+            }
+        });
+    }
+
+    @WorkerThread
+    private static boolean writeSnapshot(Loadable loadable, File snapshot, Buffer data) {
+        //noinspection ResultOfMethodCallIgnored
+        SNAPSHOT_DIR.mkdirs();
+        File temp = new File(SNAPSHOT_DIR, snapshot.getName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(temp))) {
+            data.copyTo(out, 0, data.size());
+        } catch (Exception e) {
+            Logger.w("ThreadSnapshotRepository", "Failed to write snapshot for " + loadable, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return false;
+        }
+        // write then rename, so a partially written snapshot is never read
+        if (!temp.renameTo(snapshot)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return false;
+        }
+        if (++writesSinceTrim >= WRITES_PER_TRIM) {
+            writesSinceTrim = 0;
+            trimSnapshots();
+        }
+        return true;
+    }
+
+    /**
+     * @param loadable the thread to load
+     * @param parser   the parser to process the snapshot with
+     * @return the parsed snapshot, or null if there is no usable snapshot
+     */
+    @WorkerThread
+    @Nullable
+    public static ChanLoaderResponse loadSnapshot(Loadable loadable, ChanReaderParser parser) {
+        if (!loadable.isThreadMode()) return null;
+        File snapshot = getSnapshotFile(loadable);
+        if (!snapshot.exists()) return null;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(new BufferedInputStream(
+                new FileInputStream(snapshot))), "UTF-8"))) {
+            return parser.convert(reader);
+        } catch (Exception e) {
+            Logger.w("ThreadSnapshotRepository", "Failed to read snapshot for " + loadable, e);
+            deleteSnapshot(loadable);
+            return null;
+        }
+    }
+
+    @AnyThread
+    public static void deleteSnapshot(Loadable loadable) {
+        File snapshot = getSnapshotFile(loadable);
+        writer.execute(() -> {
+            writtenHashes.remove(snapshot.getName());
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.delete();
+        });
+    }
+
+    @WorkerThread
+    private static void trimSnapshots() {
+        File[] files = SNAPSHOT_DIR.listFiles();
+        if (files == null || files.length <= MAX_SNAPSHOTS) return;
+        Arrays.sort(files, (f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
+        for (int i = MAX_SNAPSHOTS; i < files.length; i++) {
+            writtenHashes.remove(files[i].getName());
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.core.saver;
+
+import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Failure;
+import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Success;
+
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+import com.github.adamantcheese.chan.utils.Logger;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+
+/**
+ * Runs image save tasks in two stages that overlap: downloading, and copying the downloaded file into the save
+ * location. Copies go through a single thread of their own, so a slow storage provider never holds up the network and
+ * the network never holds up the copies.
+ * <p>
+ * Downloads run concurrently per host, with a limit that is tuned to what that host actually delivers. While a host
+ * has more tasks queued than are running, its throughput is measured and the limit is moved one step at a time in
+ * whichever direction last made the throughput go up; failed downloads halve the limit, as they usually mean the host
+ * is rate limiting.
+ * <p>
+ * All state is only touched from the main thread, which is also where download results arrive.
+ */
+class DownloadScheduler {
+    private static final int MIN_CONCURRENCY = 1;
+    private static final int INITIAL_CONCURRENCY = 2;
+    private static final int MAX_CONCURRENCY = 8;
+    // how long a concurrency limit is kept before its throughput is judged
+    private static final long ADJUST_INTERVAL_MS = 3000;
+    // throughput changes smaller than this are treated as noise
+    private static final double SIGNIFICANT_CHANGE = 0.1;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
+    private final Callback callback;
+    private final ExecutorService copyExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final ThroughputMeter throughput = new ThroughputMeter();
+    // incremented on cancel, so that results of tasks from before that are ignored; also read by the copy thread
+    private volatile int generation;
+    private long lastProgressReport;
+
+    DownloadScheduler(@NonNull Callback callback) {
+        this.callback = callback;
+    }
+
+    @MainThread
+    void enqueue(@NonNull ImageSaveTask task) {
+        BackgroundUtils.ensureMainThread();
+        HostQueue host = hosts.get(task.postImage.imageUrl.host());
+        if (host == null) {
+            host = new HostQueue();
+            hosts.put(task.postImage.imageUrl.host(), host);
+        }
+        host.pending.add(task);
+        startDownloads(host);
+    }
+
+    /**
+     * Drops all queued tasks and cancels running ones; no results are delivered for any of them.
+     *
+     * @return the number of tasks that were canceled
+     */
+    @MainThread
+    int cancelAll() {
+        BackgroundUtils.ensureMainThread();
+        generation++;
+        int canceled = 0;
+        for (HostQueue host : hosts.values()) {
+            canceled += host.pending.size() + host.running.size();
+            host.pending.clear();
+            for (Call call : host.running.values()) {
+                call.cancel();
+            }
+            host.running.clear();
+        }
+        hosts.clear();
+        return canceled;
+    }
+
+    /**
+     * @return the combined download speed of all hosts over the last few seconds
+     */
+    @MainThread
+    long getBytesPerSecond() {
+        return throughput.getBytesPerSecond(SystemClock.elapsedRealtime());
+    }
+
+    private void startDownloads(HostQueue host) {
+        while (host.running.size() < host.limit && !host.pending.isEmpty()) {
+            ImageSaveTask task = host.pending.poll();
+            int taskGeneration = generation;
+            DownloadListener listener = new DownloadListener(host);
+            Call call = task.download(new NetUtilsClasses.ResponseResult<File>() {
+                @Override
+                public void onFailure(Exception e) {
+                    if (taskGeneration != generation) return;
+                    host.running.remove(task);
+                    host.onFailure();
+                    Logger.w(DownloadScheduler.this, "Download failed, " + host.limit + " concurrent now", e);
+                    callback.onTaskFailed(task, e);
+                    onDownloadEnded(host);
+                }
+
+                @Override
+                public void onSuccess(File result) {
+                    if (taskGeneration != generation) return;
+                    host.running.remove(task);
+                    // progress is posted before the result, so this has seen everything that came from the network
+                    host.onSuccess(listener.bytesSeen);
+                    copy(task, result, taskGeneration);
+                    onDownloadEnded(host);
+                }
+            }, listener);
+            host.running.put(task, call);
+        }
+    }
+
+    private void onDownloadEnded(HostQueue host) {
+        startDownloads(host);
+        if (host.pending.isEmpty() && host.running.isEmpty()) {
+            // keep what was learned about the host while the batch is still going
+            boolean anyActive = false;
+            for (HostQueue other : hosts.values()) {
+                anyActive |= !other.pending.isEmpty() || !other.running.isEmpty();
+            }
+            if (!anyActive) {
+                hosts.clear();
+            }
+        }
+    }
+
+    private void copy(ImageSaveTask task, File downloaded, int taskGeneration) {
+        copyExecutor.execute(() -> {
+            boolean copied = taskGeneration == generation && task.copy(downloaded);
+            BackgroundUtils.runOnMainThread(() -> {
+                if (taskGeneration != generation) return;
+                if (copied) {
+                    task.onSaved();
+                }
+                callback.onTaskFinished(task, copied ? Success : Failure);
+            });
+        });
+    }
+
+    interface Callback {
+        /**
+         * Called on the main thread once a task has been downloaded and copied, or failed to copy.
+         */
+        void onTaskFinished(ImageSaveTask task, ImageSaver.TaskResult result);
+
+        /**
+         * Called on the main thread when a task failed to download.
+         */
+        void onTaskFailed(ImageSaveTask task, Exception error);
+
+        /**
+         * Called on the main thread about once a second while data is being downloaded.
+         */
+        void onProgress();
+    }
+
+    private class DownloadListener
+            implements ProgressResponseBody.ProgressListener {
+        private final HostQueue host;
+        private long bytesSeen;
+
+        private DownloadListener(HostQueue host) {
+            this.host = host;
+        }
+
+        @Override
+        public void onDownloadProgress(HttpUrl source, long bytesRead, long contentLength, boolean start, boolean done) {
+            // progress is posted to the main thread, so this is where the meters are updated
+            if (bytesRead <= bytesSeen) return;
+            long now = SystemClock.elapsedRealtime();
+            long delta = bytesRead - bytesSeen;
+            bytesSeen = bytesRead;
+            host.throughput.add(delta, now);
+            throughput.add(delta, now);
+            if (now - lastProgressReport >= PROGRESS_INTERVAL_MS) {
+                lastProgressReport = now;
+                callback.onProgress();
+            }
+        }
+    }
+
+    private static class HostQueue {
+        private final Deque<ImageSaveTask> pending = new ArrayDeque<>();
+        private final Map<ImageSaveTask, Call> running = new HashMap<>();
+        private final ThroughputMeter throughput = new ThroughputMeter();
+        private int limit = INITIAL_CONCURRENCY;
+        private int direction = 1;
+        private long lastAdjust = SystemClock.elapsedRealtime();
+        private long lastRate;
+
+        private void onSuccess(long bytes) {
+            long now = SystemClock.elapsedRealtime();
+            // a host that isn't kept busy tells nothing about how many connections it can take
+            boolean saturated = running.size() + 1 >= limit && !pending.isEmpty();
+            if (bytes <= 0 || !saturated || now - lastAdjust < ADJUST_INTERVAL_MS) return;
+
+            long rate = throughput.getBytesPerSecond(now);
+            if (lastRate > 0) {
+                if (rate < lastRate * (1 - SIGNIFICANT_CHANGE)) {
+                    // the last step made things worse, so go back the other way
+                    direction = -direction;
+                } else if (rate < lastRate * (1 + SIGNIFICANT_CHANGE)) {
+                    // the last step didn't help, so don't hold on to more connections than needed
+                    direction = -1;
+                }
+            }
+            limit = Math.max(MIN_CONCURRENCY, Math.min(MAX_CONCURRENCY, limit + direction));
+            if (limit == MAX_CONCURRENCY) {
+                direction = -1;
+            } else if (limit == MIN_CONCURRENCY) {
+                direction = 1;
+            }
+            lastRate = rate;
+            lastAdjust = now;
+        }
+
+        private void onFailure() {
+            limit = Math.max(MIN_CONCURRENCY, limit / 2);
+            direction = 1;
+            lastRate = 0;
+            lastAdjust = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Bytes per second over a sliding window of a few seconds, kept in one-second buckets.
+     */
+    private static class ThroughputMeter {
+        private static final int WINDOW_SECONDS = 5;
+
+        private final long[] bytes = new long[WINDOW_SECONDS];
+        private final long[] seconds = new long[WINDOW_SECONDS];
+
+        private void add(long count, long nowMs) {
+            long second = nowMs / 1000;
+            int bucket = (int) (second % WINDOW_SECONDS);
+            if (seconds[bucket] != second) {
+                seconds[bucket] = second;
+                bytes[bucket] = 0;
+            }
+            bytes[bucket] += count;
+        }
+
+        private long getBytesPerSecond(long nowMs) {
+            long second = nowMs / 1000;
+            long total = 0;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                if (second - seconds[i] < WINDOW_SECONDS) {
+                    total += bytes[i];
+                }
+            }
+            return total / WINDOW_SECONDS;
+        }
+    }
+}
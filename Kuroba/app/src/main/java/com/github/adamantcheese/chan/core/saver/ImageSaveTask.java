@@ -17,8 +17,6 @@
 package com.github.adamantcheese.chan.core.saver;
 
 import static com.github.adamantcheese.chan.Chan.inject;
-import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Failure;
-import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Success;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getClipboardManager;
@@ -29,13 +27,16 @@ import android.content.*;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.content.FileProvider;
 
 import com.github.adamantcheese.chan.*;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
+import com.github.adamantcheese.chan.core.net.ProgressResponseBody;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.settings.SavedFilesBaseDirectory;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
@@ -54,9 +55,6 @@ import java.util.List;
 
 import javax.inject.Inject;
 
-import io.reactivex.Single;
-import io.reactivex.functions.Action;
-import io.reactivex.subjects.SingleSubject;
 import okhttp3.Call;
 
 public class ImageSaveTask {
@@ -67,15 +65,15 @@ public class ImageSaveTask {
     private AbstractFile finalSaveLocation;
     public final boolean share;
     private String subFolder;
-    private boolean success = false;
-    private final SingleSubject<ImageSaver.TaskResult> imageSaveTaskAsyncResult;
+    // set for tasks resumed after the app was killed
+    @Nullable
+    private String resumedName;
 
     public ImageSaveTask(PostImage postImage, boolean share) {
         inject(this);
 
         this.postImage = postImage;
         this.share = share;
-        this.imageSaveTaskAsyncResult = SingleSubject.create();
     }
 
     /**
@@ -96,6 +94,24 @@ public class ImageSaveTask {
         this.finalSaveLocation = destination;
     }
 
+    /**
+     * Marks this task as one that was queued before the app was killed. It saves under the name it was given then, and
+     * writes over that file if it exists instead of treating it as saved, as it may have been left partially written.
+     */
+    void resumeAs(String savedName) {
+        this.resumedName = savedName;
+    }
+
+    @Nullable
+    String getResumedName() {
+        return resumedName;
+    }
+
+    @Nullable
+    String getSubFolderLocation() {
+        return subFolder;
+    }
+
     public String getSavedName() {
         return fileManager.getName(finalSaveLocation);
     }
@@ -156,79 +172,57 @@ public class ImageSaveTask {
         return baseSaveDir;
     }
 
-    public Single<ImageSaver.TaskResult> run() {
-        BackgroundUtils.ensureBackgroundThread();
-        Logger.d(this, "ImageSaveTask.run() destination = " + finalSaveLocation.getFullPath());
-
-        @Nullable
-        Action onDisposeFunc = null;
+    /**
+     * @return true if the destination already exists, and this task doesn't need to download anything
+     */
+    @WorkerThread
+    public boolean isAlreadySaved() {
+        return resumedName == null && fileManager.exists(finalSaveLocation);
+    }
 
-        try {
-            if (fileManager.exists(finalSaveLocation)) {
-                BackgroundUtils.runOnMainThread(() -> {
-                    onDestination();
-                    onEnd();
-                });
-            } else {
-                Call download = NetUtils.makeFileRequest(postImage.imageUrl,
-                        postImage.filename,
-                        postImage.extension,
-                        new NetUtilsClasses.ResponseResult<File>() {
-                            @Override
-                            public void onFailure(Exception e) {
-                                BackgroundUtils.ensureMainThread();
-                                imageSaveTaskAsyncResult.onError(e);
-
-                                onEnd();
-                            }
-
-                            @Override
-                            public void onSuccess(File response) {
-                                BackgroundUtils.ensureMainThread();
-
-                                if (copyToDestination(response)) {
-                                    onDestination();
-                                } else {
-                                    if (fileManager.exists(finalSaveLocation)) {
-                                        if (!fileManager.delete(finalSaveLocation)) {
-                                            Logger.w(this, "Could not delete destination file after error");
-                                        }
-                                    }
-                                }
-
-                                if (!share && !response.delete()) {
-                                    Logger.w(this, "Could not delete cached file");
-                                }
-                                onEnd();
-                            }
-                        },
-                        null
-                );
+    /**
+     * Starts downloading the image; the result is delivered on the main thread.
+     */
+    public Call download(
+            NetUtilsClasses.ResponseResult<File> result, @Nullable ProgressResponseBody.ProgressListener listener
+    ) {
+        Logger.d(this, "ImageSaveTask.download() destination = " + finalSaveLocation.getFullPath());
+        // the cached file is named after the server filename, which unlike the original filename is unique per image,
+        // so concurrent downloads never share a cached file
+        return NetUtils.makeFileRequest(postImage.imageUrl,
+                postImage.serverFilename,
+                postImage.extension,
+                result,
+                listener
+        );
+    }
 
-                onDisposeFunc = () -> {
-                    if (download != null) {
-                        download.cancel();
-                    }
-                };
+    /**
+     * Copies a downloaded image into the destination, cleaning up after itself if that fails.
+     *
+     * @return true if the image is now at the destination
+     */
+    @WorkerThread
+    public boolean copy(File downloaded) {
+        BackgroundUtils.ensureBackgroundThread();
+        boolean copied = copyToDestination(downloaded);
+        if (!copied && fileManager.exists(finalSaveLocation)) {
+            if (!fileManager.delete(finalSaveLocation)) {
+                Logger.w(this, "Could not delete destination file after error");
             }
-        } catch (Exception e) {
-            imageSaveTaskAsyncResult.onError(e);
         }
 
-        if (onDisposeFunc != null) {
-            return imageSaveTaskAsyncResult.doOnDispose(onDisposeFunc);
+        if (!share && !downloaded.delete()) {
+            Logger.w(this, "Could not delete cached file");
         }
-
-        return imageSaveTaskAsyncResult;
+        return copied;
     }
 
-    private void onEnd() {
-        BackgroundUtils.ensureMainThread();
-        imageSaveTaskAsyncResult.onSuccess(success ? Success : Failure);
-    }
-
-    private void onDestination() {
-        success = true;
+    /**
+     * Shares the saved image, or lets the media scanner know about it.
+     */
+    @MainThread
+    public void onSaved() {
         if (share) {
             Uri file = FileProvider.getUriForFile(getAppContext(),
                     BuildConfig.FILE_PROVIDER,
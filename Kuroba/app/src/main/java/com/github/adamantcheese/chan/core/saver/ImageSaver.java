@@ -20,7 +20,6 @@ import static com.github.adamantcheese.chan.core.saver.ImageSaver.ImageSaveResul
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.ImageSaveResult.NoWriteExternalStoragePermission;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.ImageSaveResult.Saved;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.ImageSaveResult.UnknownError;
-import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Canceled;
 import static com.github.adamantcheese.chan.core.saver.ImageSaver.TaskResult.Success;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getAppContext;
@@ -32,12 +31,15 @@ import android.content.Context;
 import android.content.Intent;
 import android.widget.Toast;
 
-import androidx.annotation.GuardedBy;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.content.ContextCompat;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
+import com.github.adamantcheese.chan.core.di.AppModule;
 import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.ui.helper.RuntimePermissionsHelper;
@@ -49,34 +51,30 @@ import com.github.k1rakishou.fsaf.FileManager;
 import com.github.k1rakishou.fsaf.file.AbstractFile;
 import com.github.k1rakishou.fsaf.file.FileSegment;
 import com.google.common.io.Files;
+import com.google.gson.reflect.TypeToken;
 
 import org.greenrobot.eventbus.*;
 
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.reflect.Type;
 import java.net.URLDecoder;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.processors.FlowableProcessor;
-import io.reactivex.processors.PublishProcessor;
 import io.reactivex.schedulers.Schedulers;
 import okhttp3.HttpUrl;
 
-public class ImageSaver {
-    /**
-     * We don't want to process all images at once because that will freeze the phone. Also we don't
-     * want to process images one by one because it will be way too slow. So we use this parameter
-     * for maximum amount of images processed concurrently.
-     */
-    private static final int CONCURRENT_REQUESTS_COUNT = 4;
-    /**
-     * We use unbounded queue and this variable is it's initial capacity.
-     */
-    private static final int UNBOUNDED_QUEUE_MIN_CAPACITY = 32;
+public class ImageSaver
+        implements DownloadScheduler.Callback {
+    private static final Type QUEUE_TYPE = new TypeToken<List<PendingSave>>() {}.getType();
+    // how long queue changes are collected before the queue is written out
+    private static final long QUEUE_WRITE_DELAY_MS = 1000;
 
     /**
      * Amount of successfully downloaded images
@@ -90,69 +88,31 @@ public class ImageSaver {
      * Amount of images we couldn't download
      */
     private final AtomicInteger failedTasks = new AtomicInteger(0);
+    /**
+     * Bumped whenever everything is canceled, so batches that were still being prepared don't start afterwards
+     */
+    private final AtomicInteger cancelGeneration = new AtomicInteger(0);
 
     private final FileManager fileManager;
 
-    /**
-     * Reactive queue used for batch image downloads.
-     */
-    private final FlowableProcessor<ImageSaveTask> imageSaverQueue = PublishProcessor.create();
+    private final DownloadScheduler scheduler = new DownloadScheduler(this);
 
     /**
-     * Only for batch downloads. Holds the urls of all images in a batch. Use for batch canceling.
-     * If an image url is not present in the activeDownloads that means that it was canceled.
+     * Every task that has been handed to the scheduler and hasn't finished yet, with what is needed to restart it.
+     * Written out to {@link #queueFile} so that saving can pick up where it left off if the app is killed.
+     * Only touched on the main thread; shared tasks are not kept, as they are only of use right away.
      */
-    @GuardedBy("itself")
-    private final Set<HttpUrl> activeDownloads = new HashSet<>(64);
+    private final Map<ImageSaveTask, PendingSave> unfinishedTasks = new LinkedHashMap<>();
+    private final File queueFile = new File(getAppContext().getFilesDir(), "image_save_queue.json");
+    private final ExecutorService queueWriter = Executors.newSingleThreadExecutor();
+    private boolean queueWriteScheduled;
+    private boolean resumeAttempted;
 
     private final Scheduler workerScheduler = Schedulers.from(new ForkJoinPool(1));
 
-    /**
-     * This is a singleton class so we don't care about the disposable since we will never should
-     * dispose of this stream
-     */
-    @SuppressLint("CheckResult")
     public ImageSaver(FileManager fileManager) {
         this.fileManager = fileManager;
         EventBus.getDefault().register(this);
-
-        imageSaverQueue
-                // Unbounded queue
-                .onBackpressureBuffer(UNBOUNDED_QUEUE_MIN_CAPACITY, false, true)
-                .observeOn(workerScheduler)
-                .flatMapSingle((t) -> Single
-                        .just(t)
-                        .observeOn(workerScheduler)
-                        .flatMap((task) -> {
-                            synchronized (activeDownloads) {
-                                boolean isStillActive = activeDownloads.contains(task.postImage.imageUrl);
-
-                                // If the download is not present in activeDownloads that means that
-                                // it wat canceled, so exit immediately
-                                if (!isStillActive) {
-                                    return Single.just(Canceled);
-                                }
-                            }
-
-                            return task.run();
-                        })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .doOnError((error) -> imageSaveTaskFailed(t, error))
-                        .doOnSuccess((success) -> imageSaveTaskFinished(t, success))
-                        .doOnError((error) -> Logger.w(ImageSaver.this, "Unhandled exception", error))
-                        .onErrorReturnItem(TaskResult.Failure), false, CONCURRENT_REQUESTS_COUNT)
-                .subscribe((result) -> {
-                    // Do nothing
-                }, (error) -> {
-                    throw new RuntimeException(ImageSaver.this
-                            + " Uncaught exception!!! "
-                            + "workerQueue is in error state now!!! "
-                            + "This should not happen!!!, original error = "
-                            + error.getMessage());
-                }, () -> {
-                    throw new RuntimeException(ImageSaver.this
-                            + " workerQueue stream has completed!!! This should not happen!!!");
-                });
     }
 
     public Single<ImageSaveResult> startBundledTask(Context context, final List<ImageSaveTask> tasks) {
@@ -178,6 +138,75 @@ public class ImageSaver {
         });
     }
 
+    /**
+     * Restarts any saves that were still queued when the app was last killed. Only the first call does anything.
+     */
+    @SuppressLint("CheckResult")
+    @MainThread
+    public void resumeSavedQueue(Context context) {
+        BackgroundUtils.ensureMainThread();
+        if (resumeAttempted) return;
+        resumeAttempted = true;
+        boolean permitted = hasPermission(context);
+
+        Single
+                .fromCallable(() -> {
+                    List<ImageSaveTask> tasks = new ArrayList<>();
+                    if (!queueFile.exists()) return tasks;
+                    if (!permitted || !fileManager.baseDirectoryExists(SavedFilesBaseDirectory.class)) {
+                        Logger.w(ImageSaver.this, "Can't resume saved queue, dropping it");
+                        queueFile.delete();
+                        return tasks;
+                    }
+
+                    try (FileReader reader = new FileReader(queueFile)) {
+                        List<PendingSave> saves = AppModule.gson.fromJson(reader, QUEUE_TYPE);
+                        for (PendingSave save : saves) {
+                            tasks.add(save.toTask());
+                        }
+                    } catch (Exception e) {
+                        Logger.w(ImageSaver.this, "Failed to read saved queue", e);
+                        queueFile.delete(); // bad file probably
+                    }
+                    return tasks;
+                })
+                .subscribeOn(workerScheduler)
+                .flatMap((tasks) -> tasks.isEmpty() ? Single.just(true) : startBundledTaskInternal(tasks))
+                .subscribe((result) -> {}, (error) -> Logger.e(ImageSaver.this, "Failed to resume saved queue", error));
+    }
+
+    @MainThread
+    private void onQueueChanged() {
+        if (queueWriteScheduled) return;
+        queueWriteScheduled = true;
+        // batches change the queue many times a second, so only write the latest state every so often
+        BackgroundUtils.runOnMainThread(() -> {
+            queueWriteScheduled = false;
+            List<PendingSave> queue = new ArrayList<>();
+            for (PendingSave save : unfinishedTasks.values()) {
+                if (save != null) {
+                    queue.add(save);
+                }
+            }
+            queueWriter.execute(() -> writeQueue(queue));
+        }, QUEUE_WRITE_DELAY_MS);
+    }
+
+    @WorkerThread
+    private void writeQueue(List<PendingSave> queue) {
+        if (queue.isEmpty()) {
+            queueFile.delete();
+            return;
+        }
+
+        try (FileWriter writer = new FileWriter(queueFile)) {
+            AppModule.gson.toJson(queue, QUEUE_TYPE, writer);
+        } catch (Exception e) {
+            Logger.w(this, "Failed to write saved queue", e);
+            queueFile.delete();
+        }
+    }
+
     private Single<Boolean> checkPermission(Context context) {
         if (hasPermission(context)) {
             return Single.just(true);
@@ -188,33 +217,33 @@ public class ImageSaver {
                 .subscribeOn(AndroidSchedulers.mainThread());
     }
 
-    private void imageSaveTaskFailed(ImageSaveTask task, Throwable error) {
+    @Override
+    public void onTaskFailed(ImageSaveTask task, Exception error) {
         BackgroundUtils.ensureMainThread();
         failedTasks.incrementAndGet();
 
-        synchronized (activeDownloads) {
-            activeDownloads.remove(task.postImage.imageUrl);
-        }
+        unfinishedTasks.remove(task);
+        onQueueChanged();
 
         if (checkBatchCompleted()) {
             onBatchCompleted();
         }
 
-        Logger.w(this, "imageSaveTaskFailed imageUrl = " + task.postImage.imageUrl);
+        Logger.w(this, "onTaskFailed imageUrl = " + task.postImage.imageUrl);
 
         String errorMessage = getString(R.string.image_saver_failed_to_save_image, error.getMessage());
         EventBus.getDefault().post(new StartActivity.ActivityToastMessage(errorMessage, Toast.LENGTH_LONG));
     }
 
-    private void imageSaveTaskFinished(ImageSaveTask task, TaskResult result) {
+    @Override
+    public void onTaskFinished(ImageSaveTask task, TaskResult result) {
         BackgroundUtils.ensureMainThread();
         doneTasks.incrementAndGet();
 
-        synchronized (activeDownloads) {
-            activeDownloads.remove(task.postImage.imageUrl);
-        }
+        unfinishedTasks.remove(task);
+        onQueueChanged();
 
-        Logger.vd(this, "imageSaveTaskFinished imageUrl = " + task.postImage.imageUrl);
+        Logger.vd(this, "onTaskFinished imageUrl = " + task.postImage.imageUrl);
         boolean wasAlbumSave = totalTasks.get() > 1;
 
         if (checkBatchCompleted()) {
@@ -223,7 +252,7 @@ public class ImageSaver {
             updateNotification();
         }
 
-        // Do not show the toast when image download has failed; we will show it in imageSaveTaskFailed
+        // Do not show the toast when image download has failed; we will show it in onTaskFailed
         // Also don't show the toast if the task was a share, or if this is an album save task
         if (result == Success && !task.share) {
             if (totalTasks.get() == 0) {
@@ -231,15 +260,14 @@ public class ImageSaver {
                         .getDefault()
                         .post(new StartActivity.ActivityToastMessage(getText(task, wasAlbumSave), Toast.LENGTH_LONG));
             }
-        } else if (result == Canceled && totalTasks.get() == 0) {
-            EventBus
-                    .getDefault()
-                    .post(new StartActivity.ActivityToastMessage(getString(R.string.image_saver_canceled_by_user),
-                            Toast.LENGTH_LONG
-                    ));
         }
     }
 
+    @Override
+    public void onProgress() {
+        updateNotification();
+    }
+
     private boolean checkBatchCompleted() {
         return doneTasks.get() + failedTasks.get() >= totalTasks.get();
     }
@@ -254,11 +282,20 @@ public class ImageSaver {
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(SavingNotification.SavingCancelRequestMessage message) {
-        synchronized (activeDownloads) {
-            activeDownloads.clear();
-        }
+        cancelGeneration.incrementAndGet();
+        int canceled = scheduler.cancelAll();
+        unfinishedTasks.clear();
+        onQueueChanged();
 
         onBatchCompleted();
+
+        if (canceled > 0) {
+            EventBus
+                    .getDefault()
+                    .post(new StartActivity.ActivityToastMessage(getString(R.string.image_saver_canceled_by_user),
+                            Toast.LENGTH_LONG
+                    ));
+        }
     }
 
     /**
@@ -270,8 +307,10 @@ public class ImageSaver {
         return Single
                 .fromCallable(() -> {
                     BackgroundUtils.ensureBackgroundThread();
+                    int generation = cancelGeneration.get();
                     boolean allSuccess = true;
                     boolean isAlbumSave = tasks.size() > 1;
+                    List<ImageSaveTask> startable = new ArrayList<>(tasks.size());
 
                     for (ImageSaveTask task : tasks) {
                         AbstractFile saveLocation = task.getSaveLocation();
@@ -280,10 +319,15 @@ public class ImageSaver {
                             continue;
                         }
 
-                        task.setFinalSaveLocation(deduplicateFile(task.postImage, task, saveLocation, isAlbumSave));
-                        startTask(task);
+                        if (task.getResumedName() != null) {
+                            task.setFinalSaveLocation(saveLocation.clone(new FileSegment(task.getResumedName())));
+                        } else {
+                            task.setFinalSaveLocation(deduplicateFile(task.postImage, task, saveLocation, isAlbumSave));
+                        }
+                        startable.add(task);
                     }
 
+                    startTasks(startable, generation);
                     return allSuccess;
                 })
                 .subscribeOn(workerScheduler)
@@ -291,13 +335,36 @@ public class ImageSaver {
                 .doOnEvent((event, throwable) -> updateNotification());
     }
 
-    private void startTask(ImageSaveTask task) {
-        synchronized (activeDownloads) {
-            activeDownloads.add(task.postImage.imageUrl);
+    @WorkerThread
+    private void startTasks(List<ImageSaveTask> tasks, int generation) {
+        List<ImageSaveTask> saved = new ArrayList<>();
+        Map<ImageSaveTask, PendingSave> toEnqueue = new LinkedHashMap<>();
+        for (ImageSaveTask task : tasks) {
+            if (task.isAlreadySaved()) {
+                saved.add(task);
+            } else {
+                toEnqueue.put(task, task.share ? null : new PendingSave(task));
+            }
         }
 
-        totalTasks.incrementAndGet();
-        imageSaverQueue.onNext(task);
+        BackgroundUtils.runOnMainThread(() -> {
+            // everything was canceled while this batch was being prepared
+            if (cancelGeneration.get() != generation) return;
+
+            // count the whole batch before starting any of it, so it can't look completed part way through
+            totalTasks.addAndGet(tasks.size());
+            for (ImageSaveTask task : saved) {
+                task.onSaved();
+                onTaskFinished(task, Success);
+            }
+            for (Map.Entry<ImageSaveTask, PendingSave> entry : toEnqueue.entrySet()) {
+                unfinishedTasks.put(entry.getKey(), entry.getValue());
+                scheduler.enqueue(entry.getKey());
+            }
+            if (!toEnqueue.isEmpty()) {
+                onQueueChanged();
+            }
+        });
     }
 
     private void updateNotification() {
@@ -311,6 +378,7 @@ public class ImageSaver {
                 service.putExtra(SavingNotification.DONE_TASKS_KEY, doneTasks.get());
                 service.putExtra(SavingNotification.FAILED_TASKS_KEY, failedTasks.get());
                 service.putExtra(SavingNotification.TOTAL_TASKS_KEY, totalTasks.get());
+                service.putExtra(SavingNotification.BYTES_PER_SECOND_KEY, scheduler.getBytesPerSecond());
                 ContextCompat.startForegroundService(getAppContext(), service);
             } else {
                 getAppContext().stopService(service);
@@ -402,8 +470,44 @@ public class ImageSaver {
 
     public enum TaskResult {
         Success,
-        Failure,
-        Canceled
+        Failure
+    }
+
+    /**
+     * What is kept of a queued task when the queue is written out, enough to start it again later.
+     */
+    private static class PendingSave {
+        private final String imageUrl;
+        private final String serverFilename;
+        private final String filename;
+        private final String extension;
+        @Nullable
+        private final String subFolder;
+        // the name the image was going to be saved as, which may already have been deduplicated
+        private final String savedName;
+
+        @WorkerThread
+        private PendingSave(ImageSaveTask task) {
+            imageUrl = task.postImage.imageUrl.toString();
+            serverFilename = task.postImage.serverFilename;
+            filename = task.postImage.filename;
+            extension = task.postImage.extension;
+            subFolder = task.getSubFolderLocation();
+            savedName = task.getSavedName();
+        }
+
+        private ImageSaveTask toTask() {
+            PostImage postImage = new PostImage.Builder()
+                    .imageUrl(HttpUrl.get(imageUrl))
+                    .serverFilename(serverFilename)
+                    .filename(filename)
+                    .extension(extension)
+                    .build();
+            ImageSaveTask task = new ImageSaveTask(postImage, false);
+            task.setSubFolderLocation(subFolder);
+            task.resumeAs(savedName);
+            return task;
+        }
     }
 
     public enum ImageSaveResult {
@@ -37,6 +37,14 @@ public interface SiteEndpoints {
 
     HttpUrl thread(Loadable loadable);
 
+    /**
+     * @return a URL for a truncated version of the thread, with only the OP and the last few posts, or null if the site
+     * doesn't have one; the OP in the response is expected to list where the tail starts
+     */
+    default HttpUrl threadTail(Loadable loadable) {
+        return null;
+    }
+
     HttpUrl imageUrl(Post.Builder post, Map<String, String> arg);
 
     HttpUrl thumbnailUrl(Post.Builder post, boolean spoiler, Map<String, String> arg);
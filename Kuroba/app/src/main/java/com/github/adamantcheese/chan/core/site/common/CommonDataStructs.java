@@ -43,15 +43,53 @@ public class CommonDataStructs {
     }
 
     public static class ChanPages
-            extends ArrayList<ChanPage> {}
+            extends ArrayList<ChanPage> {
+        /**
+         * @return the index state for the given thread, or null if the thread isn't in here or the site doesn't
+         * provide any
+         */
+        public ChanPageThread findThread(int threadNo) {
+            for (ChanPage page : this) {
+                ChanPageThread thread = page.threadStates.get(threadNo);
+                if (thread != null) return thread;
+            }
+            return null;
+        }
+    }
 
     public static class ChanPage {
         public final int page;
         public final List<Integer> threadNumbers;
+        // thread number to index state, only for sites that provide it
+        public final Map<Integer, ChanPageThread> threadStates;
 
         public ChanPage(int page, List<Integer> threads) {
+            this(page, threads, Collections.emptyMap());
+        }
+
+        public ChanPage(int page, List<Integer> threads, Map<Integer, ChanPageThread> threadStates) {
             this.page = page;
             this.threadNumbers = threads;
+            this.threadStates = threadStates;
+        }
+    }
+
+    /**
+     * The state of a thread as listed in a board's thread index; if neither value changed, the thread didn't either.
+     */
+    public static class ChanPageThread {
+        public final int no;
+        public final long lastModified;
+        public final int replies;
+
+        public ChanPageThread(int no, long lastModified, int replies) {
+            this.no = no;
+            this.lastModified = lastModified;
+            this.replies = replies;
+        }
+
+        public boolean isSameAs(ChanPageThread other) {
+            return other != null && no == other.no && lastModified == other.lastModified && replies == other.replies;
         }
     }
 
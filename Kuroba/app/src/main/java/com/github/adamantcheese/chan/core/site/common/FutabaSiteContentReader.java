@@ -194,6 +194,10 @@ public class FutabaSiteContentReader
                 case "last_modified":
                     builder.lastModified(reader.nextLong());
                     break;
+                case "tail_id":
+                    // only in tail responses, on the OP
+                    queue.setTailId(reader.nextInt());
+                    break;
                 case "id":
                     builder.posterId(reader.nextString());
                     break;
@@ -262,9 +266,9 @@ public class FutabaSiteContentReader
             builder.comment(builder.comment.toString().replace("\n", ""));
         }
 
-        Post cached = queue.getCachedPost(builder.no);
+        Post cached = queue.getCachedPost(builder);
         if (cached != null) {
-            // Post no is known, use the cached post object.
+            // Post no is known and unchanged, use the cached post object.
             queue.addForReuse(cached);
             return;
         }
@@ -257,9 +257,9 @@ public class VichanSiteContentReader
             queue.setOp(builder.clone());
         }
 
-        Post cached = queue.getCachedPost(builder.no);
+        Post cached = queue.getCachedPost(builder);
         if (cached != null) {
-            // Id is known, use the cached post object.
+            // Id is known and unchanged, use the cached post object.
             queue.addForReuse(cached);
             return builder.no; // this return is only used for pages!
         }
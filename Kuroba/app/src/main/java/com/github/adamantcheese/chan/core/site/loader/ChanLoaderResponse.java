@@ -17,6 +17,7 @@
 package com.github.adamantcheese.chan.core.site.loader;
 
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.utils.JavaUtils.NoDeleteArrayList;
 
 public class ChanLoaderResponse {
@@ -24,6 +25,15 @@ public class ChanLoaderResponse {
     // Used to later copy members like image count to the real op on the main thread.
     public final Post.Builder op;
     public final NoDeleteArrayList<Post> posts = new NoDeleteArrayList<>();
+    // The index for the above posts, if one was built while processing them
+    public ReplyGraph replyGraph;
+
+    // Cache validators from the response headers, if any; used to make the next request for this data conditional
+    public String lastModifiedHeader;
+    public String etag;
+
+    // Set if this was read from a thread tail that doesn't connect to the cached posts; the posts are not usable then
+    public boolean tailGap;
 
     public ChanLoaderResponse(Post.Builder op) {
         this.op = op;
@@ -17,55 +17,86 @@
 package com.github.adamantcheese.chan.core.site.loader;
 
 import static com.github.adamantcheese.chan.Chan.instance;
+import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.JSON_CONVERTER;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import android.util.JsonReader;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.core.database.DatabaseLoadableManager;
-import com.github.adamantcheese.chan.core.database.DatabaseUtils;
 import com.github.adamantcheese.chan.core.manager.ChanLoaderManager;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.net.NetUtils;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ChainConverter;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.Converter;
+import com.github.adamantcheese.chan.core.net.NetUtilsClasses.HttpCodeException;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.ResponseResult;
 import com.github.adamantcheese.chan.core.net.ProgressResponseBody.ProgressListener;
+import com.github.adamantcheese.chan.core.repository.ThreadSnapshotRepository;
 import com.github.adamantcheese.chan.core.site.parser.ChanReaderParser;
 import com.github.adamantcheese.chan.ui.helper.PostHelper;
 import com.github.adamantcheese.chan.utils.BackgroundUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 
-import okhttp3.Call;
-import okhttp3.HttpUrl;
+import okhttp3.*;
+import okio.Buffer;
 
 /**
  * A ChanThreadLoader is the loader for Loadables.
  * <p>Obtain ChanLoaders with {@link ChanLoaderManager} for either board catalogs or threads.
  * <p>ChanLoaders return {@link ChanThread} objects on success, through {@link ResponseResult<ChanThread>}.
- * <p>For threads, timers can be started with {@link #setTimer()} to do a request later.
+ * <p>For threads, timers can be started with {@link #setTimer()} to do a request later. The time until then follows the
+ * thread's post rate, aiming for about one new post per load, so fast threads are checked often and slow threads back
+ * off to once an hour.
  */
 public class ChanThreadLoader {
-    private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
+    private static final long MIN_INTERVAL_MS = SECONDS.toMillis(10);
+    private static final long MIN_STICKY_INTERVAL_MS = SECONDS.toMillis(30);
+    private static final long MAX_INTERVAL_MS = HOURS.toMillis(1);
+    // how many new posts a load should find on average
+    private static final double TARGET_POSTS_PER_LOAD = 1.0;
+    // weight of the newest sample in the post rate; with no new posts, the rate halves and the interval doubles
+    private static final double RATE_SMOOTHING = 0.5;
+    // threads smaller than this are cheap enough to always get in full
+    private static final int MIN_POSTS_FOR_TAIL = 100;
 
     private final List<ResponseResult<ChanThread>> listeners = new CopyOnWriteArrayList<>();
     private final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<>();
 
     @NonNull
     private final Loadable loadable;
+    // see ChanReaderParser; this loader's posts are only checked against filters and never shown
+    private final boolean filterOnly;
     @Nullable
     private ChanThread thread;
+    // Validators from the last full response, used to make the next request conditional
+    @Nullable
+    private String lastModifiedHeader;
+    @Nullable
+    private String etag;
     @Nullable
     private Call call;
     @Nullable
     private ScheduledFuture<?> pendingFuture;
 
-    private int currentTimeout = 0;
+    // the interval state is only touched on the main thread
+    private long intervalMs = MIN_INTERVAL_MS;
+    // smoothed posts per millisecond, negative until it's been estimated
+    private double postRate = -1;
     private int lastPostCount;
     private long lastLoadTime;
 
@@ -73,7 +104,16 @@ public class ChanThreadLoader {
      * <b>Do not call this constructor yourself, obtain ChanLoaders through {@link ChanLoaderManager}</b>
      */
     public ChanThreadLoader(@NonNull Loadable loadable) {
+        this(loadable, false);
+    }
+
+    /**
+     * @param filterOnly if true, posts are only parsed as far as filters need; for background loads that only look at
+     *                   the filter results, such as watch filter scans. Snapshots are not used for these loads.
+     */
+    public ChanThreadLoader(@NonNull Loadable loadable, boolean filterOnly) {
         this.loadable = loadable;
+        this.filterOnly = filterOnly;
     }
 
     /**
@@ -114,6 +154,13 @@ public class ChanThreadLoader {
         }
     }
 
+    /**
+     * @return how many listeners this loader has
+     */
+    public int getListenerCount() {
+        return listeners.size();
+    }
+
     public void clearListeners()
     {
         listeners.clear();
@@ -147,13 +194,59 @@ public class ChanThreadLoader {
             loadable.listViewTop = 0;
         }
 
-        currentTimeout = -1;
-
+        // only used for filter, saved reply and theme changes, so everything is parsed again and no validators are
+        // sent; a "not modified" would hand back the posts as they were parsed before, use requestRefresh otherwise
+        boolean hasPrevious;
         synchronized (this) {
+            hasPrevious = thread != null;
             thread = null;
         }
 
-        call = getData();
+        // whether there is a snapshot is checked on the way to loading it, to keep the disk off the main thread
+        if (!hasPrevious && !filterOnly && loadable.isThreadMode()) {
+            loadSnapshotThenData();
+        } else {
+            call = getData();
+        }
+    }
+
+    /**
+     * Show the on-disk snapshot for this thread first, if there is one, then reconcile it with the network.
+     */
+    private void loadSnapshotThenData() {
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            ChanLoaderResponse snapshot =
+                    ThreadSnapshotRepository.loadSnapshot(loadable, new ChanReaderParser(loadable, null, null));
+            if (snapshot != null && !snapshot.posts.isEmpty()) {
+                onResponseInternal(snapshot, true);
+            }
+            BackgroundUtils.runOnMainThread(() -> {
+                if (call == null && !listeners.isEmpty()) {
+                    call = getData();
+                }
+            });
+        });
+    }
+
+    /**
+     * Reload, asking the server to only send anything if it changed since the last load. Meant for reloads where
+     * nothing about how posts are parsed changed, like catalog refreshes and filter watch scans; a "not modified" hands
+     * the loaded data back to listeners as-is. Without loaded data, this is the same as {@link #requestFreshData()}.
+     */
+    public void requestRefresh() {
+        BackgroundUtils.ensureMainThread();
+        clearTimer();
+
+        boolean hasPrevious;
+        synchronized (this) {
+            hasPrevious = thread != null;
+        }
+
+        if (!hasPrevious) {
+            requestFreshData();
+        } else if (call == null) {
+            call = getData(loadable.isThreadMode(), true);
+        }
     }
 
     /**
@@ -163,13 +256,24 @@ public class ChanThreadLoader {
 
     public void requestAdditionalData() {
         BackgroundUtils.ensureMainThread();
-        clearPendingRunnable();
+        clearTimer();
 
         if (loadable.isThreadMode() && call == null) {
-            call = getData();
+            call = getData(true, true);
         }
     }
 
+    /**
+     * Treat this load as if the server said nothing changed, when that's already known some other way, like from a board
+     * index. No request is made; the timer is backed off the same way a not-modified response would.
+     */
+    public void skipLoad() {
+        BackgroundUtils.ensureMainThread();
+        if (call != null) return;
+        clearTimer();
+        updateInterval(lastPostCount, thread == null ? null : thread.getOp());
+    }
+
     @NonNull
     public Loadable getLoadable() {
         return loadable;
@@ -177,23 +281,16 @@ public class ChanThreadLoader {
 
     public void setTimer() {
         BackgroundUtils.ensureMainThread();
-        clearPendingRunnable();
-
-        int watchTimeout = WATCH_TIMEOUTS[currentTimeout];
+        clearTimer();
 
         pendingFuture =
                 BackgroundUtils.backgroundScheduledService.schedule(() -> BackgroundUtils.runOnMainThread(() -> {
                     pendingFuture = null;
                     requestAdditionalData();
-                }), watchTimeout, SECONDS);
+                }), intervalMs, MILLISECONDS);
     }
 
     public void clearTimer() {
-        currentTimeout = 0;
-        clearPendingRunnable();
-    }
-
-    private void clearPendingRunnable() {
         if (pendingFuture != null) {
             pendingFuture.cancel(false);
             pendingFuture = null;
@@ -204,45 +301,131 @@ public class ChanThreadLoader {
      * @return milliseconds until another requestAdditionalData is recommended
      */
     public long getTimeUntilLoadMore() {
-        long waitTime = SECONDS.toMillis(WATCH_TIMEOUTS[Math.max(0, currentTimeout)]);
-        return call != null ? 0L : lastLoadTime + waitTime - System.currentTimeMillis();
+        return call != null ? 0L : lastLoadTime + intervalMs - System.currentTimeMillis();
+    }
+
+    /**
+     * Folds the posts that came in since the last load into the post rate, and sets the interval to match.
+     *
+     * @param postCount the number of posts the thread has now
+     * @param op        the thread's OP, if there is one
+     */
+    private void updateInterval(int postCount, @Nullable Post op) {
+        BackgroundUtils.ensureMainThread();
+        long now = System.currentTimeMillis();
+        if (postRate < 0 && op != null) {
+            // nothing observed yet, so start from the thread's average over its lifetime
+            long age = now - SECONDS.toMillis(op.time);
+            postRate = age > 0 ? (double) postCount / age : 0;
+        } else if (lastLoadTime > 0 && now > lastLoadTime) {
+            double sample = (double) Math.max(0, postCount - lastPostCount) / (now - lastLoadTime);
+            postRate = postRate < 0 ? sample : postRate + RATE_SMOOTHING * (sample - postRate);
+        }
+
+        if (postRate >= 0) {
+            long minInterval = op != null && op.sticky ? MIN_STICKY_INTERVAL_MS : MIN_INTERVAL_MS;
+            long interval = postRate > 0 ? (long) (TARGET_POSTS_PER_LOAD / postRate) : MAX_INTERVAL_MS;
+            intervalMs = Math.max(minInterval, Math.min(MAX_INTERVAL_MS, interval));
+        }
+        lastLoadTime = now;
+        lastPostCount = Math.max(lastPostCount, postCount);
     }
 
     private Call getData() {
-        List<Post> cachedClones = new ArrayList<>();
+        return getData(false, false);
+    }
+
+    /**
+     * @param allowTail   if true and the site supports it, only get the last few posts of a large thread; if those don't
+     *                    connect to the loaded posts, a full load is done afterwards
+     * @param conditional if true, send the validators of the last response, so that an unchanged thread comes back as
+     *                    "not modified" and the loaded posts are kept as they are
+     */
+    private Call getData(boolean allowTail, boolean conditional) {
+        // Posts are reused as-is; only new or changed posts are parsed, against the thread's existing post index
+        ChanThread cachedThread;
+        boolean canUseConditional;
         synchronized (this) {
-            List<Post> cached = thread == null ? new ArrayList<>() : thread.getPosts();
-            for (Post p : cached) {
-                cachedClones.add(p.clone());
-            }
+            cachedThread = thread;
+            canUseConditional = conditional && thread != null;
         }
 
-        return NetUtils.makeJsonRequest(
-                getChanUrl(loadable),
+        HttpUrl tailUrl = loadable.isThreadMode() ? loadable.board.site.endpoints().threadTail(loadable) : null;
+        boolean tail = allowTail
+                && tailUrl != null
+                && cachedThread != null
+                && cachedThread.getPosts().size() >= MIN_POSTS_FOR_TAIL;
+
+        HttpUrl url = tail ? tailUrl : getChanUrl(loadable);
+        Headers.Builder headers = new Headers.Builder().add("Referer", url.toString());
+        if (canUseConditional) {
+            // OkHttp's cache steps aside for conditional requests, so a 304 will come back to us as-is
+            if (lastModifiedHeader != null) headers.add("If-Modified-Since", lastModifiedHeader);
+            // the tail is a different resource with its own entity tag, the modified date works for both though
+            if (etag != null && !tail) headers.add("If-None-Match", etag);
+        }
+
+        Converter<ChanLoaderResponse, JsonReader> parser =
+                new ChanReaderParser(loadable, cachedThread, null, filterOnly);
+        Converter<ChanLoaderResponse, Response> converter = response -> {
+            ChanLoaderResponse result;
+            if (loadable.isThreadMode() && !tail && !filterOnly) {
+                // keep the raw body around so it can be saved as a snapshot once it's known to be good
+                Buffer body = new Buffer();
+                body.writeAll(response.body().source());
+                result = parser.convert(new JsonReader(new InputStreamReader(body.copy().inputStream(), UTF_8)));
+                if (result != null && !result.posts.isEmpty()) {
+                    // written out on the repository's own thread, and only if it changed
+                    ThreadSnapshotRepository.saveSnapshot(loadable, body);
+                }
+            } else {
+                result = new ChainConverter<>(parser).chain(JSON_CONVERTER).convert(response);
+            }
+            if (result != null) {
+                result.lastModifiedHeader = response.header("Last-Modified");
+                result.etag = tail ? etag : response.header("ETag");
+            }
+            return result;
+        };
+
+        return NetUtils.makeCall(NetUtils.applicationClient,
+                url,
+                converter,
                 new ResponseResult<ChanLoaderResponse>() {
                     @Override
                     public void onFailure(Exception e) {
-                        notifyAboutError(e);
+                        if (e instanceof HttpCodeException && ((HttpCodeException) e).code == HTTP_NOT_MODIFIED) {
+                            onNotModified();
+                        } else if (tail && e instanceof HttpCodeException) {
+                            // not every thread has a tail available, only trust a full load to say a thread is gone
+                            call = getData(false, conditional);
+                        } else {
+                            notifyAboutError(e);
+                        }
                     }
 
                     @Override
                     public void onSuccess(ChanLoaderResponse result) {
-                        if (result.posts.isEmpty()) {
+                        if (result.tailGap) {
+                            Logger.vd(ChanThreadLoader.this, "Tail doesn't reach the loaded posts, loading in full");
+                            call = getData(false, conditional);
+                        } else if (result.posts.isEmpty()) {
                             notifyAboutError(new Exception("No posts in thread!"));
                         } else {
                             onResponseInternal(result);
                         }
                     }
                 },
-                new ChanReaderParser(loadable, cachedClones, null),
-                null,
                 (source, bytesRead, contentLength, start, done) -> {
                     for (ProgressListener listener : progressListeners) {
                         listener.onDownloadProgress(source, bytesRead, contentLength, start, done);
                     }
-                }
-        );
-        // TODO for cached thread loading, use a cacheControl with maxStale set so it loads a cached response
+                },
+                null,
+                headers.build(),
+                0,
+                true
+        ).first;
     }
 
     private HttpUrl getChanUrl(Loadable loadable) {
@@ -256,9 +439,20 @@ public class ChanThreadLoader {
     }
 
     private void onResponseInternal(ChanLoaderResponse response) {
+        onResponseInternal(response, false);
+    }
+
+    /**
+     * @param fromSnapshot true if this response was read from a disk snapshot instead of the network
+     */
+    private void onResponseInternal(ChanLoaderResponse response, boolean fromSnapshot) {
         BackgroundUtils.ensureBackgroundThread();
 
-        call = null;
+        if (!fromSnapshot) {
+            call = null;
+            lastModifiedHeader = response.lastModifiedHeader;
+            etag = response.etag;
+        }
         clearTimer();
 
         synchronized (this) {
@@ -266,26 +460,11 @@ public class ChanThreadLoader {
                 thread = new ChanThread(loadable, new ArrayList<>());
             }
 
-            thread.setNewPosts(response.posts);
+            thread.setNewPosts(response.posts, response.replyGraph);
         }
 
+        // the parser already put the OP's status from the response on the thread's OP
         ChanThread localThread = thread;
-        if (loadable.isThreadMode() && thread.getPosts().size() > 0) {
-            // Replace some op parameters to the real op (index 0).
-            // This is done on the main thread to avoid race conditions.
-            Post realOp = thread.getOp();
-            if (response.op != null) {
-                realOp.closed = response.op.closed;
-                realOp.archived = response.op.archived;
-                realOp.sticky = response.op.sticky;
-                realOp.replies = response.op.replies;
-                realOp.imagesCount = response.op.imagesCount;
-                realOp.uniqueIps = response.op.uniqueIps;
-                realOp.lastModified = response.op.lastModified;
-            } else {
-                Logger.e(this, "Thread has no op!");
-            }
-        }
 
         loadable.title = PostHelper.getTitle(localThread.getOp(), loadable);
         try {
@@ -294,23 +473,57 @@ public class ChanThreadLoader {
             loadable.thumbnailUrl = null;
         }
 
-        for (Post post : localThread.getPosts()) {
-            post.title = loadable.title;
+        int postCount = localThread.getPosts().size();
+        Post op = localThread.getOp();
+        String title = loadable.title;
+        // posted before the listeners, so they see the new interval and titles
+        BackgroundUtils.runOnMainThread(() -> {
+            // the posts may be on screen, so they're only changed on the main thread
+            for (Post post : localThread.getPosts()) {
+                post.title = title;
+            }
+
+            if (fromSnapshot) {
+                // the network load right after this is what tells how many posts are actually new
+                lastPostCount = postCount;
+            } else {
+                updateInterval(postCount, op);
+            }
+        });
+
+        if (!fromSnapshot) {
+            instance(DatabaseLoadableManager.class).queueUpdate(loadable);
         }
 
-        lastLoadTime = System.currentTimeMillis();
+        for (ResponseResult<ChanThread> l : listeners) {
+            BackgroundUtils.runOnMainThread(() -> l.onSuccess(localThread));
+        }
+    }
 
-        int postCount = localThread.getPosts().size();
-        if (postCount > lastPostCount) {
-            // fresh posts, reset timer to minimum 10 seconds, or if sticky 30
-            lastPostCount = postCount;
-            currentTimeout = localThread.getOp().sticky ? 3 : 0;
-        } else {
-            // no new posts, increase timer; if -1, this becomes 0 in the case of a fresh load
-            currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+    /**
+     * The server said nothing changed since the last load; skip all parsing, back off the timer and hand the existing
+     * data back to listeners.
+     */
+    private void onNotModified() {
+        call = null;
+        clearTimer();
+
+        ChanThread localThread;
+        synchronized (this) {
+            localThread = thread;
+        }
+
+        if (localThread == null) {
+            // nothing to reuse, which shouldn't happen as conditional requests are only made with existing data
+            lastModifiedHeader = null;
+            etag = null;
+            notifyAboutError(new Exception("Not modified, but no data to reuse!"));
+            return;
         }
 
-        DatabaseUtils.runTaskAsync(instance(DatabaseLoadableManager.class).updateLoadable(loadable, false));
+        Post op = localThread.getOp();
+        // posted before the listeners, so they see the new interval
+        BackgroundUtils.runOnMainThread(() -> updateInterval(lastPostCount, op));
 
         for (ResponseResult<ChanThread> l : listeners) {
             BackgroundUtils.runOnMainThread(() -> l.onSuccess(localThread));
@@ -323,6 +536,11 @@ public class ChanThreadLoader {
 
         Logger.w(this, "Loading error", exception);
 
+        if (exception instanceof HttpCodeException && ((HttpCodeException) exception).isServerErrorNotFound()) {
+            // the thread is gone, don't show stale data for it next time
+            ThreadSnapshotRepository.deleteSnapshot(loadable);
+        }
+
         for (ResponseResult<ChanThread> l : listeners) {
             BackgroundUtils.runOnMainThread(() -> l.onFailure(exception));
         }
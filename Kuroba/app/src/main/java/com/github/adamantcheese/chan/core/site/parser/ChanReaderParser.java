@@ -28,10 +28,13 @@ import androidx.annotation.Nullable;
 
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.manager.FilterWatchManager;
+import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.PostHttpIcon;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
@@ -73,26 +76,53 @@ public class ChanReaderParser
 
     private final Loadable loadable;
     private final List<Post> cached;
+    private final ReplyGraph cachedGraph;
     private final SiteContentReader reader;
+    private final boolean filterOnly;
 
     /**
-     * @param loadable    The loadable associated with this parser
-     * @param cachedPosts A list of cached posts; may be an empty list for no cached post processing
-     * @param reader      A reader to process posts for a request; if null, the reader associated with the loadable's site will be used
+     * @param loadable     The loadable associated with this parser
+     * @param cachedThread The previously loaded thread, whose posts are reused if unchanged; may be null
+     * @param reader       A reader to process posts for a request; if null, the reader associated with the loadable's site will be used
      */
-    public ChanReaderParser(Loadable loadable, @NonNull List<Post> cachedPosts, @Nullable SiteContentReader reader) {
+    public ChanReaderParser(
+            Loadable loadable, @Nullable ChanThread cachedThread, @Nullable SiteContentReader reader
+    ) {
+        this(loadable, cachedThread, reader, false);
+    }
+
+    /**
+     * @param filterOnly if true, posts are only parsed as far as filters need, see
+     *                   {@link PostParser#parseForFilters(Post.Builder, PostParser.PostParserCallback, CompiledFilters)};
+     *                   the resulting posts are not meant to be displayed
+     */
+    public ChanReaderParser(
+            Loadable loadable,
+            @Nullable ChanThread cachedThread,
+            @Nullable SiteContentReader reader,
+            boolean filterOnly
+    ) {
         inject(this);
 
-        // Copy the cached list. The cached array may changed/cleared by other threads.
         this.loadable = loadable;
-        cached = new ArrayList<>(cachedPosts);
+        // A thread's post list and index are immutable snapshots, so they can be used without copying
+        if (cachedThread == null) {
+            cached = Collections.emptyList();
+            cachedGraph = ReplyGraph.build(cached, Collections.emptySet(), null);
+        } else {
+            synchronized (cachedThread) {
+                cached = cachedThread.getPosts();
+                cachedGraph = cachedThread.getReplyGraph();
+            }
+        }
         this.reader = reader == null ? this.loadable.site.chanReader() : reader;
+        this.filterOnly = filterOnly;
     }
 
     @Override
     public ChanLoaderResponse convert(JsonReader reader)
             throws Exception {
-        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
+        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cachedGraph, loadable);
 
         if (loadable.isThreadMode()) {
             this.reader.loadThread(reader, processing);
@@ -102,6 +132,13 @@ public class ChanReaderParser
             throw new IllegalArgumentException("Unknown mode");
         }
 
+        if (processing.isTail() && (cached.isEmpty() || cached.get(cached.size() - 1).no < processing.getTailId())) {
+            // posts were made between the last cached post and the start of the tail, so there's nothing to merge into
+            ChanLoaderResponse gap = new ChanLoaderResponse(processing.getOp());
+            gap.tailGap = true;
+            return gap;
+        }
+
         List<PostHide> removedPosts;
         try {
             removedPosts = databaseHideManager.getRemovedPostsWithThreadNo(processing.getOp().no);
@@ -115,34 +152,43 @@ public class ChanReaderParser
                 removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
             }
         }
+        if (processing.isTail()) {
+            // cached posts from before the tail aren't in the response at all, but are still part of the thread
+            for (Post post : cached) {
+                if (post.no > processing.getTailId()) break;
+                if (post.filterRemove && !processing.getServerNos().contains(post.no)) {
+                    removedPosts.add(new PostHide(post.board.siteId, post.boardCode, post.no));
+                }
+            }
+        }
 
-        List<Post> list = parsePosts(processing, removedPosts);
-        return processPosts(processing.getOp(), list, removedPosts);
+        List<Post> parsed = parsePosts(processing, removedPosts);
+        return processPosts(processing, parsed, removedPosts);
     }
 
-    // Concurrently parses the new posts with an executor
+    // Concurrently parses the new and changed posts with an executor
     private List<Post> parsePosts(ChanReaderProcessingQueue queue, List<PostHide> removedPosts)
             throws InterruptedException, ExecutionException {
-        List<Post> cached = queue.getToReuse();
-        List<Post> total = new ArrayList<>(cached);
-
         List<Post.Builder> toParse = queue.getToParse();
+        List<Post> total = new ArrayList<>(toParse.size());
+        if (toParse.isEmpty()) return total;
 
         // A set of all post numbers in the thread. Used for checking if a quote if for the current thread or externally.
-        Set<Integer> internalNums = new HashSet<>();
-        // All nos of cached posts.
-        for (Post post : cached) {
-            internalNums.add(post.no);
-        }
-        // And nos for posts to parse, from the builder.
-        for (Post.Builder builder : toParse) {
-            internalNums.add(builder.no);
-        }
+        // A tail only has the last few posts, so the cached ones count too; quotes to earlier posts are common.
         // Do not modify internalNums after this point.
-        internalNums = Collections.unmodifiableSet(internalNums);
+        Set<Integer> serverNos = queue.getServerNos();
+        if (queue.isTail()) {
+            serverNos = new HashSet<>(serverNos);
+            for (Post post : cached) {
+                serverNos.add(post.no);
+            }
+        }
+        Set<Integer> internalNums = Collections.unmodifiableSet(serverNos);
 
         List<Callable<Post>> tasks = new ArrayList<>(toParse.size());
         final Theme currentTheme = ThemeHelper.getTheme();
+        // one filter snapshot for the entire load, shared by all parse tasks
+        final CompiledFilters filters = filterEngine.getCompiledFilters();
 
         for (Post.Builder post : toParse) {
             tasks.add(new PostParseCallable(databaseSavedReplyManager,
@@ -150,7 +196,9 @@ public class ChanReaderParser
                     reader.getParser(),
                     removedPosts,
                     internalNums,
-                    currentTheme
+                    currentTheme,
+                    filters,
+                    filterOnly
             ));
         }
 
@@ -164,45 +212,53 @@ public class ChanReaderParser
         return total;
     }
 
-    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost, List<PostHide> removedPosts) {
+    /**
+     * Merge the parsed posts into the cached ones, in one pass over each.
+     *
+     * @param queue        the queue that the server response was read into
+     * @param parsedPosts  posts that were parsed for this response; either new, or replacements for changed cached posts
+     * @param removedPosts removed posts for this thread
+     */
+    private ChanLoaderResponse processPosts(
+            ChanReaderProcessingQueue queue, List<Post> parsedPosts, List<PostHide> removedPosts
+    ) {
+        Post.Builder op = queue.getOp();
         ChanLoaderResponse response = new ChanLoaderResponse(op);
 
-        List<Post> cachedPosts = new ArrayList<>();
+        List<Post> cachedPosts = new ArrayList<>(cached.size());
         List<Post> newPosts = new ArrayList<>();
         List<Post> deletedPosts = new ArrayList<>();
-
-        if (cached.size() > 0) {
-            // Add all posts that were parsed before
-            cachedPosts.addAll(cached);
-
-            Map<Integer, Post> cachedPostsByNo = new HashMap<>();
-            for (Post post : cachedPosts) {
-                cachedPostsByNo.put(post.no, post);
-            }
-
-            Map<Integer, Post> serverPostsByNo = new HashMap<>();
-            for (Post post : allPost) {
-                serverPostsByNo.put(post.no, post);
+        // the posts that only this response has; cached posts may be on screen, so they're copied before being changed
+        Set<Post> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        owned.addAll(parsedPosts);
+
+        // posts that were cached but changed on the server, by number
+        Map<Integer, Post> changedPosts = new HashMap<>();
+        for (Post parsed : parsedPosts) {
+            if (queue.isCached(parsed.no)) {
+                changedPosts.put(parsed.no, parsed);
+            } else {
+                newPosts.add(parsed);
             }
+        }
 
+        Set<Integer> serverNos = queue.getServerNos();
+        for (Post cachedPost : cached) {
+            Post changed = changedPosts.get(cachedPost.no);
+            Post post = changed == null ? cachedPost : changed;
             // If there's a cached post but it's not in the list received from the server, mark it as deleted
-            if (loadable.isThreadMode()) {
-                for (Post cachedPost : cachedPosts) {
-                    cachedPost.deleted = !serverPostsByNo.containsKey(cachedPost.no);
-                    if (cachedPost.deleted) {
-                        deletedPosts.add(cachedPost);
-                    }
+            // A tail only says anything about the posts after where it starts, leave the rest as they were
+            if (loadable.isThreadMode() && (!queue.isTail() || post.no > queue.getTailId())) {
+                boolean deleted = !serverNos.contains(post.no);
+                if (post.deleted != deleted) {
+                    post = own(post, owned);
+                    post.deleted = deleted;
                 }
-            }
-
-            // If there's a post in the list from the server, that's not in the cached list, add it.
-            for (Post serverPost : allPost) {
-                if (!cachedPostsByNo.containsKey(serverPost.no)) {
-                    newPosts.add(serverPost);
+                if (deleted) {
+                    deletedPosts.add(post);
                 }
             }
-        } else {
-            newPosts.addAll(allPost);
+            cachedPosts.add(post);
         }
 
         List<Post> allPosts = new ArrayList<>(cachedPosts.size() + newPosts.size());
@@ -232,6 +288,19 @@ public class ChanReaderParser
             }
         }
 
+        // the thread's status only comes in with the OP
+        if (loadable.isThreadMode() && !allPosts.isEmpty() && hasStatusChanged(allPosts.get(0), op)) {
+            Post realOp = own(allPosts.get(0), owned);
+            realOp.closed = op.closed;
+            realOp.archived = op.archived;
+            realOp.sticky = op.sticky;
+            realOp.replies = op.replies;
+            realOp.imagesCount = op.imagesCount;
+            realOp.uniqueIps = op.uniqueIps;
+            realOp.lastModified = op.lastModified;
+            allPosts.set(0, realOp);
+        }
+
         for (Post post : newPosts) {
             // add in removed posts from new posts
             if (post.filterRemove) {
@@ -251,53 +320,56 @@ public class ChanReaderParser
             }
         }
 
-        if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
-            for (Post post : allPosts) {
-                postsByNo.put(post.no, post);
-            }
+        // removed posts are all for this thread, so the number is enough to identify them
+        Set<Integer> removedNos = new HashSet<>();
+        for (PostHide removed : removedPosts) {
+            removedNos.add(removed.no);
+        }
+        // only the posts added since the last load need processing, unless something earlier changed
+        ReplyGraph graph = ReplyGraph.build(allPosts, removedNos, cachedGraph);
 
-            // Maps post no's to a list of no's that that post received replies from
-            Map<Integer, List<Integer>> replies = new HashMap<>();
-
-            // for all posts, for any posts this post is replying to (ie has >>1234), add this post to a list of numbers for the replying number
-            // ie map this post to another post's repliesFrom, temporarily
-            for (Post sourcePost : allPosts) {
-                for (int replyTo : sourcePost.repliesTo) {
-                    List<Integer> value = replies.get(replyTo);
-                    if (value == null) {
-                        value = new ArrayList<>(1);
-                        replies.put(replyTo, value);
-                    }
-                    value.add(sourcePost.no);
+        if (loadable.isThreadMode()) {
+            // keep the repliesFrom field in sync, only touching posts that gained or lost replies
+            boolean copied = false;
+            for (int i = 0; i < allPosts.size(); i++) {
+                Post post = allPosts.get(i);
+                List<Integer> repliesFrom = graph.getReplyNos(post.no);
+                if (!post.repliesFrom.equals(repliesFrom)) {
+                    Post own = own(post, owned);
+                    own.repliesFrom.clear();
+                    own.repliesFrom.addAll(repliesFrom);
+                    allPosts.set(i, own);
+                    copied |= own != post;
                 }
             }
-
-            // for all post numbers, now properly assign the repliesFrom field, removing any removed posts along the way
-            for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
-                int key = entry.getKey();
-                List<Integer> value = entry.getValue();
-                Post subject = postsByNo.get(key);
-
-                // Sometimes a post replies to a ghost, a post that doesn't exist.
-                if (subject != null) {
-                    // If a post has been removed, remove it from the replies list
-                    Iterator<Integer> repliesFrom = value.iterator();
-                    while (repliesFrom.hasNext()) {
-                        Integer replyFrom = repliesFrom.next();
-                        if (removedPosts.contains(new PostHide(subject.board.siteId, subject.board.code, replyFrom))) {
-                            repliesFrom.remove();
-                        }
-                    }
-
-                    subject.repliesFrom.clear();
-                    subject.repliesFrom.addAll(value);
-                }
+            if (copied) {
+                graph = graph.withPosts(allPosts);
             }
         }
 
         response.posts.addAll(allPosts);
+        response.replyGraph = graph;
 
         return response;
     }
+
+    /**
+     * @return the given post if it's only part of this response, otherwise a copy of it that is
+     */
+    private Post own(Post post, Set<Post> owned) {
+        if (owned.contains(post)) return post;
+        Post copy = post.clone();
+        owned.add(copy);
+        return copy;
+    }
+
+    private boolean hasStatusChanged(Post realOp, Post.Builder op) {
+        return realOp.closed != op.closed
+                || realOp.archived != op.archived
+                || realOp.sticky != op.sticky
+                || realOp.replies != op.replies
+                || realOp.imagesCount != op.imagesCount
+                || realOp.uniqueIps != op.uniqueIps
+                || realOp.lastModified != op.lastModified;
+    }
 }
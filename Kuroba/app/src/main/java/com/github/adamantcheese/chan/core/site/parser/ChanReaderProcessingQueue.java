@@ -17,28 +17,52 @@
 package com.github.adamantcheese.chan.core.site.parser;
 
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.ReplyGraph;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 
 import java.util.*;
 
+/**
+ * Collects the posts read from a server response, sorting them into posts that can be reused from a previous load and
+ * posts that need to be (re)parsed. This is a single pass over the server's list: each post is checked against the
+ * cached index by number and by {@link Post#sourceHash}, and only new or changed posts end up being parsed.
+ */
 public class ChanReaderProcessingQueue {
-    private final Map<Integer, Post> cachedByNo = new HashMap<>();
+    private final ReplyGraph cached;
     public final Loadable loadable;
 
     private final List<Post> toReuse = new ArrayList<>();
     private final List<Post.Builder> toParse = new ArrayList<>();
+    // every post number that was in the server response
+    private final Set<Integer> serverNos = new HashSet<>();
     private Post.Builder op;
+    // for tail responses, the post number the tail is anchored at, every later post is in it; -1 for a full response
+    private int tailId = -1;
 
     public ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable) {
-        this.loadable = loadable;
+        this(ReplyGraph.build(toReuse, Collections.emptySet(), null), loadable);
+    }
 
-        for (Post cache : toReuse) {
-            cachedByNo.put(cache.no, cache);
-        }
+    /**
+     * @param cached an index of previously parsed posts, which is not modified
+     */
+    public ChanReaderProcessingQueue(ReplyGraph cached, Loadable loadable) {
+        this.loadable = loadable;
+        this.cached = cached;
     }
 
-    public Post getCachedPost(int no) {
-        return cachedByNo.get(no);
+    /**
+     * Look up a previously parsed post for the given unparsed post; call this before adding any post data that isn't
+     * from the server response.
+     *
+     * @param builder the unparsed post, as read from the server
+     * @return the cached post if it exists and hasn't changed on the server, null if the builder needs to be parsed
+     */
+    public Post getCachedPost(Post.Builder builder) {
+        serverNos.add(builder.no);
+        builder.sourceHash(builder.computeSourceHash());
+        Post cachedPost = cached.getPost(builder.no);
+        return cachedPost != null && cachedPost.sourceHash == builder.sourceHash ? cachedPost : null;
     }
 
     public void addForReuse(Post post) {
@@ -46,6 +70,7 @@ public class ChanReaderProcessingQueue {
     }
 
     public void addForParse(Post.Builder postBuilder) {
+        serverNos.add(postBuilder.no);
         toParse.add(postBuilder);
     }
 
@@ -61,7 +86,33 @@ public class ChanReaderProcessingQueue {
         return toParse;
     }
 
+    boolean isCached(int no) {
+        return cached.contains(no);
+    }
+
+    /**
+     * @return all the post numbers in the server response; do not modify
+     */
+    Set<Integer> getServerNos() {
+        return serverNos;
+    }
+
     public Post.Builder getOp() {
         return op;
     }
+
+    public void setTailId(int tailId) {
+        this.tailId = tailId;
+    }
+
+    /**
+     * @return true if the response only had the OP and the last few posts of the thread
+     */
+    public boolean isTail() {
+        return tailId != -1;
+    }
+
+    public int getTailId() {
+        return tailId;
+    }
 }
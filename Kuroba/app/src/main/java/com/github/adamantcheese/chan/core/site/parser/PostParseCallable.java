@@ -19,6 +19,7 @@ package com.github.adamantcheese.chan.core.site.parser;
 import androidx.annotation.NonNull;
 
 import com.github.adamantcheese.chan.core.database.DatabaseSavedReplyManager;
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.model.Post;
 import com.github.adamantcheese.chan.core.model.orm.PostHide;
 import com.github.adamantcheese.chan.core.site.parser.PostParser.PostParserCallback;
@@ -34,6 +35,8 @@ class PostParseCallable
     private final Post.Builder postBuilder;
     private final PostParser parser;
     private final Theme theme;
+    private final CompiledFilters filters;
+    private final boolean filterOnly;
     private final PostParserCallback postParserCallback;
 
     public PostParseCallable(
@@ -42,11 +45,15 @@ class PostParseCallable
             PostParser parser,
             List<PostHide> removedPosts,
             Set<Integer> internalNos,
-            @NonNull Theme theme
+            @NonNull Theme theme,
+            @NonNull CompiledFilters filters,
+            boolean filterOnly
     ) {
         this.postBuilder = builder;
         this.parser = parser;
         this.theme = theme;
+        this.filters = filters;
+        this.filterOnly = filterOnly;
         postParserCallback = new PostParserCallback() {
             @Override
             public boolean isSaved(int postNo) {
@@ -66,6 +73,8 @@ class PostParseCallable
 
     @Override
     public Post call() {
-        return parser.parse(postBuilder, theme, postParserCallback);
+        return filterOnly
+                ? parser.parseForFilters(postBuilder, postParserCallback, filters)
+                : parser.parse(postBuilder, theme, postParserCallback, filters);
     }
 }
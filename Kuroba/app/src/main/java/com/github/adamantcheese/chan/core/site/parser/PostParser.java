@@ -34,17 +34,20 @@ import android.text.*;
 
 import androidx.annotation.NonNull;
 
+import com.github.adamantcheese.chan.core.manager.CompiledFilters;
 import com.github.adamantcheese.chan.core.manager.FilterEngine;
 import com.github.adamantcheese.chan.core.manager.FilterEngine.FilterAction;
 import com.github.adamantcheese.chan.core.model.Post;
-import com.github.adamantcheese.chan.core.model.orm.Filter;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Filters;
 import com.github.adamantcheese.chan.core.site.parser.comment_action.ChanCommentAction;
+import com.github.adamantcheese.chan.features.html_styling.SimpleHtmlParser;
+import com.github.adamantcheese.chan.features.html_styling.SimpleHtmlParser.TextRule;
 import com.github.adamantcheese.chan.features.html_styling.StyledHtml;
 import com.github.adamantcheese.chan.features.html_styling.base.ChainStyleAction;
 import com.github.adamantcheese.chan.features.html_styling.impl.HtmlNodeTreeAction;
+import com.github.adamantcheese.chan.features.html_styling.impl.HtmlTagAction;
 import com.github.adamantcheese.chan.features.html_styling.impl.PostThemedStyleActions;
 import com.github.adamantcheese.chan.ui.text.spans.post_linkables.QuoteLinkable;
 import com.github.adamantcheese.chan.ui.text.spans.post_linkables.RemovedLinkable;
@@ -52,7 +55,10 @@ import com.github.adamantcheese.chan.ui.text.spans.*;
 import com.github.adamantcheese.chan.features.theme.Theme;
 import com.github.adamantcheese.chan.utils.StringUtils;
 
-import java.util.Collections;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.util.*;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
@@ -61,6 +67,8 @@ public class PostParser {
     @Inject
     private FilterEngine filterEngine;
 
+    private static final String DEFAULT_NAME = "Anonymous";
+
     private final ChanCommentAction elementAction;
     private GetFiltersCallback getFiltersCallback;
 
@@ -69,12 +77,14 @@ public class PostParser {
     // not preceded by /, ", l, &, : (optional space too to avoid CSS with spaces) and not followed by ;
     // otherwise match @num and #num
     private final Pattern extraQuotePattern = Pattern.compile("(?<!: ?)(?<![/\\\"l&])[@#](\\d+)(?!;)");
-    private final Pattern extraSpoilerPattern = Pattern.compile("\\[spoiler\\](.*?)\\[/spoiler\\]");
-    private final Pattern discordSpoilerPatten = Pattern.compile("\\|\\|(.*?)\\|\\|");
-    private final Pattern boldPattern = Pattern.compile("\\*\\*(.+)\\*\\*");
-    private final Pattern italicPattern = Pattern.compile("\\*(.+)\\*");
-    private final Pattern codePattern = Pattern.compile("`(.+)`");
-    private final Pattern strikePattern = Pattern.compile("~~(.+)~~");
+    private final TextRule extraSpoilerRule =
+            new TextRule(Pattern.compile("\\[spoiler\\](.*?)\\[/spoiler\\]"), "<s>$1</s>", "[spoiler]");
+    private final TextRule discordSpoilerRule = new TextRule(Pattern.compile("\\|\\|(.*?)\\|\\|"), "<s>$1</s>", "||");
+    private final TextRule boldRule = new TextRule(Pattern.compile("\\*\\*(.+)\\*\\*"), "<b>$1</b>", "**");
+    private final TextRule italicRule = new TextRule(Pattern.compile("\\*(.+)\\*"), "<i>$1</i>", "*");
+    private final TextRule codeRule =
+            new TextRule(Pattern.compile("`(.+)`"), "<pre class=\"prettyprint\">$1</pre>", "`");
+    private final TextRule strikeRule = new TextRule(Pattern.compile("~~(.+)~~"), "<strike>$1</strike>", "~~");
 
     /**
      * Construct a new post parser, with the given action for styling parsed comments.
@@ -82,21 +92,35 @@ public class PostParser {
     public PostParser(ChanCommentAction elementAction) {
         this.elementAction = elementAction;
         inject(this);
-        getFiltersCallback = () -> filterEngine.getEnabledFilters();
+        getFiltersCallback = () -> filterEngine.getCompiledFilters();
     }
 
     public PostParser withOverrideFilters(Filters filters) {
-        getFiltersCallback = () -> filters;
+        CompiledFilters compiled = new CompiledFilters(-1, filters);
+        getFiltersCallback = () -> compiled;
         return this;
     }
 
     public Post parse(
             Post.Builder builder, @NonNull Theme theme, PostParserCallback postParserCallback
     ) {
+        return parse(builder, theme, postParserCallback, getFiltersCallback.getFilterList());
+    }
+
+    /**
+     * @param filters the filter snapshot to use; when parsing many posts, get this once and share it between them
+     */
+    public Post parse(
+            Post.Builder builder,
+            @NonNull Theme theme,
+            PostParserCallback postParserCallback,
+            @NonNull CompiledFilters filters
+    ) {
+        CompiledFilters.BoardFilters boardFilters = filters.forBoard(builder.board);
         // needed for "Apply to own posts" to work correctly
         builder.isSavedReply(postParserCallback.isSaved(builder.no));
-        parseInfoSpans(builder, theme, postParserCallback);
-        builder.comment = new SpannableString(parseComment(builder, theme, postParserCallback));
+        parseInfoSpans(builder, theme, postParserCallback, boardFilters);
+        builder.comment = new SpannableString(parseComment(builder, theme, postParserCallback, boardFilters));
 
         // process any removed posts, and remove any linkables/spans attached
         for (QuoteLinkable l : builder.getQuoteLinkables()) {
@@ -106,7 +130,30 @@ public class PostParser {
             }
         }
 
-        processPostFilter(builder);
+        processPostFilter(builder, boardFilters);
+
+        return builder.build();
+    }
+
+    /**
+     * A much cheaper version of {@link #parse(Post.Builder, Theme, PostParserCallback, CompiledFilters)}, for posts
+     * that are only checked against filters and never shown, like the catalogs scanned for watch filters. No spans are
+     * made; the comment is reduced to its plain text and the name line and subject spans are left empty. Text that only
+     * the styling adds, like the markers after quotes, isn't in the comment, so filters matching on that won't match.
+     */
+    public Post parseForFilters(
+            Post.Builder builder, PostParserCallback postParserCallback, @NonNull CompiledFilters filters
+    ) {
+        CompiledFilters.BoardFilters boardFilters = filters.forBoard(builder.board);
+        builder.isSavedReply(postParserCallback.isSaved(builder.no));
+        applyAnonymize(builder);
+        builder.spans(null, "");
+
+        StringBuilder text = new StringBuilder();
+        appendText(parseCommentTree(builder), text);
+        builder.comment = new SpannableString(text);
+
+        processPostFilter(builder, boardFilters);
 
         return builder.build();
     }
@@ -118,18 +165,20 @@ public class PostParser {
      *
      * @param theme   Theme to use for parsing
      * @param builder Post builder to get data from
+     * @param filters Filters for the post's board
      */
-    private void parseInfoSpans(Post.Builder builder, @NonNull Theme theme, PostParserCallback postParserCallback) {
+    private void parseInfoSpans(
+            Post.Builder builder,
+            @NonNull Theme theme,
+            PostParserCallback postParserCallback,
+            CompiledFilters.BoardFilters filters
+    ) {
         float detailsSizePx = sp(ChanSettings.fontSize.get() - 4);
         SpannableStringBuilder nameTripcodeIdCapcodeSpan = new SpannableStringBuilder();
 
-        final String defaultName = "Anonymous";
-        if (ChanSettings.anonymize.get()) {
-            builder.name(defaultName);
-            builder.tripcode("");
-        }
+        applyAnonymize(builder);
 
-        if (!TextUtils.isEmpty(builder.getName()) && (!builder.getName().equals(defaultName)
+        if (!TextUtils.isEmpty(builder.getName()) && (!builder.getName().equals(DEFAULT_NAME)
                 || ChanSettings.showAnonymousName.get())) {
             nameTripcodeIdCapcodeSpan
                     .append(span(builder.getName(), new ForegroundColorSpanHashed(theme.nameColorInt)))
@@ -143,10 +192,6 @@ public class PostParser {
             )).append("  ");
         }
 
-        if (ChanSettings.anonymizeIds.get()) {
-            builder.posterId("");
-        }
-
         if (!TextUtils.isEmpty(builder.posterId)) {
             Object idBackgroundSpan;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
@@ -174,7 +219,7 @@ public class PostParser {
             Object foregroundSpan = builder.filterStub ? null : new ForegroundColorSpanHashed(theme.subjectColorInt);
             builder.spans(FILTER_DEBUG
                     .with(theme,
-                            getFiltersCallback.getFilterList(),
+                            filters.ofType(SUBJECT),
                             Collections.singletonList(SUBJECT),
                             builder,
                             postParserCallback
@@ -185,28 +230,27 @@ public class PostParser {
         }
     }
 
-    private CharSequence parseComment(
-            Post.Builder post, @NonNull Theme theme, PostParserCallback postParserCallback
-    ) {
-        String comment = post.comment.toString();
-        // modifiers for HTML
-        if (ChanSettings.parseExtraQuotes.get()) {
-            comment = extraQuotePattern.matcher(comment).replaceAll(createQuoteElementString(post));
-        }
-        if (ChanSettings.parseExtraSpoilers.get()) {
-            comment = extraSpoilerPattern.matcher(comment).replaceAll("<s>$1</s>");
-            comment = discordSpoilerPatten.matcher(comment).replaceAll("<s>$1</s>");
+    private void applyAnonymize(Post.Builder builder) {
+        if (ChanSettings.anonymize.get()) {
+            builder.name(DEFAULT_NAME);
+            builder.tripcode("");
         }
-        if (ChanSettings.mildMarkdown.get()) {
-            comment = boldPattern.matcher(comment).replaceAll("<b>$1</b>");
-            comment = italicPattern.matcher(comment).replaceAll("<i>$1</i>");
-            comment = codePattern.matcher(comment).replaceAll("<pre class=\"prettyprint\">$1</pre>");
-            comment = strikePattern.matcher(comment).replaceAll("<strike>$1</strike>");
+
+        if (ChanSettings.anonymizeIds.get()) {
+            builder.posterId("");
         }
+    }
 
+    private CharSequence parseComment(
+            Post.Builder post,
+            @NonNull Theme theme,
+            PostParserCallback postParserCallback,
+            CompiledFilters.BoardFilters filters
+    ) {
+        Node root = parseCommentTree(post);
         return new ChainStyleAction(PostThemedStyleActions.EMBED_IMAGES.with(theme, post, postParserCallback))
                 .chain(FILTER_DEBUG.with(theme,
-                        getFiltersCallback.getFilterList(),
+                        filters.ofType(COMMENT),
                         Collections.singletonList(COMMENT),
                         post,
                         postParserCallback
@@ -215,35 +259,90 @@ public class PostParser {
                 .chain(new HtmlNodeTreeAction(elementAction.addSpecificActions(theme, post, postParserCallback),
                         new ChainStyleAction(HEX_COLOR).chain(LINK.with(theme)).chain(EMOJI)
                 ))
-                .style(StyledHtml.prepare(comment, post.threadUrl()), null);
+                .style(root, null);
     }
 
-    private void processPostFilter(Post.Builder post) {
-        for (Filter f : getFiltersCallback.getFilterList()) {
-            if (filterEngine.matchesBoard(f, post.board) && filterEngine.matches(f, post)) {
-                switch (FilterAction.values()[f.action]) {
-                    case COLOR:
-                        post.filter(new int[]{f.color},
-                                false,
-                                false,
-                                false,
-                                f.applyToReplies,
-                                f.onlyOnOP,
-                                f.applyToSaved
-                        );
-                        break;
-                    case HIDE:
-                        post.filter(new int[]{0}, true, false, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case REMOVE:
-                        post.filter(new int[]{0}, false, true, false, f.applyToReplies, f.onlyOnOP, false);
-                        break;
-                    case WATCH:
-                        post.filter(new int[]{0}, false, false, true, false, true, false);
-                        break;
-                }
+    private Node parseCommentTree(Post.Builder post) {
+        String comment = post.comment.toString();
+        List<TextRule> textRules = getTextRules(post);
+        Node root = SimpleHtmlParser.parse(comment, post.threadUrl(), textRules);
+        if (root == null) {
+            // markup the simple parser can't handle; rewrite the whole comment and let Jsoup deal with it
+            for (TextRule rule : textRules) {
+                comment = rule.getPattern().matcher(comment).replaceAll(rule.getReplacement());
             }
+            root = StyledHtml.prepareWithJsoup(comment, post.threadUrl());
+        }
+        return root;
+    }
+
+    /**
+     * Collects the text of a comment tree, with the line breaks of the default tag rules in {@link HtmlTagAction}.
+     */
+    private static void appendText(Node node, StringBuilder text) {
+        if (node instanceof TextNode) {
+            text.append(((TextNode) node).getWholeText());
+            return;
+        }
+        if ("br".equals(node.nodeName())) {
+            text.append('\n');
+            return;
         }
+        for (Node child : node.childNodes()) {
+            appendText(child, text);
+        }
+        if (("p".equals(node.nodeName()) || "div".equals(node.nodeName())) && node.nextSibling() != null) {
+            text.append('\n');
+        }
+    }
+
+    /**
+     * @return the modifiers for comment text that are turned on, in the order they apply
+     */
+    private List<TextRule> getTextRules(Post.Builder post) {
+        List<TextRule> rules = new ArrayList<>();
+        if (ChanSettings.parseExtraQuotes.get()) {
+            // only ever matches within text, so it has no marker
+            rules.add(new TextRule(extraQuotePattern, createQuoteElementString(post), null));
+        }
+        if (ChanSettings.parseExtraSpoilers.get()) {
+            rules.add(extraSpoilerRule);
+            rules.add(discordSpoilerRule);
+        }
+        if (ChanSettings.mildMarkdown.get()) {
+            rules.add(boldRule);
+            rules.add(italicRule);
+            rules.add(codeRule);
+            rules.add(strikeRule);
+        }
+        return rules;
+    }
+
+    private void processPostFilter(Post.Builder post, CompiledFilters.BoardFilters filters) {
+        // board matching was already done when the filters were split up
+        filters.matcher().forEachMatch(post, f -> {
+            switch (FilterAction.values()[f.action]) {
+                case COLOR:
+                    post.filter(new int[]{f.color},
+                            false,
+                            false,
+                            false,
+                            f.applyToReplies,
+                            f.onlyOnOP,
+                            f.applyToSaved
+                    );
+                    break;
+                case HIDE:
+                    post.filter(new int[]{0}, true, false, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case REMOVE:
+                    post.filter(new int[]{0}, false, true, false, f.applyToReplies, f.onlyOnOP, false);
+                    break;
+                case WATCH:
+                    post.filter(new int[]{0}, false, false, true, false, true, false);
+                    break;
+            }
+        });
     }
 
     public String createQuoteElementString(Post.Builder post) {
@@ -277,6 +376,6 @@ public class PostParser {
     }
 
     public interface GetFiltersCallback {
-        Filters getFilterList();
+        CompiledFilters getFilterList();
     }
 }
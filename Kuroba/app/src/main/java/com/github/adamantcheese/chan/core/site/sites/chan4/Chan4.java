@@ -165,6 +165,16 @@ public class Chan4
                     .build();
         }
 
+        @Override
+        public HttpUrl threadTail(Loadable loadable) {
+            return a
+                    .newBuilder()
+                    .addPathSegment(loadable.boardCode)
+                    .addPathSegment("thread")
+                    .addPathSegment(loadable.no + "-tail.json")
+                    .build();
+        }
+
         @Override
         public HttpUrl imageUrl(Post.Builder post, Map<String, String> arg) {
             String imageFile = arg.get("tim") + "." + arg.get("ext");
@@ -20,10 +20,10 @@ import android.util.JsonReader;
 
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPage;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPageThread;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.ChanPages;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 public class Chan4PagesReader
         implements NetUtilsClasses.Converter<ChanPages, JsonReader> {
@@ -44,7 +44,8 @@ public class Chan4PagesReader
     private ChanPage readPageEntry(JsonReader reader)
             throws Exception {
         int pageNo = -1;
-        List<Integer> threadNumbers = null;
+        List<Integer> threadNumbers = new ArrayList<>();
+        Map<Integer, ChanPageThread> threadStates = new HashMap<>();
 
         reader.beginObject();
         while (reader.hasNext()) {
@@ -52,44 +53,48 @@ public class Chan4PagesReader
             if (nextName.equals("page")) {
                 pageNo = reader.nextInt();
             } else if (nextName.equals("threads")) {
-                threadNumbers = readThreadNumbers(reader);
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ChanPageThread thread = readOneThread(reader);
+                    threadNumbers.add(thread.no);
+                    threadStates.put(thread.no, thread);
+                }
+                reader.endArray();
             } else {
                 reader.skipValue();
             }
         }
         reader.endObject();
 
-        return new ChanPage(pageNo, threadNumbers);
+        return new ChanPage(pageNo, threadNumbers, threadStates);
     }
 
-    private List<Integer> readThreadNumbers(JsonReader reader)
-            throws Exception {
-        List<Integer> threadNumbers = new ArrayList<>();
-
-        reader.beginArray();
-        while (reader.hasNext()) {
-            threadNumbers.add(readOneThreadNumber(reader));
-        }
-        reader.endArray();
-
-        return threadNumbers;
-    }
-
-    private int readOneThreadNumber(JsonReader reader)
+    private ChanPageThread readOneThread(JsonReader reader)
             throws Exception {
         int no = -1;
+        long lastModified = -1;
+        int replies = -1;
 
         reader.beginObject();
         while (reader.hasNext()) {
             String nextName = reader.nextName();
-            if (nextName.equals("no")) {
-                no = reader.nextInt();
-            } else {
-                reader.skipValue();
+            switch (nextName) {
+                case "no":
+                    no = reader.nextInt();
+                    break;
+                case "last_modified":
+                    lastModified = reader.nextLong();
+                    break;
+                case "replies":
+                    replies = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
         }
         reader.endObject();
 
-        return no;
+        return new ChanPageThread(no, lastModified, replies);
     }
 }
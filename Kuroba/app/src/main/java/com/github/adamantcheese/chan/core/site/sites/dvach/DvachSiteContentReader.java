@@ -156,9 +156,9 @@ public class DvachSiteContentReader
             queue.setOp(builder.clone());
         }
 
-        Post cached = queue.getCachedPost(builder.no);
+        Post cached = queue.getCachedPost(builder);
         if (cached != null) {
-            // Id is known, use the cached post object.
+            // Id is known and unchanged, use the cached post object.
             queue.addForReuse(cached);
             return;
         }
@@ -23,6 +23,7 @@ import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.net.NetUtils;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses;
 import com.github.adamantcheese.chan.core.net.NetUtilsClasses.*;
+import com.github.adamantcheese.chan.core.net.RequestCoalescer;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.features.embedding.embedders.base.Embedder;
 import com.github.adamantcheese.chan.features.embedding.embedders.impl.*;
@@ -38,10 +39,12 @@ import org.jetbrains.annotations.NotNull;
 import java.io.*;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 
 import okhttp3.*;
+import okio.Timeout;
 
 public class EmbeddingEngine
         implements DefaultLifecycleObserver {
@@ -55,6 +58,9 @@ public class EmbeddingEngine
 
     private static EmbeddingEngine instance;
 
+    // request URL -> the single call fetching that embed
+    private static final RequestCoalescer<String, EmbedSubscriber> embedRequests = new RequestCoalescer<>();
+
     /**
      * Create a new engine instance. You should really only need one.
      *
@@ -247,22 +253,20 @@ public class EmbeddingEngine
                 ));
             } else {
                 // we haven't cached this embed, or we need additional information
-                calls.add(NetUtils.makeCall(NetUtils.applicationClient,
+                // the result is delivered straight to the response result, so the callback has nothing left to do
+                calls.add(new Pair<>(new CoalescedEmbedCall(embedder,
                         urlPair.second,
-                        embedder,
                         getStandardResponseResult(embedder,
                                 theme,
                                 commentCopy,
                                 generatedImages,
                                 videoTitleDurCache,
                                 urlPair.first
-                        ),
-                        null,
-                        NetUtilsClasses.ONE_DAY_CACHE,
-                        embedder.getExtraHeaders(),
-                        embedder.getTimeoutMillis(),
-                        false
-                ));
+                        )
+                ), new IgnoreFailureCallback() {
+                    @Override
+                    public void onResponse(@NonNull Call call, @NonNull Response response) {}
+                }));
             }
         }
         return calls;
@@ -371,6 +375,180 @@ public class EmbeddingEngine
     }
     //endregion
 
+    public static String getRequestStats() {
+        return embedRequests.getStats();
+    }
+
+    private static class EmbedSubscriber {
+        private final CoalescedEmbedCall call;
+        private final ResponseResult<EmbedResult> result;
+        private final Callback callback;
+
+        private EmbedSubscriber(CoalescedEmbedCall call, ResponseResult<EmbedResult> result, Callback callback) {
+            this.call = call;
+            this.result = result;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * A call for an embed's metadata that, once enqueued, shares a single network call with every other enqueued call
+     * for the same request URL that is in flight at the same time, for example when many posts in a thread link the
+     * same video. Cancelling it only cancels the network call once nothing else is waiting on it.<br>
+     * The shared call's body is consumed by the embedder, so the response handed to each callback has an empty body.
+     */
+    private static class CoalescedEmbedCall
+            implements Call {
+        private final Embedder embedder;
+        private final HttpUrl url;
+        private final ResponseResult<EmbedResult> result;
+        private final Request request;
+        private Call subscription;
+        private boolean canceled;
+        // set while a thread is blocked in execute(), so cancelling can wake it up
+        private CountDownLatch executing;
+
+        private CoalescedEmbedCall(Embedder embedder, HttpUrl url, ResponseResult<EmbedResult> result) {
+            this.embedder = embedder;
+            this.url = url;
+            this.result = result;
+            request = new Request.Builder().url(url).build();
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback callback) {
+            synchronized (this) {
+                if (subscription != null) throw new IllegalStateException("Already Executed");
+                if (!canceled) {
+                    subscription = embedRequests.subscribe(url.toString(),
+                            new EmbedSubscriber(this, result, callback),
+                            this::startSharedCall
+                    );
+                    return;
+                }
+            }
+            callback.onFailure(this, new IOException("Canceled"));
+        }
+
+        private Call startSharedCall(RequestCoalescer<String, EmbedSubscriber>.Group group) {
+            return NetUtils.makeCall(NetUtils.applicationClient, url, embedder, new ResponseResult<EmbedResult>() {
+                @Override
+                public void onFailure(Exception e) {
+                    IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    for (EmbedSubscriber subscriber : group.finish()) {
+                        subscriber.result.onFailure(e);
+                        subscriber.callback.onFailure(subscriber.call, failure);
+                    }
+                }
+
+                @Override
+                public void onSuccess(EmbedResult embedResult) {
+                    for (EmbedSubscriber subscriber : group.finish()) {
+                        subscriber.result.onSuccess(embedResult);
+                        try {
+                            subscriber.callback.onResponse(subscriber.call, subscriber.call.makeResponse());
+                        } catch (IOException e) {
+                            subscriber.callback.onFailure(subscriber.call, e);
+                        }
+                    }
+                }
+            }, null, NetUtilsClasses.ONE_DAY_CACHE, embedder.getExtraHeaders(), embedder.getTimeoutMillis(), true).first;
+        }
+
+        private Response makeResponse() {
+            return new Response.Builder()
+                    .code(200)
+                    .request(request)
+                    .body(new EmptyResponseBody())
+                    .protocol(Protocol.HTTP_1_1)
+                    .message("OK")
+                    .build();
+        }
+
+        @Override
+        public void cancel() {
+            Call toCancel;
+            CountDownLatch waiting;
+            synchronized (this) {
+                canceled = true;
+                toCancel = subscription;
+                waiting = executing;
+            }
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+            // a canceled subscriber is never delivered to, so wake up execute() here
+            if (waiting != null) {
+                waiting.countDown();
+            }
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return subscription != null;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        /**
+         * Blocks until the shared call for this request is done; don't call this on the main thread.
+         */
+        @NotNull
+        @Override
+        public Response execute()
+                throws IOException {
+            CountDownLatch done = new CountDownLatch(1);
+            Response[] response = new Response[1];
+            IOException[] failure = new IOException[1];
+            synchronized (this) {
+                executing = done;
+            }
+            enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    failure[0] = e;
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response r) {
+                    response[0] = r;
+                    done.countDown();
+                }
+            });
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException("Interrupted while waiting on the shared call");
+            }
+            if (response[0] != null) return response[0];
+            throw failure[0] != null ? failure[0] : new IOException("Canceled");
+        }
+
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @SuppressWarnings("MethodDoesntCallSuperMethod")
+        @NotNull
+        @Override
+        public Call clone() {
+            return new CoalescedEmbedCall(embedder, url, result);
+        }
+    }
+
     public void clearCache() {
         videoTitleDurCache.evictAll();
         CACHE_FILE.delete();
@@ -0,0 +1,261 @@
+package com.github.adamantcheese.chan.features.filtering;
+
+import static com.github.adamantcheese.chan.core.manager.FilterType.*;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+
+import com.github.adamantcheese.chan.core.manager.FilterEngine;
+import com.github.adamantcheese.chan.core.manager.FilterType;
+import com.github.adamantcheese.chan.core.model.*;
+import com.github.adamantcheese.chan.core.model.orm.Filter;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a list of filters against posts all at once, instead of running every filter's regex against every field.
+ * <br><br>
+ * Word and exact phrase filters are reduced to the literals they require, and all the literals for a filter type are
+ * combined into a single {@link LiteralMatcher}. A field is scanned once per type to find which filters could possibly
+ * match it, and only those have their actual pattern run, so results are identical to
+ * {@link FilterEngine#matches(Filter, Post.Builder)}. Regex filters and filters with non-ASCII text can't be reduced
+ * and are always run.<br>
+ * For {@link FilterType#IMAGE_HASH}, {@link FilterType#ID} and {@link FilterType#FLAG_CODE}, which are usually filtered
+ * by their exact value, a field equal to a filter's literal is a guaranteed match and skips the pattern entirely.
+ * <br><br>
+ * Everything is compiled up front; matching takes no locks and can run on any number of threads at once.
+ */
+public class FilterMatcher {
+    private static final Set<FilterType> EQUALITY_TYPES = EnumSet.of(IMAGE_HASH, ID, FLAG_CODE);
+
+    private final Filter[] filters;
+    private final Pattern[] positive;
+    private final Pattern[] negative;
+    // flag codes are always case insensitive, so regex filters get a separate compilation for them
+    private final Pattern[] flagPositive;
+    private final Pattern[] flagNegative;
+
+    private final Map<FilterType, TypeIndex> indices = new EnumMap<>(FilterType.class);
+
+    public FilterMatcher(List<Filter> filterList) {
+        int count = filterList.size();
+        filters = filterList.toArray(new Filter[0]);
+        positive = new Pattern[count];
+        negative = new Pattern[count];
+        flagPositive = new Pattern[count];
+        flagNegative = new Pattern[count];
+
+        Map<FilterType, LiteralMatcher.Builder> literalBuilders = new EnumMap<>(FilterType.class);
+        for (FilterType type : FilterType.values()) {
+            indices.put(type, new TypeIndex());
+        }
+
+        for (int i = 0; i < count; i++) {
+            Filter f = filters[i];
+            positive[i] = FilterEngine.compile(f.pattern, 0);
+            negative[i] = FilterEngine.compile(f.negativePattern, 0);
+            if (f.hasFilter(FLAG_CODE)) {
+                flagPositive[i] = FilterEngine.compile(f.pattern, Pattern.CASE_INSENSITIVE);
+                flagNegative[i] = FilterEngine.compile(f.negativePattern, Pattern.CASE_INSENSITIVE);
+            }
+            if (positive[i] == null) continue; // invalid or empty, never matches anything
+
+            List<String> literals = requiredLiterals(f.pattern);
+            List<String> exactValues = literals == null ? Collections.emptyList() : exactValues(f.pattern);
+            for (FilterType type : FilterType.forFlags(f.type)) {
+                //noinspection ConstantConditions
+                TypeIndex index = indices.get(type);
+                if (literals == null) {
+                    index.alwaysCheck.set(i);
+                    continue;
+                }
+                LiteralMatcher.Builder builder = literalBuilders.get(type);
+                if (builder == null) {
+                    builder = new LiteralMatcher.Builder();
+                    literalBuilders.put(type, builder);
+                }
+                for (String literal : literals) {
+                    builder.add(literal, i);
+                }
+                if (EQUALITY_TYPES.contains(type)) {
+                    for (String value : exactValues) {
+                        BitSet ids = index.exact.get(value);
+                        if (ids == null) {
+                            ids = new BitSet();
+                            index.exact.put(value, ids);
+                        }
+                        ids.set(i);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<FilterType, LiteralMatcher.Builder> entry : literalBuilders.entrySet()) {
+            //noinspection ConstantConditions
+            indices.get(entry.getKey()).literals = entry.getValue().build();
+        }
+    }
+
+    /**
+     * Test every filter against the post, in order, with the same rules as
+     * {@link FilterEngine#matches(Filter, Post.Builder)}; image hash filters may modify the post's images.
+     *
+     * @param post     the post to test
+     * @param callback called with each filter that matches, in order
+     */
+    @AnyThread
+    public void forEachMatch(Post.Builder post, MatchCallback callback) {
+        if (!post.moderatorCapcode.isEmpty() || post.sticky) return;
+        PostFields fields = new PostFields();
+        for (int i = 0; i < filters.length; i++) {
+            if (matches(i, post, fields)) {
+                callback.onMatch(filters[i]);
+            }
+        }
+    }
+
+    private boolean matches(int i, Post.Builder post, PostFields fields) {
+        // which fields are tested is up to the engine, this only makes testing each one cheaper
+        return FilterEngine.matches(filters[i], post, (type, text) -> fields.matches(i, type, text));
+    }
+
+    private boolean matchesText(int i, FilterType type, CharSequence text, Hits hits) {
+        if (!hits.candidates.get(i)) return false;
+        Pattern p = type == FLAG_CODE ? flagPositive[i] : positive[i];
+        Pattern n = type == FLAG_CODE ? flagNegative[i] : negative[i];
+        if (p == null) return false;
+        if (!hits.exact.get(i) && !p.matcher(text).find()) return false;
+        return n == null || !n.matcher(text).find();
+    }
+
+    private Hits findHits(FilterType type, CharSequence text) {
+        //noinspection ConstantConditions
+        TypeIndex index = indices.get(type);
+        Hits hits = new Hits(text, (BitSet) index.alwaysCheck.clone());
+        if (index.literals != null) {
+            index.literals.findAll(text, hits.candidates);
+        }
+        if (!index.exact.isEmpty()) {
+            BitSet exact = index.exact.get(LiteralMatcher.fold(text.toString()));
+            if (exact != null) {
+                hits.exact.or(exact);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return literals of which at least one must be present (ASCII case insensitive) for the raw pattern to match,
+     * or null if the pattern can't be reduced this way; mirrors the logic of {@link FilterEngine#compile(String, int)}
+     * <br>
+     * Patterns are compiled with unicode case folding, which the ASCII folding of {@link LiteralMatcher} can't follow,
+     * so a pattern with any non-ASCII literal is never reduced.
+     */
+    @Nullable
+    private static List<String> requiredLiterals(String rawPattern) {
+        if (isRegex(rawPattern)) return null;
+        if (isPhrase(rawPattern)) {
+            String phrase = rawPattern.substring(1, rawPattern.length() - 1);
+            return isAscii(phrase) ? Collections.singletonList(phrase) : null;
+        }
+
+        List<String> literals = new ArrayList<>();
+        for (String word : rawPattern.split(" ")) {
+            // a wildcard word needs its longest fixed piece to be present
+            String longest = "";
+            for (String piece : word.split("\\*")) {
+                if (piece.length() > longest.length()) longest = piece;
+            }
+            if (longest.isEmpty()) return null; // a lone wildcard or empty word matches nearly anything
+            if (!isAscii(word)) return null;
+            literals.add(longest);
+        }
+        return literals;
+    }
+
+    /**
+     * @return folded field values for which the raw pattern is guaranteed to match
+     */
+    private static List<String> exactValues(String rawPattern) {
+        if (isPhrase(rawPattern)) {
+            return Collections.singletonList(LiteralMatcher.fold(rawPattern.substring(1, rawPattern.length() - 1)));
+        }
+
+        List<String> values = new ArrayList<>();
+        for (String word : rawPattern.split(" ")) {
+            // the word boundaries around a word only match the whole field if the word begins and ends in word chars
+            if (word.contains("*") || !isWordChar(word.charAt(0)) || !isWordChar(word.charAt(word.length() - 1))) {
+                continue;
+            }
+            values.add(LiteralMatcher.fold(word));
+        }
+        return values;
+    }
+
+    private static boolean isRegex(String rawPattern) {
+        return rawPattern.length() >= 2 && rawPattern.charAt(0) == '/' && rawPattern.matches("^/(.*)/([mi]*)?$");
+    }
+
+    private static boolean isPhrase(String rawPattern) {
+        return rawPattern.length() > 2 && rawPattern.charAt(0) == '"' && rawPattern.charAt(rawPattern.length() - 1) == '"';
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0x7F) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    public interface MatchCallback {
+        void onMatch(Filter filter);
+    }
+
+    private static class TypeIndex {
+        @Nullable
+        private LiteralMatcher literals;
+        private final BitSet alwaysCheck = new BitSet();
+        private final Map<String, BitSet> exact = new HashMap<>();
+    }
+
+    private static class Hits {
+        // the text these are for
+        private final CharSequence text;
+        private final BitSet candidates;
+        private final BitSet exact = new BitSet();
+
+        private Hits(CharSequence text, BitSet candidates) {
+            this.text = text;
+            this.candidates = candidates;
+        }
+    }
+
+    /**
+     * Per-post state; each field is only scanned once, the first time a filter needs it.
+     */
+    private class PostFields {
+        private final Map<FilterType, Hits> hits = new EnumMap<>(FilterType.class);
+        // a post can have several images, so their hashes are kept apart
+        private final Map<String, Hits> imageHashHits = new HashMap<>();
+
+        private boolean matches(int i, FilterType type, @Nullable CharSequence text) {
+            if (!filters[i].hasFilter(type) || text == null) return false;
+            Hits h = type == IMAGE_HASH ? imageHashHits.get(text.toString()) : hits.get(type);
+            // the filenames change if an image is removed by a filter, so make sure these hits are for this text
+            if (h == null || (h.text != text && !h.text.toString().equals(text.toString()))) {
+                h = findHits(type, text);
+                if (type == IMAGE_HASH) {
+                    imageHashHits.put(text.toString(), h);
+                } else {
+                    hits.put(type, h);
+                }
+            }
+            return matchesText(i, type, text, h);
+        }
+    }
+}
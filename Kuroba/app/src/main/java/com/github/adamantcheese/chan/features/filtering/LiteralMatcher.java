@@ -0,0 +1,190 @@
+package com.github.adamantcheese.chan.features.filtering;
+
+import androidx.annotation.AnyThread;
+
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton over a set of literals, each tagged with an id.<br>
+ * Matching is ASCII case-insensitive and meant for ASCII literals; text characters that case fold to ASCII ones are
+ * matched as those. Finds every id whose literal occurs somewhere in the text in a single pass over it.<br>
+ * Once built this is immutable and can be used from any number of threads at once.
+ */
+public class LiteralMatcher {
+    private static final int ROOT = 0;
+
+    // goto function, as an open addressed hash table of (state << 16 | char) -> next state
+    private final long[] edgeKeys;
+    private final int[] edgeValues;
+    private final int edgeMask;
+
+    private final int[] fail;
+    // ids that are output at each state, including everything along its fail chain
+    private final int[][] outputs;
+
+    private LiteralMatcher(Builder builder) {
+        int states = builder.children.size();
+        fail = new int[states];
+        outputs = new int[states][];
+
+        int edgeCount = 0;
+        for (Map<Character, Integer> c : builder.children) {
+            edgeCount += c.size();
+        }
+        int capacity = Integer.highestOneBit(Math.max(edgeCount, 1) * 2 - 1) << 1;
+        edgeKeys = new long[capacity];
+        Arrays.fill(edgeKeys, -1L);
+        edgeValues = new int[capacity];
+        edgeMask = capacity - 1;
+        for (int state = 0; state < states; state++) {
+            for (Map.Entry<Character, Integer> e : builder.children.get(state).entrySet()) {
+                putEdge(state, e.getKey(), e.getValue());
+            }
+        }
+
+        // breadth first to set up fail links, a state's fail state is always shallower than it
+        Deque<Integer> queue = new ArrayDeque<>();
+        outputs[ROOT] = toArray(builder.ids.get(ROOT));
+        for (int child : builder.children.get(ROOT).values()) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            Set<Integer> out = builder.ids.get(state);
+            int[] failOut = outputs[fail[state]];
+            for (int id : failOut) {
+                out.add(id);
+            }
+            outputs[state] = toArray(out);
+
+            for (Map.Entry<Character, Integer> e : builder.children.get(state).entrySet()) {
+                int child = e.getValue();
+                int f = fail[state];
+                int next;
+                while ((next = getEdge(f, e.getKey())) == -1 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = next == -1 ? ROOT : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param text the text to search
+     * @param found receives the id of every literal found in the text
+     */
+    @AnyThread
+    public void findAll(CharSequence text, BitSet found) {
+        if (text == null) return;
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = foldText(text.charAt(i));
+            int next;
+            while ((next = getEdge(state, c)) == -1 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next == -1 ? ROOT : next;
+            for (int id : outputs[state]) {
+                found.set(id);
+            }
+        }
+    }
+
+    public static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Literals are ASCII, but some other characters fold to ASCII ones under unicode case folding, like the kelvin sign
+     * to 'k'; those are folded too, so a pattern that could match the text is never missed.
+     */
+    private static char foldText(char c) {
+        if (c < 0x80) return fold(c);
+        char folded = Character.toLowerCase(Character.toUpperCase(c));
+        return folded < 0x80 ? folded : c;
+    }
+
+    public static String fold(String s) {
+        StringBuilder b = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            b.append(fold(s.charAt(i)));
+        }
+        return b.toString();
+    }
+
+    private void putEdge(int state, char c, int next) {
+        long key = ((long) state << 16) | c;
+        int slot = slot(key);
+        while (edgeKeys[slot] != -1L) {
+            slot = (slot + 1) & edgeMask;
+        }
+        edgeKeys[slot] = key;
+        edgeValues[slot] = next;
+    }
+
+    private int getEdge(int state, char c) {
+        long key = ((long) state << 16) | c;
+        int slot = slot(key);
+        long k;
+        while ((k = edgeKeys[slot]) != -1L) {
+            if (k == key) return edgeValues[slot];
+            slot = (slot + 1) & edgeMask;
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & edgeMask;
+    }
+
+    private static int[] toArray(Set<Integer> set) {
+        int[] ret = new int[set.size()];
+        int i = 0;
+        for (int id : set) {
+            ret[i++] = id;
+        }
+        return ret;
+    }
+
+    public static class Builder {
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final List<Set<Integer>> ids = new ArrayList<>();
+
+        public Builder() {
+            newState();
+        }
+
+        /**
+         * @param literal a non-empty literal to search for
+         * @param id      the id reported when the literal is found
+         */
+        public Builder add(String literal, int id) {
+            if (literal.isEmpty()) throw new IllegalArgumentException("Empty literals match everything");
+            int state = ROOT;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = fold(literal.charAt(i));
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ids.get(state).add(id);
+            return this;
+        }
+
+        private int newState() {
+            children.add(new HashMap<>());
+            ids.add(new HashSet<>());
+            return children.size() - 1;
+        }
+
+        public LiteralMatcher build() {
+            return new LiteralMatcher(this);
+        }
+    }
+}
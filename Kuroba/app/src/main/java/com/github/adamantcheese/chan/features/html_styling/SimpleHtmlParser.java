@@ -0,0 +1,377 @@
+package com.github.adamantcheese.chan.features.html_styling;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jsoup.nodes.*;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single pass parser for the small subset of HTML that imageboards put in comments. It builds the same node tree
+ * that Jsoup would, but without going through Jsoup's full HTML5 tokenizer and tree builder, so the existing style
+ * actions work on its output as they are.
+ * <p>
+ * Anything outside of that subset, or anything that Jsoup would have to repair (stray or misnested end tags, blocks
+ * inside paragraphs, nested links, comments, tables and so on) makes parsing fail, so that the comment can be given
+ * to Jsoup instead. Nothing is styled until parsing has succeeded, as styling has side effects on the post.
+ * <p>
+ * Text between tags is run through a list of {@link TextRule}s while parsing, each of which turns its matches into
+ * markup; this replaces rewriting the whole comment with one regex after another before it is parsed.
+ */
+public class SimpleHtmlParser {
+    // elements that Jsoup puts into the tree as they are, as long as they are properly nested
+    private static final Set<String> INLINE_TAGS = new HashSet<>(Arrays.asList("a",
+            "b",
+            "i",
+            "u",
+            "s",
+            "em",
+            "strong",
+            "strike",
+            "span",
+            "font",
+            "code",
+            "tt",
+            "small",
+            "sub",
+            "sup"
+    ));
+    // these close an open paragraph in Jsoup, so they are only supported outside of one
+    private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList("p", "div", "pre"));
+    private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList("br", "img", "wbr"));
+
+    private static final UnsupportedMarkupException UNSUPPORTED = new UnsupportedMarkupException();
+
+    private final List<TextRule> rules;
+    private final StringBuilder pendingText = new StringBuilder();
+    private Element body;
+    private Element current;
+
+    private SimpleHtmlParser(List<TextRule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param htmlBody A string representing the html to parse.
+     * @param baseUri  The base uri for the html.
+     * @param rules    Rules to apply to the text in the html, in order.
+     * @return The parsed document, or null if the html needs to be parsed by Jsoup.
+     */
+    @Nullable
+    public static Document parse(@NonNull String htmlBody, @Nullable String baseUri, @NonNull List<TextRule> rules) {
+        if (htmlBody.startsWith("<![CDATA[") && htmlBody.endsWith("]]>")) {
+            htmlBody = htmlBody.substring("<![CDATA[".length(), htmlBody.length() - "]]>".length());
+        }
+        // Jsoup puts leading whitespace into the head, and normalizes these characters
+        if ((!htmlBody.isEmpty() && isWhitespace(htmlBody.charAt(0)))
+                || htmlBody.indexOf('\r') >= 0
+                || htmlBody.indexOf('\0') >= 0) {
+            return null;
+        }
+
+        SimpleHtmlParser parser = new SimpleHtmlParser(rules);
+        Document document = Document.createShell(baseUri == null ? "" : baseUri);
+        parser.body = document.body();
+        parser.current = parser.body;
+        try {
+            parser.parseMarkup(htmlBody, 0);
+            parser.flushText();
+        } catch (UnsupportedMarkupException e) {
+            return null;
+        }
+        // any elements still open are closed by the end of the body, as Jsoup does
+        return document;
+    }
+
+    /**
+     * @param markup    The markup to add to the current element.
+     * @param firstRule The first text rule that text in this markup should be run through.
+     */
+    private void parseMarkup(String markup, int firstRule)
+            throws UnsupportedMarkupException {
+        int length = markup.length();
+        int segmentStart = 0;
+        int position = 0;
+        while (true) {
+            int tagStart = markup.indexOf('<', position);
+            if (tagStart < 0) break;
+
+            char next = tagStart + 1 < length ? markup.charAt(tagStart + 1) : ' ';
+            if (markup.startsWith("<wbr>", tagStart)) {
+                // these are removed from the comment before Jsoup parses it, joining the text on either side
+                applyRules(markup.substring(segmentStart, tagStart), firstRule);
+                position = segmentStart = tagStart + "<wbr>".length();
+            } else if (isAsciiLetter(next)) {
+                applyRules(markup.substring(segmentStart, tagStart), firstRule);
+                position = segmentStart = parseStartTag(markup, tagStart);
+            } else if (next == '/') {
+                applyRules(markup.substring(segmentStart, tagStart), firstRule);
+                position = segmentStart = parseEndTag(markup, tagStart);
+            } else if (next == '!' || next == '?') {
+                // comments, doctypes, CDATA and processing instructions
+                throw UNSUPPORTED;
+            } else {
+                // a lone '<' is just text
+                position = tagStart + 1;
+            }
+        }
+        applyRules(markup.substring(segmentStart), firstRule);
+    }
+
+    /**
+     * @return the position after the tag
+     */
+    private int parseStartTag(String markup, int tagStart)
+            throws UnsupportedMarkupException {
+        int length = markup.length();
+        int i = tagStart + 1;
+        while (i < length && !isWhitespace(markup.charAt(i)) && markup.charAt(i) != '/' && markup.charAt(i) != '>') {
+            i++;
+        }
+        String name = markup.substring(tagStart + 1, i).toLowerCase(Locale.ENGLISH);
+
+        Attributes attributes = null;
+        boolean selfClosing = false;
+        while (true) {
+            i = skipWhitespace(markup, i);
+            if (i >= length) throw UNSUPPORTED;
+            char c = markup.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                if (i + 1 >= length || markup.charAt(i + 1) != '>') throw UNSUPPORTED;
+                selfClosing = true;
+                i += 2;
+                break;
+            }
+
+            int nameStart = i;
+            while (i < length) {
+                c = markup.charAt(i);
+                if (isWhitespace(c) || c == '/' || c == '>' || c == '=') break;
+                if (c == '"' || c == '\'' || c == '<') throw UNSUPPORTED;
+                i++;
+            }
+            String attributeName = markup.substring(nameStart, i).toLowerCase(Locale.ENGLISH);
+            String value = "";
+            i = skipWhitespace(markup, i);
+            if (i < length && markup.charAt(i) == '=') {
+                i = skipWhitespace(markup, i + 1);
+                if (i >= length) throw UNSUPPORTED;
+                char quote = markup.charAt(i);
+                if (quote == '"' || quote == '\'') {
+                    int valueEnd = markup.indexOf(quote, i + 1);
+                    if (valueEnd < 0) throw UNSUPPORTED;
+                    value = markup.substring(i + 1, valueEnd);
+                    i = valueEnd + 1;
+                    // attributes have to be separated
+                    if (i < length && !isWhitespace(markup.charAt(i)) && markup.charAt(i) != '/'
+                            && markup.charAt(i) != '>') {
+                        throw UNSUPPORTED;
+                    }
+                } else {
+                    int valueStart = i;
+                    while (i < length && !isWhitespace(c = markup.charAt(i)) && c != '>') {
+                        if (c == '"' || c == '\'' || c == '<' || c == '=' || c == '`') throw UNSUPPORTED;
+                        i++;
+                    }
+                    if (i == valueStart) throw UNSUPPORTED;
+                    value = markup.substring(valueStart, i);
+                }
+                if (value.indexOf('&') >= 0) {
+                    value = Parser.unescapeEntities(value, true);
+                }
+            }
+
+            if (attributes == null) {
+                attributes = new Attributes();
+            }
+            // the first of any duplicate attributes is the one that is kept
+            if (!attributes.hasKey(attributeName)) {
+                attributes.put(attributeName, value);
+            }
+        }
+
+        if (VOID_TAGS.contains(name)) {
+            openElement(name, attributes);
+            closeElement(name);
+        } else {
+            if (selfClosing) throw UNSUPPORTED;
+            openElement(name, attributes);
+        }
+        return i;
+    }
+
+    /**
+     * @return the position after the tag
+     */
+    private int parseEndTag(String markup, int tagStart)
+            throws UnsupportedMarkupException {
+        int length = markup.length();
+        int nameStart = tagStart + 2;
+        if (nameStart >= length || !isAsciiLetter(markup.charAt(nameStart))) throw UNSUPPORTED;
+        int i = nameStart;
+        while (i < length && !isWhitespace(markup.charAt(i)) && markup.charAt(i) != '/' && markup.charAt(i) != '>') {
+            i++;
+        }
+        String name = markup.substring(nameStart, i).toLowerCase(Locale.ENGLISH);
+        i = skipWhitespace(markup, i);
+        if (i >= length || markup.charAt(i) != '>') throw UNSUPPORTED;
+        closeElement(name);
+        return i + 1;
+    }
+
+    private void openElement(String name, @Nullable Attributes attributes)
+            throws UnsupportedMarkupException {
+        if (!INLINE_TAGS.contains(name) && !BLOCK_TAGS.contains(name) && !VOID_TAGS.contains(name)) {
+            throw UNSUPPORTED;
+        }
+        if (BLOCK_TAGS.contains(name) && isOpen("p")) throw UNSUPPORTED;
+        if (name.equals("a") && isOpen("a")) throw UNSUPPORTED;
+
+        flushText();
+        Element element = new Element(Tag.valueOf(name), null, attributes);
+        current.appendChild(element);
+        current = element;
+    }
+
+    private void closeElement(String name)
+            throws UnsupportedMarkupException {
+        if (current == body || !current.normalName().equals(name)) throw UNSUPPORTED;
+        flushText();
+        current = current.parent();
+    }
+
+    private boolean isOpen(String name) {
+        for (Element element = current; element != body; element = element.parent()) {
+            if (element.normalName().equals(name)) return true;
+        }
+        return false;
+    }
+
+    private void flushText()
+            throws UnsupportedMarkupException {
+        if (pendingText.length() == 0) return;
+        String text = pendingText.toString();
+        pendingText.setLength(0);
+        // Jsoup drops a newline right at the start of a pre
+        if (current.normalName().equals("pre") && current.childNodeSize() == 0 && text.startsWith("\n")) {
+            throw UNSUPPORTED;
+        }
+        current.appendChild(new TextNode(text.indexOf('&') >= 0 ? Parser.unescapeEntities(text, false) : text));
+    }
+
+    /**
+     * Runs some raw text through the text rules starting at the given one, and adds the result to the current element.
+     * Adjacent text ends up in the same text node, as it would if the comment had been rewritten beforehand.
+     */
+    private void applyRules(String text, int ruleIndex)
+            throws UnsupportedMarkupException {
+        if (text.isEmpty()) return;
+        if (ruleIndex >= rules.size()) {
+            pendingText.append(text);
+            return;
+        }
+
+        TextRule rule = rules.get(ruleIndex);
+        Matcher matcher = rule.pattern.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            applyRulesToUnmatched(text.substring(last, matcher.start()), ruleIndex);
+            Element parent = current;
+            parseMarkup(rule.expand(matcher), ruleIndex + 1);
+            if (current != parent) throw UNSUPPORTED;
+            last = matcher.end();
+        }
+        applyRulesToUnmatched(text.substring(last), ruleIndex);
+    }
+
+    private void applyRulesToUnmatched(String text, int ruleIndex)
+            throws UnsupportedMarkupException {
+        TextRule rule = rules.get(ruleIndex);
+        // the rule might match this together with text past a tag, which only rewriting the whole comment can do
+        if (rule.marker != null && text.contains(rule.marker)) throw UNSUPPORTED;
+        applyRules(text, ruleIndex + 1);
+    }
+
+    private static int skipWhitespace(String markup, int i) {
+        while (i < markup.length() && isWhitespace(markup.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * A rewrite of comment text, the equivalent of {@code pattern.matcher(comment).replaceAll(replacement)} on the
+     * comment before parsing it, except that it only applies to text and never matches across a tag.
+     */
+    public static class TextRule {
+        private final Pattern pattern;
+        private final String replacement;
+        @Nullable
+        private final String marker;
+
+        /**
+         * @param pattern     The pattern to match against text.
+         * @param replacement The markup to replace each match with, where $n refers to the nth group of the match.
+         * @param marker      If the pattern could match across a tag, text that is left over in the text on either side
+         *                    of the tag when it does; html with any of this left over is given to Jsoup instead.
+         */
+        public TextRule(@NonNull Pattern pattern, @NonNull String replacement, @Nullable String marker) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+            this.marker = marker;
+        }
+
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        public String getReplacement() {
+            return replacement;
+        }
+
+        // the same substitutions as Matcher.appendReplacement
+        private String expand(Matcher matcher) {
+            StringBuilder result = new StringBuilder(replacement.length() + 16);
+            for (int i = 0; i < replacement.length(); i++) {
+                char c = replacement.charAt(i);
+                if (c == '\\' && i + 1 < replacement.length()) {
+                    result.append(replacement.charAt(++i));
+                } else if (c == '$' && i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+                    String group = matcher.group(replacement.charAt(++i) - '0');
+                    if (group != null) {
+                        result.append(group);
+                    }
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+    }
+
+    private static class UnsupportedMarkupException
+            extends Exception {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // only used to bail out of parsing, so skip the cost of a stack trace
+            return this;
+        }
+    }
+}
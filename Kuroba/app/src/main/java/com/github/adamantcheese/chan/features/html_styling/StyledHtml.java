@@ -27,6 +27,18 @@ public class StyledHtml {
      * @return A prepared node that can be used in style().
      */
     public static Node prepare(String htmlBody, String baseUri) {
+        Node simple = SimpleHtmlParser.parse(htmlBody, baseUri, Collections.emptyList());
+        return simple != null ? simple : prepareWithJsoup(htmlBody, baseUri);
+    }
+
+    /**
+     * Prepare an html body fragment for parsing with Jsoup, which handles any html; see {@link SimpleHtmlParser}.
+     *
+     * @param htmlBody A string representing the html to parse.
+     * @param baseUri  The base uri for the html.
+     * @return A prepared node that can be used in style().
+     */
+    public static Node prepareWithJsoup(String htmlBody, String baseUri) {
         if (htmlBody.startsWith("<![CDATA[") && htmlBody.endsWith("]]>")) {
             htmlBody = htmlBody.substring("<![CDATA[".length(), htmlBody.length() - "]]>".length());
         }
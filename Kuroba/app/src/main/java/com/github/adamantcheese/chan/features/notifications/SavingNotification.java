@@ -18,6 +18,7 @@ package com.github.adamantcheese.chan.features.notifications;
 
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getNotificationManager;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.postToEventBus;
+import static com.github.adamantcheese.chan.utils.PostUtils.getReadableFileSize;
 
 import android.app.*;
 import android.content.Intent;
@@ -33,6 +34,7 @@ public class SavingNotification
     public static final String DONE_TASKS_KEY = "done_tasks";
     public static final String FAILED_TASKS_KEY = "failed_tasks";
     public static final String TOTAL_TASKS_KEY = "total_tasks";
+    public static final String BYTES_PER_SECOND_KEY = "bytes_per_second";
     private static final String CANCEL_KEY = "cancel";
 
     private static final String NOTIFICATION_ID_STR = "3";
@@ -85,8 +87,9 @@ public class SavingNotification
                 int doneTasks = extras.getInt(DONE_TASKS_KEY);
                 int failedTasks = extras.getInt(FAILED_TASKS_KEY);
                 int totalTasks = extras.getInt(TOTAL_TASKS_KEY);
+                long bytesPerSecond = extras.getLong(BYTES_PER_SECOND_KEY);
                 //replace the notification with the generated one
-                startForeground(NOTIFICATION_ID, getNotification(doneTasks, failedTasks, totalTasks));
+                startForeground(NOTIFICATION_ID, getNotification(doneTasks, failedTasks, totalTasks, bytesPerSecond));
                 return START_STICKY;
             }
         }
@@ -100,7 +103,7 @@ public class SavingNotification
         return START_NOT_STICKY;
     }
 
-    private Notification getNotification(int done, int failed, int total) {
+    private Notification getNotification(int done, int failed, int total, long bytesPerSecond) {
         Intent intent = new Intent(this, SavingNotification.class);
         intent.putExtra(CANCEL_KEY, true);
         PendingIntent pendingIntent = PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
@@ -114,6 +117,9 @@ public class SavingNotification
                 .setContentInfo(done + "/" + failed + "/" + total)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true);
+        if (bytesPerSecond > 0) {
+            builder.setSubText(getReadableFileSize(bytesPerSecond) + "/s");
+        }
 
         return builder.build();
     }
@@ -31,14 +31,19 @@ import android.text.TextUtils;
 import android.view.*;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.ChanThread;
 import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.orm.Loadable;
+import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.cell.PostCellInterface;
+import com.github.adamantcheese.chan.ui.cell.PostTextCache;
 import com.github.adamantcheese.chan.ui.cell.ThreadStatusCell;
 import com.github.adamantcheese.chan.ui.text.spans.post_linkables.QuoteLinkable;
 import com.github.adamantcheese.chan.features.theme.Theme;
@@ -47,6 +52,7 @@ import com.github.adamantcheese.chan.utils.RecyclerUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PostAdapter
         extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
@@ -83,6 +89,14 @@ public class PostAdapter
     public int lastSeenIndicatorPosition = Integer.MIN_VALUE;
     private PostsFilter currentFilter = new PostsFilter(BUMP_ORDER, null);
 
+    // parallel to displayList, see getSignatures
+    private int[] displaySignatures = new int[0];
+    private final AtomicInteger listGeneration = new AtomicInteger();
+    private BackgroundUtils.Cancelable pendingListUpdate;
+    // callbacks of every list requested since the last one was applied, in order; a superseded list's callback still
+    // runs, once the list that replaced it is displayed
+    private final List<Runnable> pendingOnApplied = new ArrayList<>();
+
     private ChanSettings.PostViewMode postViewMode = LIST;
     private boolean compact = false;
     private final Theme theme;
@@ -167,9 +181,13 @@ public class PostAdapter
                 // apply embedding
                 boolean embedInProgress = false;
                 if (ChanSettings.enableEmbedding.get()) {
-                    embedInProgress = EmbeddingEngine
-                            .getInstance()
-                            .embed(theme, post, () -> notifyItemChanged(position, new Object()));
+                    embedInProgress = EmbeddingEngine.getInstance().embed(theme, post, () -> {
+                        // the post may have moved since it was bound
+                        int currentPosition = holder.getBindingAdapterPosition();
+                        if (currentPosition != RecyclerView.NO_POSITION) {
+                            notifyItemChanged(currentPosition, new Object());
+                        }
+                    });
                 }
                 // no embeds, cleanup/finalize
                 if (!embedInProgress) {
@@ -297,24 +315,145 @@ public class PostAdapter
     }
 
     public void setThread(ChanThread thread, PostsFilter newFilter) {
+        setThread(thread, newFilter, null);
+    }
+
+    /**
+     * Sorts and filters the thread's posts on a background thread, then dispatches only the changes between the
+     * currently displayed list and the new one. If this is called again before a previous call has been applied, the
+     * previous list is dropped, but its callback is kept and runs once the newer list is applied.
+     *
+     * @param onApplied optional, called on the main thread once the new list is being displayed; anything that looks at
+     *                  the displayed posts should be done here
+     */
+    public void setThread(ChanThread thread, PostsFilter newFilter, @Nullable Runnable onApplied) {
         BackgroundUtils.ensureMainThread();
-        isInThread = thread.loadable.isThreadMode();
+        if (pendingListUpdate != null) {
+            pendingListUpdate.cancel();
+        }
+        int generation = listGeneration.incrementAndGet();
+        if (onApplied != null) {
+            pendingOnApplied.add(onApplied);
+        }
 
-        currentFilter = newFilter == null ? new PostsFilter(BUMP_ORDER, null) : newFilter;
-        List<Post> newList = currentFilter.apply(thread);
+        // copy everything needed now, the thread and pins may change while this is computing
+        PostsFilter filter = newFilter == null ? new PostsFilter(BUMP_ORDER, null) : newFilter;
+        Loadable loadable = thread.loadable;
+        int lastViewed = loadable.lastViewed;
+        List<Post> posts = new ArrayList<>(thread.getPosts());
+        List<Pin> pins = PostsFilter.getPinsToRemove(loadable);
+        List<Post> oldList = new ArrayList<>(displayList);
+        int[] oldSignatures = displaySignatures;
+
+        pendingListUpdate = BackgroundUtils.runWithExecutor(BackgroundUtils.backgroundService, () -> {
+            List<Post> newList = filter.apply(loadable, posts, pins);
+            if (generation != listGeneration.get()) return null; // a newer list was requested, skip the diff
+
+            int lastSeen = Integer.MIN_VALUE;
+            // Do not process the last post, the indicator does not have to appear at the bottom
+            for (int i = 0; i < newList.size() - 1; i++) {
+                if (newList.get(i).no == lastViewed) {
+                    lastSeen = i;
+                    break;
+                }
+            }
 
-        lastSeenIndicatorPosition = Integer.MIN_VALUE;
-        // Do not process the last post, the indicator does not have to appear at the bottom
-        for (int i = 0; i < newList.size() - 1; i++) {
-            if (newList.get(i).no == thread.loadable.lastViewed) {
-                lastSeenIndicatorPosition = i;
-                break;
+            int[] newSignatures = getSignatures(newList);
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldList.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newList.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return oldList.get(oldItemPosition).no == newList.get(newItemPosition).no;
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    if (oldSignatures[oldItemPosition] != newSignatures[newItemPosition]) return false;
+                    Post oldPost = oldList.get(oldItemPosition);
+                    Post newPost = newList.get(newItemPosition);
+                    return oldPost == newPost || oldPost.equals(newPost);
+                }
+            }, false);
+            return new ListUpdate(newList, newSignatures, lastSeen, diff);
+        }, update -> {
+            if (update == null) return;
+            pendingListUpdate = null;
+
+            boolean hadStatus = showStatusView();
+            isInThread = loadable.isThreadMode();
+            currentFilter = filter;
+            boolean hasStatus = showStatusView();
+
+            int oldLastSeen = lastSeenIndicatorPosition;
+            lastSeenIndicatorPosition = update.lastSeenIndicatorPosition;
+
+            displayList.clear();
+            displayList.addAll(update.posts);
+            displaySignatures = update.signatures;
+            update.diff.dispatchUpdatesTo(this);
+
+            // measure text for cells that aren't bound yet; search highlights change the text, so skip that
+            if (TextUtils.isEmpty(postCellCallback.getSearchQuery())) {
+                PostTextCache.precompute(update.posts, theme, postViewMode != LIST);
             }
-        }
 
-        displayList.clear();
-        displayList.addAll(newList);
-        notifyDataSetChanged();
+            // the status cell is always last, after all the posts
+            if (hadStatus && hasStatus) {
+                notifyItemChanged(displayList.size());
+            } else if (hadStatus) {
+                notifyItemRemoved(displayList.size());
+            } else if (hasStatus) {
+                notifyItemInserted(displayList.size());
+            }
+
+            // the decoration offsets are only recalculated for changed items
+            if (oldLastSeen != lastSeenIndicatorPosition) {
+                if (oldLastSeen >= 0 && oldLastSeen < displayList.size()) {
+                    notifyItemChanged(oldLastSeen);
+                }
+                if (lastSeenIndicatorPosition >= 0) {
+                    notifyItemChanged(lastSeenIndicatorPosition);
+                }
+            }
+
+            List<Runnable> callbacks = new ArrayList<>(pendingOnApplied);
+            pendingOnApplied.clear();
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        });
+    }
+
+    /**
+     * Posts that aren't changed are reused between loads, but their reply lists and deleted state are modified in
+     * place, as are the OP's thread status and counts; record those so that the diff can tell when a cell needs to be
+     * rebound.
+     */
+    private static int[] getSignatures(List<Post> posts) {
+        int[] signatures = new int[posts.size()];
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            int signature = 31 * post.repliesFrom.size() + (post.deleted ? 1 : 0);
+            if (post.isOP) {
+                signature = 31 * signature + (post.closed ? 1 : 0);
+                signature = 31 * signature + (post.archived ? 1 : 0);
+                signature = 31 * signature + (post.sticky ? 1 : 0);
+                signature = 31 * signature + post.replies;
+                signature = 31 * signature + post.imagesCount;
+                signature = 31 * signature + post.uniqueIps;
+            }
+            signatures[i] = signature;
+        }
+        return signatures;
     }
 
     public List<Post> getDisplayList() {
@@ -322,6 +461,12 @@ public class PostAdapter
     }
 
     public void cleanup() {
+        if (pendingListUpdate != null) {
+            pendingListUpdate.cancel();
+            pendingListUpdate = null;
+        }
+        listGeneration.incrementAndGet();
+        pendingOnApplied.clear();
         highlightedId = null;
         highlightedNo = -1;
         highlightedTripcode = null;
@@ -399,6 +544,20 @@ public class PostAdapter
         }
     }
 
+    private static class ListUpdate {
+        private final List<Post> posts;
+        private final int[] signatures;
+        private final int lastSeenIndicatorPosition;
+        private final DiffUtil.DiffResult diff;
+
+        private ListUpdate(List<Post> posts, int[] signatures, int lastSeenIndicatorPosition, DiffUtil.DiffResult diff) {
+            this.posts = posts;
+            this.signatures = signatures;
+            this.lastSeenIndicatorPosition = lastSeenIndicatorPosition;
+            this.diff = diff;
+        }
+    }
+
     public interface PostAdapterCallback {
         void onUnhidePostClick(Post post);
     }
@@ -22,9 +22,13 @@ import static com.github.adamantcheese.chan.core.model.orm.Loadable.Mode.THREAD;
 
 import android.text.TextUtils;
 
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
 import com.github.adamantcheese.chan.core.database.DatabaseHideManager;
 import com.github.adamantcheese.chan.core.manager.WatchManager;
-import com.github.adamantcheese.chan.core.model.*;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.model.PostImage;
 import com.github.adamantcheese.chan.core.model.orm.Loadable;
 import com.github.adamantcheese.chan.core.model.orm.Pin;
 import com.github.adamantcheese.chan.core.settings.ChanSettings;
@@ -73,14 +77,29 @@ public class PostsFilter {
     }
 
     /**
-     * Creates a copy of {@code original} and applies any sorting or filtering to it.
+     * @return a copy of the pins that should be removed from the given loadable's post list, for use with
+     * {@link #apply(Loadable, List, List)}
+     */
+    @MainThread
+    public static List<Pin> getPinsToRemove(Loadable loadable) {
+        if (ChanSettings.removeWatchedFromCatalog.get() && loadable.isCatalogMode()) {
+            return new ArrayList<>(instance(WatchManager.class).getAllPins());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Applies any sorting or filtering to the given posts. This doesn't touch any main thread state, so it can be run
+     * in the background with copies of the thread's posts and pins. Hidden posts are looked up in the database, so
+     * this blocks on the database thread.
      *
-     * @param thread The thread to filter
+     * @param loadable the loadable the posts are from
+     * @param posts    a copy of the posts to filter; this list is modified
+     * @param pins     the pins to filter out of the posts, see {@link #getPinsToRemove(Loadable)}
      * @return a new filtered List
      */
-    public List<Post> apply(ChanThread thread) {
-        List<Post> posts = new ArrayList<>(thread.getPosts());
-
+    @WorkerThread
+    public List<Post> apply(Loadable loadable, List<Post> posts, List<Pin> pins) {
         // Process order
         Collections.sort(posts, postsOrder.postComparator);
 
@@ -111,23 +130,20 @@ public class PostsFilter {
         }
 
         //Filter out any bookmarked threads from the catalog
-        if (ChanSettings.removeWatchedFromCatalog.get() && thread.loadable.isCatalogMode()) {
+        if (!pins.isEmpty()) {
             Iterator<Post> i = posts.iterator();
-            List<Pin> pins = new ArrayList<>(instance(WatchManager.class).getAllPins());
             while (i.hasNext()) {
                 Post item = i.next();
                 for (Pin pin : pins) {
-                    if (pin.loadable.equalsNoId(Loadable.forThread(thread.loadable.board, item.no, "", false))) {
+                    if (pin.loadable.equalsNoId(Loadable.forThread(loadable.board, item.no, "", false))) {
                         i.remove();
+                        break;
                     }
                 }
             }
         }
 
         // Process hidden by filter and post/thread hiding
-        return instance(DatabaseHideManager.class).filterHiddenPosts(posts,
-                thread.loadable.siteId,
-                thread.loadable.boardCode
-        );
+        return instance(DatabaseHideManager.class).filterHiddenPosts(posts, loadable.siteId, loadable.boardCode);
     }
 }
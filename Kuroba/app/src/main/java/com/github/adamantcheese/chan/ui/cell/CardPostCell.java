@@ -20,6 +20,8 @@ import static androidx.constraintlayout.widget.ConstraintLayout.LayoutParams.UNS
 import static com.github.adamantcheese.chan.core.saver.ImageSaveTask.copyImageToClipboard;
 import static com.github.adamantcheese.chan.core.site.SiteEndpoints.IconType.OTHER;
 import static com.github.adamantcheese.chan.ui.adapter.PostsFilter.PostsOrder.BUMP_ORDER;
+import static com.github.adamantcheese.chan.ui.cell.PostTextCache.Slot.CARD_COMMENT;
+import static com.github.adamantcheese.chan.ui.cell.PostTextCache.Slot.CARD_TITLE;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.*;
 import static com.github.adamantcheese.chan.utils.StringUtils.applySearchSpans;
 
@@ -35,7 +37,9 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.text.PrecomputedTextCompat;
 import androidx.core.view.OneShotPreDrawListener;
+import androidx.core.widget.TextViewCompat;
 
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.core.model.*;
@@ -208,12 +212,26 @@ public class CardPostCell
 
         icons.set(post, false);
 
+        String searchQuery = callback.getSearchQuery();
         title.setVisibility(TextUtils.isEmpty(post.subjectSpan) ? GONE : VISIBLE);
-        title.setText(TextUtils.isEmpty(post.subjectSpan)
+        PrecomputedTextCompat cachedTitle = TextUtils.isEmpty(post.subjectSpan)
                 ? null
-                : applySearchSpans(theme, post.subjectSpan, callback.getSearchQuery()));
+                : PostTextCache.get(CARD_TITLE, post, post.subjectSpan, theme, searchQuery, title);
+        if (cachedTitle != null) {
+            TextViewCompat.setPrecomputedText(title, cachedTitle);
+        } else {
+            title.setText(TextUtils.isEmpty(post.subjectSpan)
+                    ? null
+                    : applySearchSpans(theme, post.subjectSpan, searchQuery));
+        }
 
-        comment.setText(applySearchSpans(theme, post.comment, callback.getSearchQuery()));
+        PrecomputedTextCompat cachedComment =
+                PostTextCache.get(CARD_COMMENT, post, post.comment, theme, searchQuery, comment);
+        if (cachedComment != null) {
+            TextViewCompat.setPrecomputedText(comment, cachedComment);
+        } else {
+            comment.setText(applySearchSpans(theme, post.comment, searchQuery));
+        }
         // for ellipsize to work, set maxLines equal to the proper value after a measure
         if (ChanSettings.boardViewMode.get() != ChanSettings.PostViewMode.GRID) {
             comment.setMaxLines(ChanSettings.getBoardColumnCount() == 1 ? 20 : 10);
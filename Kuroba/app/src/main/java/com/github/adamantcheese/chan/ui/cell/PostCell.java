@@ -26,6 +26,8 @@ import static com.github.adamantcheese.chan.core.saver.ImageSaveTask.copyImageTo
 import static com.github.adamantcheese.chan.core.settings.ChanSettings.getThumbnailSize;
 import static com.github.adamantcheese.chan.core.site.SiteEndpoints.IconType.OTHER;
 import static com.github.adamantcheese.chan.ui.adapter.PostsFilter.PostsOrder.BUMP_ORDER;
+import static com.github.adamantcheese.chan.ui.cell.PostTextCache.Slot.POST_COMMENT;
+import static com.github.adamantcheese.chan.ui.cell.PostTextCache.Slot.POST_TITLE;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.*;
 import static com.github.adamantcheese.chan.utils.PostUtils.getReadableFileSize;
 import static com.github.adamantcheese.chan.utils.StringUtils.applySearchSpans;
@@ -46,8 +48,11 @@ import android.view.*;
 import android.widget.*;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.constraintlayout.widget.ConstraintLayout;
+import androidx.core.text.PrecomputedTextCompat;
 import androidx.core.view.OneShotPreDrawListener;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.adamantcheese.chan.R;
@@ -285,74 +290,18 @@ public class PostCell
             thumbnailViews.setVisibility(VISIBLE);
         }
 
-        SpannableStringBuilder titleParts = new SpannableStringBuilder();
-
-        if (post.subjectSpan != null) {
-            titleParts.append(applySearchSpans(theme, post.subjectSpan, callback.getSearchQuery())).append("\n");
-        }
-        titleParts.append(applySearchSpans(theme, post.nameTripcodeIdCapcodeSpan, callback.getSearchQuery()));
-
-        int detailsColor = getAttrColor(getContext(), R.attr.post_details_color);
-        CharSequence dubs = ChanSettings.addDubs.get() ? getRepeatDigits(post.no) : "";
-        SpannableStringBuilder date = new SpannableStringBuilder()
-                .append("No. ")
-                .append(String.valueOf(post.no))
-                .append(" ")
-                .append(dubs)
-                .append(ChanSettings.addDubs.get() ? (dubs.length() > 0 ? " " : "") : "")
-                .append(ChanSettings.postFullDate.get()
-                        ? PostHelper.getLocalDate(post)
-                        : DateUtils.getRelativeTimeSpanString(SECONDS.toMillis(post.time),
-                                System.currentTimeMillis(),
-                                DateUtils.SECOND_IN_MILLIS,
-                                0
-                        ));
-        titleParts.append(span(date,
-                new ForegroundColorSpanHashed(detailsColor),
-                new AbsoluteSizeSpanHashed((int) detailsSizePx)
-        ));
-
-        List<PostImage> imagesForTitle = ChanSettings.textOnly.get() ? Collections.emptyList() : post.images;
-        for (PostImage image : imagesForTitle) {
-            boolean postFileName = ChanSettings.postFilename.get();
-            if (postFileName) {
-                //that special character forces it to be left-to-right, as textDirection didn't want to be obeyed
-                String filename = '\u200E' + (image.spoiler() ? (image.hidden
-                        ? getString(R.string.image_hidden_filename)
-                        : getString(R.string.image_spoiler_filename)) : image.filename + "." + image.extension);
-                SpannableStringBuilder fileInfo = new SpannableStringBuilder()
-                        .append("\n")
-                        .append(applySearchSpans(theme, filename, callback.getSearchQuery()));
-                titleParts.append(span(fileInfo,
-                        new ForegroundColorSpanHashed(detailsColor),
-                        new AbsoluteSizeSpanHashed((int) detailsSizePx),
-                        new UnderlineSpan()
-                ));
-            }
-
-            if (ChanSettings.postFileInfo.get()) {
-                SpannableStringBuilder fileInfo = new SpannableStringBuilder();
-                fileInfo.append(postFileName ? " " : "\n");
-                fileInfo.append(image.extension.toUpperCase());
-                if (image.size > 0) {
-                    fileInfo.append(" ").append(getReadableFileSize(image.size));
-                }
-                if (image.imageWidth > 0 && image.imageHeight > 0) {
-                    fileInfo
-                            .append(" ")
-                            .append(String.valueOf(image.imageWidth))
-                            .append("x")
-                            .append(String.valueOf(image.imageHeight));
-                }
-                titleParts.append(span(fileInfo,
-                        new ForegroundColorSpanHashed(detailsColor),
-                        new AbsoluteSizeSpanHashed((int) detailsSizePx)
-                ));
-            }
+        String searchQuery = callback.getSearchQuery();
+        CharSequence postDate = getPostDate(post);
+        String titleSignature = getTitleSignature(post, postDate);
+        PrecomputedTextCompat cachedTitle =
+                PostTextCache.get(POST_TITLE, post, titleSignature, theme, searchQuery, title);
+        if (cachedTitle != null) {
+            TextViewCompat.setPrecomputedText(title, cachedTitle);
+        } else {
+            int detailsColor = getAttrColor(getContext(), R.attr.post_details_color);
+            title.setText(buildTitle(theme, post, searchQuery, postDate, detailsColor, (int) detailsSizePx));
         }
 
-        title.setText(titleParts);
-
         icons.set(post, true);
 
         if (threadMode) {
@@ -369,7 +318,13 @@ public class PostCell
             comment.setVisibility(isEmpty(post.comment) && post.images.isEmpty() ? GONE : VISIBLE);
         }
 
-        comment.setText(applySearchSpans(theme, post.comment, callback.getSearchQuery()));
+        PrecomputedTextCompat cachedComment =
+                PostTextCache.get(POST_COMMENT, post, post.comment, theme, searchQuery, comment);
+        if (cachedComment != null) {
+            TextViewCompat.setPrecomputedText(comment, cachedComment);
+        } else {
+            comment.setText(applySearchSpans(theme, post.comment, searchQuery));
+        }
 
         if (threadMode) {
             comment.setTextIsSelectable(true);
@@ -474,6 +429,125 @@ public class PostCell
         }
     }
 
+    static CharSequence getPostDate(Post post) {
+        return ChanSettings.postFullDate.get()
+                ? PostHelper.getLocalDate(post)
+                : DateUtils.getRelativeTimeSpanString(SECONDS.toMillis(post.time),
+                        System.currentTimeMillis(),
+                        DateUtils.SECOND_IN_MILLIS,
+                        0
+                );
+    }
+
+    /**
+     * @return a string that changes whenever the title built for this post would change, other than from a search
+     */
+    static String getTitleSignature(Post post, CharSequence postDate) {
+        // everything buildTitle reads, separated so that neighbouring parts can't run into each other
+        StringBuilder signature = new StringBuilder()
+                .append(post.subjectSpan)
+                .append('\0')
+                .append(post.nameTripcodeIdCapcodeSpan)
+                .append('\0')
+                .append(post.capcode)
+                .append('\0')
+                .append(postDate)
+                .append('\0')
+                .append(ChanSettings.addDubs.get())
+                .append(ChanSettings.textOnly.get())
+                .append(ChanSettings.postFilename.get())
+                .append(ChanSettings.postFileInfo.get());
+        for (PostImage image : post.images) {
+            signature
+                    .append('\0')
+                    .append(image.filename)
+                    .append('.')
+                    .append(image.extension)
+                    .append(' ')
+                    .append(image.size)
+                    .append(' ')
+                    .append(image.imageWidth)
+                    .append('x')
+                    .append(image.imageHeight)
+                    .append(image.spoiler())
+                    .append(image.hidden);
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Builds the subject, name, date and file info line of a post. This is also called off the main thread by
+     * {@link PostTextCache}, so it should only depend on its arguments and settings.
+     */
+    static Spannable buildTitle(
+            Theme theme,
+            Post post,
+            @Nullable String searchQuery,
+            CharSequence postDate,
+            int detailsColor,
+            int detailsSizePx
+    ) {
+        SpannableStringBuilder titleParts = new SpannableStringBuilder();
+
+        if (post.subjectSpan != null) {
+            titleParts.append(applySearchSpans(theme, post.subjectSpan, searchQuery)).append("\n");
+        }
+        titleParts.append(applySearchSpans(theme, post.nameTripcodeIdCapcodeSpan, searchQuery));
+
+        CharSequence dubs = ChanSettings.addDubs.get() ? getRepeatDigits(post.no) : "";
+        SpannableStringBuilder date = new SpannableStringBuilder()
+                .append("No. ")
+                .append(String.valueOf(post.no))
+                .append(" ")
+                .append(dubs)
+                .append(ChanSettings.addDubs.get() ? (dubs.length() > 0 ? " " : "") : "")
+                .append(postDate);
+        titleParts.append(span(date,
+                new ForegroundColorSpanHashed(detailsColor),
+                new AbsoluteSizeSpanHashed(detailsSizePx)
+        ));
+
+        List<PostImage> imagesForTitle = ChanSettings.textOnly.get() ? Collections.emptyList() : post.images;
+        for (PostImage image : imagesForTitle) {
+            boolean postFileName = ChanSettings.postFilename.get();
+            if (postFileName) {
+                //that special character forces it to be left-to-right, as textDirection didn't want to be obeyed
+                String filename = '\u200E' + (image.spoiler() ? (image.hidden
+                        ? getString(R.string.image_hidden_filename)
+                        : getString(R.string.image_spoiler_filename)) : image.filename + "." + image.extension);
+                SpannableStringBuilder fileInfo = new SpannableStringBuilder()
+                        .append("\n")
+                        .append(applySearchSpans(theme, filename, searchQuery));
+                titleParts.append(span(fileInfo,
+                        new ForegroundColorSpanHashed(detailsColor),
+                        new AbsoluteSizeSpanHashed(detailsSizePx),
+                        new UnderlineSpan()
+                ));
+            }
+
+            if (ChanSettings.postFileInfo.get()) {
+                SpannableStringBuilder fileInfo = new SpannableStringBuilder();
+                fileInfo.append(postFileName ? " " : "\n");
+                fileInfo.append(image.extension.toUpperCase());
+                if (image.size > 0) {
+                    fileInfo.append(" ").append(getReadableFileSize(image.size));
+                }
+                if (image.imageWidth > 0 && image.imageHeight > 0) {
+                    fileInfo
+                            .append(" ")
+                            .append(String.valueOf(image.imageWidth))
+                            .append("x")
+                            .append(String.valueOf(image.imageHeight));
+                }
+                titleParts.append(span(fileInfo,
+                        new ForegroundColorSpanHashed(detailsColor),
+                        new AbsoluteSizeSpanHashed(detailsSizePx)
+                ));
+            }
+        }
+        return titleParts;
+    }
+
     // matches cell_post's declarations, and adjustments from those declarations
     private static final RelativeLayout.LayoutParams DEFAULT_BODY_PARAMS =
             new RelativeLayout.LayoutParams(MATCH_PARENT, MATCH_PARENT);
@@ -526,10 +600,10 @@ public class PostCell
         }
     }
 
-    private final String[] dubTexts =
+    private static final String[] dubTexts =
             {"", "(Dubs)", "(Trips)", "(Quads)", "(Quints)", "(Sexes)", "(Septs)", "(Octs)", "(Nons)", "(Decs)"};
 
-    private Spannable getRepeatDigits(int no) {
+    private static Spannable getRepeatDigits(int no) {
         CharSequence number = new StringBuilder().append(no).reverse();
         char init = number.charAt(0);
         int count = 1;
@@ -0,0 +1,231 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.ui.cell;
+
+import static com.github.adamantcheese.chan.utils.AndroidUtils.getThemeAttrColor;
+import static com.github.adamantcheese.chan.utils.AndroidUtils.sp;
+
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import com.github.adamantcheese.chan.R;
+import com.github.adamantcheese.chan.core.model.Post;
+import com.github.adamantcheese.chan.core.settings.ChanSettings;
+import com.github.adamantcheese.chan.features.theme.Theme;
+import com.github.adamantcheese.chan.utils.BackgroundUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the titles and comments of posts on a background thread, before their cells are bound, so that binding a
+ * cell during a fast scroll doesn't have to measure all of that text on the main thread.
+ * <p>
+ * Text is measured with the metrics (text size, typeface, break strategy and so on) of the cells it was last bound to,
+ * so nothing is measured ahead of time until a cell of that kind has been bound once. Measured text doesn't depend on
+ * the width it is laid out at, so an entry is good for any column width. Entries are only handed out if the metrics,
+ * theme and source text they were made from all still match; search highlights are never measured ahead of time.
+ */
+public class PostTextCache {
+    // measured text keeps a copy of the text and the width of every character
+    private static final int MAX_CHARS = 512 * 1024;
+
+    private static final LruCache<Key, Entry> cache = new LruCache<Key, Entry>(MAX_CHARS) {
+        @Override
+        protected int sizeOf(Key key, Entry value) {
+            return value.text.length() + 1;
+        }
+    };
+    // the metrics of the most recently bound cell, for each slot
+    private static final PrecomputedTextCompat.Params[] lastParams =
+            new PrecomputedTextCompat.Params[Slot.values().length];
+    // incremented for each new batch and each clear, so that stale batches stop early
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    enum Slot {
+        POST_TITLE,
+        POST_COMMENT,
+        CARD_TITLE,
+        CARD_COMMENT
+    }
+
+    /**
+     * Measures the text for these posts in the background, for the given kind of cell. Any batch still being measured
+     * is dropped.
+     */
+    @MainThread
+    public static void precompute(List<Post> posts, Theme theme, boolean cards) {
+        int batch = generation.incrementAndGet();
+        Slot titleSlot = cards ? Slot.CARD_TITLE : Slot.POST_TITLE;
+        Slot commentSlot = cards ? Slot.CARD_COMMENT : Slot.POST_COMMENT;
+        PrecomputedTextCompat.Params titleParams = getLastParams(titleSlot);
+        PrecomputedTextCompat.Params commentParams = getLastParams(commentSlot);
+        if (commentParams == null) return;
+
+        List<Post> toMeasure = new ArrayList<>(posts);
+        BackgroundUtils.runOnBackgroundThread(() -> {
+            int detailsColor = getThemeAttrColor(theme, R.attr.post_details_color);
+            int detailsSizePx = (int) sp(ChanSettings.fontSize.get() - 4);
+            for (Post post : toMeasure) {
+                if (generation.get() != batch) return;
+                if (post.filterStub) continue;
+
+                // cards without a subject don't show a title, so there may not be any title metrics yet
+                if (cards) {
+                    if (titleParams != null
+                            && !TextUtils.isEmpty(post.subjectSpan)
+                            && !isCached(titleSlot, post, post.subjectSpan, theme, titleParams)) {
+                        measure(titleSlot, post, post.subjectSpan, post.subjectSpan, theme, titleParams, batch);
+                    }
+                } else if (titleParams != null) {
+                    CharSequence date = PostCell.getPostDate(post);
+                    String signature = PostCell.getTitleSignature(post, date);
+                    if (!isCached(titleSlot, post, signature, theme, titleParams)) {
+                        CharSequence title = PostCell.buildTitle(theme, post, null, date, detailsColor, detailsSizePx);
+                        measure(titleSlot, post, signature, title, theme, titleParams, batch);
+                    }
+                }
+                if (!isCached(commentSlot, post, post.comment, theme, commentParams)) {
+                    measure(commentSlot, post, post.comment, post.comment, theme, commentParams, batch);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param source the object the text was made from; the comment or subject itself, or a title signature
+     * @return measured text that can be set on this view, or null if there isn't any for the current state
+     */
+    @Nullable
+    static PrecomputedTextCompat get(
+            Slot slot, Post post, Object source, Theme theme, @Nullable String searchQuery, TextView view
+    ) {
+        PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(view);
+        synchronized (lastParams) {
+            lastParams[slot.ordinal()] = params;
+        }
+        if (!TextUtils.isEmpty(searchQuery)) return null;
+
+        Entry entry = cache.get(new Key(slot, post));
+        return entry != null && entry.matches(source, theme, params) ? entry.text : null;
+    }
+
+    /**
+     * Drops everything measured so far; called when the font size, theme or screen configuration change.
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        cache.evictAll();
+        synchronized (lastParams) {
+            for (int i = 0; i < lastParams.length; i++) {
+                lastParams[i] = null;
+            }
+        }
+    }
+
+    @Nullable
+    private static PrecomputedTextCompat.Params getLastParams(Slot slot) {
+        synchronized (lastParams) {
+            return lastParams[slot.ordinal()];
+        }
+    }
+
+    private static void measure(
+            Slot slot,
+            Post post,
+            Object source,
+            CharSequence text,
+            Theme theme,
+            PrecomputedTextCompat.Params params,
+            int batch
+    ) {
+        PrecomputedTextCompat measured = PrecomputedTextCompat.create(text, params);
+        // don't put back anything measured for a configuration that was cleared in the meantime
+        if (generation.get() == batch) {
+            cache.put(new Key(slot, post), new Entry(source, theme, params, measured));
+        }
+    }
+
+    private static boolean isCached(
+            Slot slot, Post post, Object source, Theme theme, PrecomputedTextCompat.Params params
+    ) {
+        Entry entry = cache.get(new Key(slot, post));
+        return entry != null && entry.matches(source, theme, params);
+    }
+
+    private static class Key {
+        private final Slot slot;
+        // the same board code and post number can exist on more than one site
+        private final int siteId;
+        private final String boardCode;
+        private final int no;
+
+        private Key(Slot slot, Post post) {
+            this.slot = slot;
+            this.siteId = post.board.siteId;
+            this.boardCode = post.boardCode;
+            this.no = post.no;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return slot == other.slot
+                    && siteId == other.siteId
+                    && no == other.no
+                    && boardCode.equals(other.boardCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * slot.hashCode() + siteId) + boardCode.hashCode()) + no;
+        }
+    }
+
+    private static class Entry {
+        // comments and subjects are replaced rather than modified, so they're compared by identity; titles are
+        // compared by their signature
+        private final Object source;
+        private final Theme theme;
+        private final PrecomputedTextCompat.Params params;
+        private final PrecomputedTextCompat text;
+
+        private Entry(
+                Object source, Theme theme, PrecomputedTextCompat.Params params, PrecomputedTextCompat text
+        ) {
+            this.source = source;
+            this.theme = theme;
+            this.params = params;
+            this.text = text;
+        }
+
+        private boolean matches(@NonNull Object source, Theme theme, PrecomputedTextCompat.Params params) {
+            boolean sameSource = source instanceof String ? source.equals(this.source) : source == this.source;
+            return sameSource && theme == this.theme && params.equals(this.params);
+        }
+    }
+}
@@ -425,6 +425,8 @@ public class FiltersController
                 sourceList.get(i).order = i;
             }
             DatabaseUtils.runTask(databaseFilterManager.updateFilters(sourceList));
+            // the order decides which filter wins when more than one matches
+            filterEngine.invalidateCompiledFilters();
             displayList.clear();
             displayList.addAll(sourceList);
             notifyDataSetChanged();
@@ -143,10 +143,11 @@ public class PostRepliesController
             }
         };
         recyclerView.setAdapter(adapter);
-        adapter.setThread(new ChanThread(loadable, displayingData.posts), new PostsFilter(BUMP_ORDER, null));
-        adapter.lastSeenIndicatorPosition = Integer.MIN_VALUE; //disable last seen indicator inside of reply popups
-        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
-        layoutManager.scrollToPositionWithOffset(data.position.index, data.position.top);
+        adapter.setThread(new ChanThread(loadable, displayingData.posts), new PostsFilter(BUMP_ORDER, null), () -> {
+            adapter.lastSeenIndicatorPosition = Integer.MIN_VALUE; //disable last seen indicator inside of reply popups
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            layoutManager.scrollToPositionWithOffset(data.position.index, data.position.top);
+        });
 
         recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
@@ -137,7 +137,7 @@ public abstract class ThreadController
 
     @Subscribe
     public void onEvent(RefreshUIMessage message) {
-        threadLayout.getPresenter().requestData();
+        threadLayout.getPresenter().requestFreshData();
     }
 
     @Override
@@ -41,6 +41,7 @@ import com.github.adamantcheese.chan.core.settings.PersistableChanState;
 import com.github.adamantcheese.chan.core.settings.primitives.Setting;
 import com.github.adamantcheese.chan.features.embedding.EmbeddingEngine;
 import com.github.adamantcheese.chan.ui.controller.LogsController;
+import com.github.adamantcheese.chan.utils.BitmapUtils;
 import com.github.adamantcheese.chan.utils.Logger;
 import com.skydoves.balloon.BalloonPersistence;
 
@@ -105,6 +106,12 @@ public class DeveloperSettingsController
         updatePaddings(summaryText, 0, 0, dp(context, 5), 0);
         wrapper.addView(summaryText);
 
+        TextView queryStatsText = new TextView(context);
+        queryStatsText.setText(getQueryStatsSummary());
+        queryStatsText.setOnClickListener(v -> queryStatsText.setText(getQueryStatsSummary()));
+        updatePaddings(queryStatsText, 0, 0, dp(context, 5), 0);
+        wrapper.addView(queryStatsText);
+
         //APP RESET
         Button resetDbButton = new Button(context);
         resetDbButton.setOnClickListener(v -> {
@@ -256,8 +263,18 @@ public class DeveloperSettingsController
         testWebiew.setText("Test webview cookie synchronization");
         wrapper.addView(testWebiew);
 
+        //IMAGE CACHE SUMMARY
+        TextView imageCacheText = new TextView(context);
+        imageCacheText.setText(getImageCacheSummary());
+        imageCacheText.setOnClickListener(v -> imageCacheText.setText(getImageCacheSummary()));
+        updatePaddings(imageCacheText, 0, 0, dp(context, 5), 0);
+        wrapper.addView(imageCacheText);
+
         Button clearBitmapCache = new Button(context);
-        clearBitmapCache.setOnClickListener(v -> NetUtils.clearImageCache());
+        clearBitmapCache.setOnClickListener(v -> {
+            NetUtils.clearImageCache();
+            imageCacheText.setText(getImageCacheSummary());
+        });
         clearBitmapCache.setText("Clear bitmap cache");
         wrapper.addView(clearBitmapCache);
 
@@ -272,4 +289,14 @@ public class DeveloperSettingsController
         view = scrollView;
         view.setBackgroundColor(getAttrColor(context, R.attr.backcolor));
     }
+
+    private String getQueryStatsSummary() {
+        return "Database tasks (tap to refresh):\n" + DatabaseUtils.getQueryStats();
+    }
+
+    private String getImageCacheSummary() {
+        return "Image cache summary (tap to refresh):\n" + NetUtils.imageCache.getStats() + "\n"
+                + BitmapUtils.getDecodeStats() + "\nBitmap requests: " + NetUtils.getBitmapRequestStats()
+                + "\nEmbed requests: " + EmbeddingEngine.getRequestStats();
+    }
 }
@@ -67,8 +67,8 @@ public class MainSettingsController
     public void onShow() {
         super.onShow();
 
-        int siteCount = DatabaseUtils.runTask(databaseSiteManager.getCount());
-        int filterCount = DatabaseUtils.runTask(databaseFilterManager.getCount());
+        int siteCount = DatabaseUtils.runReadTask(databaseSiteManager.getCount());
+        int filterCount = DatabaseUtils.runReadTask(databaseFilterManager.getCount());
 
         sitesSetting.setDescription(getQuantityString(R.plurals.site, siteCount));
         filtersSetting.setDescription(getQuantityString(R.plurals.filter, filterCount));
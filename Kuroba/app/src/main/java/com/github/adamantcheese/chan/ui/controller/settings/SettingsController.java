@@ -35,6 +35,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.github.adamantcheese.chan.R;
 import com.github.adamantcheese.chan.StartActivity;
 import com.github.adamantcheese.chan.controller.Controller;
+import com.github.adamantcheese.chan.ui.cell.PostTextCache;
 import com.github.adamantcheese.chan.ui.controller.ToolbarNavigationController;
 import com.github.adamantcheese.chan.ui.helper.RefreshUIMessage;
 import com.github.adamantcheese.chan.ui.settings.*;
@@ -118,6 +119,7 @@ public abstract class SettingsController
         notifyItemChanged(item);
 
         if (requiresUiRefresh.contains(item)) {
+            PostTextCache.clear();
             postToEventBus(new RefreshUIMessage(SETTINGS_REFRESH_REQUEST));
         } else if (requiresRestart.contains(item)) {
             needRestart = true;
@@ -16,20 +16,30 @@
  */
 package com.github.adamantcheese.chan.ui.helper;
 
+import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 
 import com.github.adamantcheese.chan.core.model.orm.Board;
 import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.xdrop.fuzzywuzzy.FuzzySearch;
 
 public class BoardHelper {
     public static Boards search(Boards from, final String query) {
+        return search(from, query, null);
+    }
+
+    /**
+     * @param canceled if set, scoring stops as soon as this becomes true, and whatever was scored so far is returned
+     */
+    static Boards search(Boards from, final String query, @Nullable AtomicBoolean canceled) {
         List<Pair<Board, Integer>> ratios = new ArrayList<>();
         Board exact = null;
         for (Board board : from) {
+            if (canceled != null && canceled.get()) break;
             int code = FuzzySearch.ratio(board.code, query);
             int name = FuzzySearch.ratio(board.name, query);
             int description = FuzzySearch.weightedRatio(board.description, query);
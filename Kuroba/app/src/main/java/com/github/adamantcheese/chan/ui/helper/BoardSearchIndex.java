@@ -0,0 +1,182 @@
+/*
+ * Kuroba - *chan browser https://github.com/Adamantcheese/Kuroba/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.adamantcheese.chan.ui.helper;
+
+import androidx.annotation.WorkerThread;
+
+import com.github.adamantcheese.chan.core.model.orm.Board;
+import com.github.adamantcheese.chan.core.site.common.CommonDataStructs.Boards;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Search over one list of boards, for searching as the user types on sites with thousands of boards. A query first
+ * narrows the boards down to the ones whose code, name and description contain most of the query's trigrams, and only
+ * those are scored with {@link BoardHelper#search(Boards, String)}. Queries shorter than a trigram match the boards
+ * whose code, name or description contains them.
+ * <p>
+ * A query that extends the previous one can only match a subset of what that one matched, so only those boards are
+ * checked again.
+ * <p>
+ * The board repository replaces its lists of boards instead of changing them, so an index is made for each list, and
+ * is built on the first search.
+ */
+public class BoardSearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    // a query can miss one of every this many of its trigrams, and at least one once it has two, and still match a
+    // board, to allow for typos
+    private static final int GRAMS_PER_MISS = 4;
+
+    private final Boards boards;
+
+    // built on the first search; all text is lowercase
+    private String[] texts;
+    private Map<String, int[]> postings;
+
+    // the candidates of the last query, by index into boards
+    private String lastQuery;
+    private int[] lastCandidates;
+
+    public BoardSearchIndex(Boards boards) {
+        this.boards = boards;
+    }
+
+    /**
+     * @return true if this index was made for this exact list
+     */
+    public boolean isFor(Boards boards) {
+        return this.boards == boards;
+    }
+
+    /**
+     * @param canceled the caller's flag for this search; once it's set, scoring stops and an incomplete result is
+     *                 returned, which the caller is expected to drop
+     * @return the boards matching this query, best match first
+     */
+    @WorkerThread
+    public Boards search(String query, AtomicBoolean canceled) {
+        Boards candidates;
+        synchronized (this) {
+            if (postings == null) {
+                build();
+            }
+
+            String lowerQuery = query.toLowerCase(Locale.ENGLISH);
+            int[] matched = findCandidates(lowerQuery);
+            lastQuery = lowerQuery;
+            lastCandidates = matched;
+
+            candidates = new Boards(matched.length);
+            for (int i : matched) {
+                candidates.add(boards.get(i));
+            }
+        }
+        return BoardHelper.search(candidates, query, canceled);
+    }
+
+    private void build() {
+        texts = new String[boards.size()];
+        Map<String, List<Integer>> building = new HashMap<>();
+        for (int i = 0; i < boards.size(); i++) {
+            Board board = boards.get(i);
+            texts[i] = lowercase(board.code) + "\n" + lowercase(board.name) + "\n" + lowercase(board.description);
+            for (String gram : getGrams(texts[i])) {
+                List<Integer> posting = building.get(gram);
+                if (posting == null) {
+                    posting = new ArrayList<>();
+                    building.put(gram, posting);
+                }
+                posting.add(i);
+            }
+        }
+
+        postings = new HashMap<>(building.size());
+        for (Map.Entry<String, List<Integer>> entry : building.entrySet()) {
+            int[] posting = new int[entry.getValue().size()];
+            for (int i = 0; i < posting.length; i++) {
+                posting[i] = entry.getValue().get(i);
+            }
+            postings.put(entry.getKey(), posting);
+        }
+    }
+
+    private static int allowedMisses(int gramCount) {
+        return gramCount >= 2 ? Math.max(1, gramCount / GRAMS_PER_MISS) : 0;
+    }
+
+    private int[] findCandidates(String query) {
+        Set<String> grams = getGrams(query);
+        int allowedMisses = allowedMisses(grams.size());
+        // the last query's candidates are only a superset of this one's if it was matched the same way
+        boolean extendsLast = lastQuery != null
+                && query.startsWith(lastQuery)
+                && (query.length() < GRAM_LENGTH) == (lastQuery.length() < GRAM_LENGTH)
+                && allowedMisses(getGrams(lastQuery).size()) == allowedMisses;
+
+        List<Integer> matched = new ArrayList<>();
+        if (query.length() < GRAM_LENGTH) {
+            if (extendsLast) {
+                for (int i : lastCandidates) {
+                    if (texts[i].contains(query)) matched.add(i);
+                }
+            } else {
+                for (int i = 0; i < texts.length; i++) {
+                    if (texts[i].contains(query)) matched.add(i);
+                }
+            }
+        } else if (extendsLast) {
+            for (int i : lastCandidates) {
+                int misses = 0;
+                for (String gram : grams) {
+                    if (!texts[i].contains(gram) && ++misses > allowedMisses) break;
+                }
+                if (misses <= allowedMisses) matched.add(i);
+            }
+        } else {
+            int[] counts = new int[texts.length];
+            for (String gram : grams) {
+                int[] posting = postings.get(gram);
+                if (posting == null) continue;
+                for (int i : posting) {
+                    counts[i]++;
+                }
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] >= grams.size() - allowedMisses) matched.add(i);
+            }
+        }
+
+        int[] result = new int[matched.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = matched.get(i);
+        }
+        return result;
+    }
+
+    private static Set<String> getGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static String lowercase(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -51,7 +51,8 @@ public class PostHelper {
             SimpleDateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM, Locale.getDefault());
     private static final Date tmpDate = new Date();
 
-    public static String getLocalDate(Post post) {
+    // also called off the main thread, when titles are built ahead of time
+    public static synchronized String getLocalDate(Post post) {
         tmpDate.setTime(SECONDS.toMillis(post.time));
         return dateFormat.format(tmpDate);
     }
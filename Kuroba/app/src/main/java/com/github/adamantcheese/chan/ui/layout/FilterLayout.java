@@ -344,10 +344,10 @@ public class FilterLayout
 
     private void updateFilterValidity() {
         int extraFlags = (filter.type & FilterType.FLAG_CODE.flag) != 0 ? Pattern.CASE_INSENSITIVE : 0;
-        boolean valid = !TextUtils.isEmpty(filter.pattern) && filterEngine.compile(filter.pattern, extraFlags) != null;
+        boolean valid = !TextUtils.isEmpty(filter.pattern) && FilterEngine.compile(filter.pattern, extraFlags) != null;
         pattern.setError(valid ? null : getString(R.string.filter_invalid_pattern));
         boolean negValid = TextUtils.isEmpty(filter.negativePattern)
-                || filterEngine.compile(filter.negativePattern, extraFlags) != null;
+                || FilterEngine.compile(filter.negativePattern, extraFlags) != null;
         negativePattern.setError(negValid ? null : getString(R.string.filter_invalid_pattern));
 
         if (callback != null) {
@@ -31,6 +31,7 @@ import android.view.*;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.*;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 
@@ -214,12 +215,12 @@ public class ThreadLayout
     }
 
     @Override
-    public void showPosts(ChanThread thread, PostsFilter filter) {
+    public void showPosts(ChanThread thread, PostsFilter filter, @Nullable Runnable onShown) {
         if (replyButton.getVisibility() != VISIBLE && !(thread.loadable.site instanceof ExternalSiteArchive)) {
             replyButton.show();
         }
 
-        threadListLayout.showPosts(thread, filter, visible != Visible.THREAD);
+        threadListLayout.showPosts(thread, filter, visible != Visible.THREAD, onShown);
 
         switchVisible(Visible.THREAD);
         callback.onShowPosts(thread.loadable);
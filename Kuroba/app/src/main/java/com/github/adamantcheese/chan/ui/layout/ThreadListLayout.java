@@ -31,6 +31,7 @@ import android.view.animation.DecelerateInterpolator;
 import android.widget.*;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.*;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
@@ -253,8 +254,12 @@ public class ThreadListLayout
         }
     }
 
-    public void showPosts(ChanThread thread, PostsFilter filter, boolean initial) {
+    /**
+     * @param onShown optional, called once the posts are displayed
+     */
+    public void showPosts(ChanThread thread, PostsFilter filter, boolean initial, @Nullable Runnable onShown) {
         showingThread = thread;
+        Runnable onPostsShown = onShown;
         if (initial) {
             reply.getPresenter().bindLoadable(thread.loadable);
             RecyclerView.LayoutManager prevManager = recyclerView.getLayoutManager();
@@ -264,17 +269,23 @@ public class ThreadListLayout
             int index = thread.loadable.listViewIndex;
             int top = thread.loadable.listViewTop;
 
-            switch (postViewMode) {
-                case LIST:
-                case GRID:
-                    ((LinearLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(index, top);
-                    break;
-                case STAGGER:
-                    ((StaggeredGridLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(index,
-                            top
-                    );
-                    break;
-            }
+            // the posts are set asynchronously, so scroll once they're there, otherwise there's nothing to scroll to
+            onPostsShown = () -> {
+                switch (postViewMode) {
+                    case LIST:
+                    case GRID:
+                        ((LinearLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(index, top);
+                        break;
+                    case STAGGER:
+                        ((StaggeredGridLayoutManager) recyclerView.getLayoutManager()).scrollToPositionWithOffset(index,
+                                top
+                        );
+                        break;
+                }
+                if (onShown != null) {
+                    onShown.run();
+                }
+            };
 
             party();
             santa();
@@ -283,7 +294,7 @@ public class ThreadListLayout
         setFastScroll(true);
 
         showError(null);
-        postAdapter.setThread(thread, filter);
+        postAdapter.setThread(thread, filter, onPostsShown);
     }
 
     public boolean onBack() {
@@ -448,7 +459,7 @@ public class ThreadListLayout
         if (showingThread.loadable.isThreadMode()) {
             openSearch(false);
         }
-        showPosts(new ChanThread(Loadable.dummyLoadable(), Collections.emptyList()), null, false);
+        showPosts(new ChanThread(Loadable.dummyLoadable(), Collections.emptyList()), null, false, null);
         recyclerView.removeItemDecoration(PARTY);
         recyclerView.removeItemDecoration(SANTA);
     }
@@ -19,7 +19,6 @@ package com.github.adamantcheese.chan.ui.view;
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
 import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
-import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.BUFFER_CONVERTER;
 import static com.github.adamantcheese.chan.core.net.NetUtilsClasses.BitmapResult;
 import static com.github.adamantcheese.chan.ui.widget.CancellableToast.showToast;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getDefaultMuteState;
@@ -30,6 +29,7 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.*;
 import android.graphics.drawable.BitmapDrawable;
+import android.net.Uri;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
 import android.view.View;
@@ -70,7 +70,7 @@ import java.util.regex.Pattern;
 
 import okhttp3.Call;
 import okhttp3.HttpUrl;
-import okio.Buffer;
+import okhttp3.OkHttpClient;
 import pl.droidsonroids.gif.GifDrawable;
 import pl.droidsonroids.gif.GifImageView;
 
@@ -96,6 +96,8 @@ public class MultiImageView
     private Mode mode = Mode.UNLOADED;
     private Call thumbnailRequest;
     private Call request;
+    // the media cache file currently shown, kept from being trimmed until this view lets go of it
+    private File mediaFile;
 
     private boolean hasContent = false;
     private boolean requestedBackgroundOpacity = ChanSettings.useOpaqueBackgrounds.get();
@@ -294,6 +296,8 @@ public class MultiImageView
             request = null;
         }
 
+        setMediaFile(null);
+
         Player exoPlayer = getExoplayerPlayer();
         if (exoPlayer != null) {
             // ExoPlayer will keep loading resources if we don't release it here.
@@ -399,24 +403,18 @@ public class MultiImageView
             request = null;
         }
 
-        request = NetUtils.makeRequest(NetUtils.applicationClient.getHttpRedirectClient(),
-                postImage.imageUrl,
-                BUFFER_CONVERTER,
-                new NetUtilsClasses.MainThreadResponseResult<>(new NetUtilsClasses.ResponseResult<Buffer>() {
-                    @Override
-                    public void onFailure(Exception e) {
-                        processError(e);
-                    }
+        requestMediaFile(NetUtils.applicationClient.getHttpRedirectClient(), new NetUtilsClasses.ResponseResult<File>() {
+            @Override
+            public void onFailure(Exception e) {
+                processError(e);
+            }
 
-                    @Override
-                    public void onSuccess(Buffer result) {
-                        request = null;
-                        setBitImageFileInternal(result, true);
-                    }
-                }),
-                this,
-                NetUtilsClasses.ONE_DAY_CACHE
-        );
+            @Override
+            public void onSuccess(File result) {
+                request = null;
+                setBitImageFileInternal(result, true);
+            }
+        });
     }
 
     private void setGif() {
@@ -427,39 +425,79 @@ public class MultiImageView
             request = null;
         }
 
-        request = NetUtils.makeRequest(NetUtils.applicationClient,
+        requestMediaFile(NetUtils.applicationClient, new NetUtilsClasses.ResponseResult<File>() {
+            @Override
+            public void onFailure(Exception e) {
+                processError(e);
+            }
+
+            @Override
+            public void onSuccess(File result) {
+                request = null;
+                if (!hasContent || mode == Mode.GIFIMAGE) {
+                    setGifFile(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Full-size media is streamed into a disk cache file rather than held on the heap, and opened from that file.
+     *
+     * @param client the client to make the request with, if the media isn't already cached
+     * @param result called on the main thread with the cached file
+     */
+    private void requestMediaFile(OkHttpClient client, NetUtilsClasses.ResponseResult<File> result) {
+        File cached = MediaDiskCache.get(postImage.imageUrl);
+        if (cached != null) {
+            setMediaFile(cached);
+            result.onSuccess(cached);
+            return;
+        }
+
+        // the media cache keeps the file, so OkHttp's cache doesn't need a second copy of it
+        request = NetUtils.makeRequest(client,
                 postImage.imageUrl,
-                BUFFER_CONVERTER,
-                new NetUtilsClasses.MainThreadResponseResult<>(new NetUtilsClasses.ResponseResult<Buffer>() {
+                new MediaDiskCache.FileConverter(postImage.imageUrl),
+                new NetUtilsClasses.MainThreadResponseResult<>(new NetUtilsClasses.ResponseResult<File>() {
                     @Override
                     public void onFailure(Exception e) {
-                        processError(e);
+                        result.onFailure(e);
                     }
 
                     @Override
-                    public void onSuccess(Buffer result) {
-                        request = null;
-                        if (!hasContent || mode == Mode.GIFIMAGE) {
-                            setGifFile(result);
-                        }
+                    public void onSuccess(File file) {
+                        setMediaFile(file);
+                        result.onSuccess(file);
                     }
                 }),
                 this,
-                NetUtilsClasses.ONE_DAY_CACHE
+                NetUtilsClasses.NO_CACHE
         );
     }
 
-    private void setGifFile(Buffer buffer) {
+    private void setMediaFile(@Nullable File file) {
+        if (file != null) {
+            MediaDiskCache.acquire(file);
+        }
+        if (mediaFile != null) {
+            MediaDiskCache.release(mediaFile);
+        }
+        mediaFile = file;
+    }
+
+    private void setGifFile(File file) {
         GifDrawable drawable;
         try {
-            drawable = new GifDrawable(buffer.peek().readByteArray());
+            // frames are decoded from the file as needed, instead of from a copy of it on the heap
+            drawable = new GifDrawable(file);
 
             // For single frame gifs, use the scaling image instead
             // The region decoder doesn't work for gifs, so we unfortunately
             // have to use the more memory intensive non tiling mode.
             if (drawable.getNumberOfFrames() == 1) {
                 drawable.recycle();
-                setBitImageFileInternal(buffer, false);
+                setBitImageFileInternal(file, false);
                 return;
             }
         } catch (IOException e) {
@@ -629,9 +667,9 @@ public class MultiImageView
         requestedBackgroundOpacity = !requestedBackgroundOpacity;
     }
 
-    private void setBitImageFileInternal(Buffer buffer, boolean tiling) {
+    private void setBitImageFileInternal(File file, boolean tiling) {
         final CustomScaleImageView image = new CustomScaleImageView(getContext());
-        image.setImage(ImageSource.buffer(buffer).tiling(tiling));
+        image.setImage(ImageSource.uri(Uri.fromFile(file)).tiling(tiling));
         //this is required because unlike the other views, if we don't have layout dimensions, the callback won't be called
         //see https://github.com/davemorrissey/subsampling-scale-image-view/issues/143
         addView(image, 0, new LayoutParams(MATCH_PARENT, MATCH_PARENT));
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.graphics.RectF;
 
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView;
+import com.davemorrissey.labs.subscaleview.decoder.SkiaPooledImageRegionDecoder;
 import com.github.adamantcheese.chan.utils.Logger;
 
 public class CustomScaleImageView
@@ -31,6 +32,8 @@ public class CustomScaleImageView
 
     public CustomScaleImageView(Context context) {
         super(context);
+        // full size images are opened from files, so tiles can be decoded in parallel
+        setRegionDecoderClass(SkiaPooledImageRegionDecoder.class);
         setOnImageEventListener(new DefaultOnImageEventListener() {
             @Override
             public void onReady() {
@@ -0,0 +1,122 @@
+package com.github.adamantcheese.chan.utils;
+
+import static java.lang.Runtime.getRuntime;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import java.util.*;
+
+/**
+ * A small pool of bitmaps that are no longer displayed anywhere, to be reused as {@link
+ * android.graphics.BitmapFactory.Options#inBitmap} targets instead of allocating a new bitmap for every decode.<br>
+ * Bitmaps are keyed by config and allocation size; any pooled bitmap with the same config that is at least as large as
+ * (but not wastefully larger than) the requested size can be reused. Only put bitmaps in here that nothing else holds a
+ * reference to.
+ */
+public class BitmapPool {
+    // keep this small, it's only meant to absorb the churn of decoding thumbnails
+    private static final long MAX_POOL_BYTES = Math.min(getRuntime().maxMemory() / 32, 16 * 1024 * 1024);
+    // don't hand out a bitmap more than this many times larger than what is needed
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> pool =
+            new EnumMap<>(Bitmap.Config.class);
+    // insertion order, used to evict the oldest bitmaps first
+    private static final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+    private static long pooledBytes;
+
+    private static long hits;
+    private static long misses;
+
+    /**
+     * @return a pooled bitmap that can hold a width x height bitmap of the given config, or null if there isn't one;
+     * the returned bitmap is removed from the pool
+     */
+    @Nullable
+    public static synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (width <= 0 || height <= 0 || config == null) return null;
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = pool.get(config);
+        int required = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = sizes == null ? null : sizes.ceilingEntry(required);
+        if (entry == null || entry.getKey() > required * MAX_SIZE_MULTIPLE) {
+            misses++;
+            return null;
+        }
+        Bitmap bitmap = entry.getValue().pop();
+        if (entry.getValue().isEmpty()) {
+            sizes.remove(entry.getKey());
+        }
+        order.remove(bitmap);
+        pooledBytes -= bitmap.getAllocationByteCount();
+        hits++;
+        return bitmap;
+    }
+
+    /**
+     * @param bitmap a bitmap that is no longer referenced anywhere else; if it can't be pooled, it is recycled
+     */
+    public static synchronized void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || size > MAX_POOL_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        TreeMap<Integer, ArrayDeque<Bitmap>> sizes = pool.get(bitmap.getConfig());
+        if (sizes == null) {
+            sizes = new TreeMap<>();
+            pool.put(bitmap.getConfig(), sizes);
+        }
+        ArrayDeque<Bitmap> bitmaps = sizes.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            sizes.put(size, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        order.add(bitmap);
+        pooledBytes += size;
+        trimTo(MAX_POOL_BYTES);
+    }
+
+    public static synchronized void clear() {
+        trimTo(0);
+    }
+
+    public static synchronized String getStats() {
+        return "Pool: " + order.size() + " bitmaps, " + (pooledBytes / 1024) + "KiB; " + hits + " hits, " + misses
+                + " misses";
+    }
+
+    private static void trimTo(long maxBytes) {
+        while (pooledBytes > maxBytes && !order.isEmpty()) {
+            Bitmap eldest = order.poll();
+            int size = eldest.getAllocationByteCount();
+            TreeMap<Integer, ArrayDeque<Bitmap>> sizes = pool.get(eldest.getConfig());
+            if (sizes != null) {
+                ArrayDeque<Bitmap> bitmaps = sizes.get(size);
+                if (bitmaps != null) {
+                    bitmaps.remove(eldest);
+                    if (bitmaps.isEmpty()) {
+                        sizes.remove(size);
+                    }
+                }
+            }
+            pooledBytes -= size;
+            eldest.recycle();
+        }
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.adamantcheese.chan.utils;
+
+import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
+import static com.github.adamantcheese.chan.core.net.NetUtils.MB;
+import static com.github.adamantcheese.chan.core.repository.BitmapRepository.rs;
+import static java.lang.Runtime.getRuntime;
+
+import android.graphics.*;
+import android.graphics.Bitmap.CompressFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+import androidx.renderscript.*;
+
+import com.github.adamantcheese.chan.core.presenter.ImageReencodingPresenter.ImageOptions;
+
+import java.io.*;
+
+import kotlin.random.Random;
+
+/**
+ * Re-encodes reply attachments while keeping the amount of memory used under a ceiling.<br>
+ * The only full-size bitmap is the output, which has to be held in full to be compressed. The source is never decoded
+ * at full size; it is decoded in horizontal strips, sampled down as far as the output allows, and each strip is scaled
+ * and rotated straight into the output. Blurring is done in strips as well, with enough overlap between them that the
+ * result is the same as blurring the whole image at once.<br>
+ * Output files are kept in their own directory; only the latest one is kept.
+ */
+public class BitmapReencoder {
+    private static final String TAG = "BitmapReencoder";
+    private static final File REENCODE_DIR = new File(getCacheDir(), "reencoded");
+
+    public static final long DEFAULT_MEMORY_CEILING = getRuntime().maxMemory() / 3;
+
+    // the least amount of memory to leave for decoding and blurring strips
+    private static final long MIN_STRIP_BYTES = 4 * MB;
+    // extra sampled rows decoded around each strip, so that filtering doesn't leave seams between strips
+    private static final int STRIP_OVERLAP = 2;
+    private static final float BLUR_RADIUS = 16f;
+    private static final int BLUR_OVERLAP = (int) Math.ceil(BLUR_RADIUS);
+    private static final int PIXEL_DIFF = 5;
+
+    private final long memoryCeiling;
+
+    /**
+     * @param memoryCeiling the most bitmap memory a re-encode may use at once; if the output image alone would take
+     *                      too much of this, it is made smaller
+     */
+    public BitmapReencoder(long memoryCeiling) {
+        this.memoryCeiling = Math.max(memoryCeiling, 2 * MIN_STRIP_BYTES);
+    }
+
+    /**
+     * @param input   the image to re-encode; this is not modified
+     * @param options what to do to the image
+     * @param format  the format to encode the output in
+     * @return a new file with the re-encoded image
+     */
+    public File reencode(@NonNull File input, @NonNull ImageOptions options, @Nullable CompressFormat format)
+            throws IOException {
+        if (options.areOptionsInvalid()) throw new IllegalArgumentException("Image options not formatted correctly.");
+        if (format == null) throw new IllegalArgumentException("Unknown image format.");
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(input.getAbsolutePath(), bounds);
+        int sourceWidth = bounds.outWidth;
+        int sourceHeight = bounds.outHeight;
+        if (sourceWidth <= 0 || sourceHeight <= 0) throw new IOException("Could not decode image.");
+
+        float scale = (100f - options.reducePercent) / 100f;
+        int outputWidth = Math.max(1, Math.round(sourceWidth * scale));
+        int outputHeight = Math.max(1, Math.round(sourceHeight * scale));
+
+        // the output has to fit in full; if it doesn't leave enough room for the strips, shrink it
+        long maxOutputBytes = memoryCeiling - MIN_STRIP_BYTES;
+        long outputBytes = (long) outputWidth * outputHeight * 4;
+        if (outputBytes > maxOutputBytes) {
+            double shrink = Math.sqrt((double) maxOutputBytes / outputBytes);
+            outputWidth = Math.max(1, (int) (outputWidth * shrink));
+            outputHeight = Math.max(1, (int) (outputHeight * shrink));
+            outputBytes = (long) outputWidth * outputHeight * 4;
+            Logger.w(TAG,
+                    "Output is too large for the memory ceiling, reducing to " + outputWidth + "x" + outputHeight
+            );
+        }
+        long stripBytes = memoryCeiling - outputBytes;
+
+        int rotation = options.fixExif ? getRotationDegrees(input) : 0;
+        boolean swapDimensions = rotation == 90 || rotation == 270;
+        Bitmap output = Bitmap.createBitmap(swapDimensions ? outputHeight : outputWidth,
+                swapDimensions ? outputWidth : outputHeight,
+                Bitmap.Config.ARGB_8888
+        );
+        try {
+            drawSource(input, output, sourceWidth, sourceHeight, outputWidth, outputHeight, rotation, stripBytes);
+            if (options.changeImageChecksum) {
+                changeChecksum(output);
+            }
+            if (options.blur && rs != null) {
+                blur(output, stripBytes);
+            }
+            return write(output, format, options.reencodeQuality);
+        } finally {
+            output.recycle();
+        }
+    }
+
+    /**
+     * Decodes the source in strips, and draws them scaled and rotated into the output.
+     */
+    private static void drawSource(
+            File input,
+            Bitmap output,
+            int sourceWidth,
+            int sourceHeight,
+            int outputWidth,
+            int outputHeight,
+            int rotation,
+            long stripBytes
+    )
+            throws IOException {
+        // the largest power of two that doesn't sample the source below the output size
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= outputWidth && sourceHeight / (sampleSize * 2) >= outputHeight) {
+            sampleSize *= 2;
+        }
+
+        // maps source coordinates onto the output
+        Matrix matrix = new Matrix();
+        matrix.setScale(outputWidth / (float) sourceWidth, outputHeight / (float) sourceHeight);
+        matrix.postRotate(rotation);
+        // rotating around the origin moves the image out of the bitmap, so move it back in
+        switch (rotation) {
+            case 90:
+                matrix.postTranslate(outputHeight, 0);
+                break;
+            case 180:
+                matrix.postTranslate(outputWidth, outputHeight);
+                break;
+            case 270:
+                matrix.postTranslate(0, outputWidth);
+                break;
+        }
+
+        Canvas canvas = new Canvas(output);
+        canvas.concat(matrix);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(input.getAbsolutePath(), false);
+        } catch (IOException e) {
+            decoder = null;
+        }
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSize;
+        opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        opts.inMutable = true;
+
+        if (decoder == null) {
+            // not a format the region decoder supports; decoding at the sample size is the best that can be done
+            Logger.w(TAG, "Could not open a region decoder, decoding at 1/" + sampleSize + " instead");
+            Bitmap sampled = BitmapFactory.decodeFile(input.getAbsolutePath(), opts);
+            if (sampled == null) throw new IOException("Could not decode image.");
+            canvas.drawBitmap(sampled, null, new RectF(0, 0, sourceWidth, sourceHeight), paint);
+            sampled.recycle();
+            return;
+        }
+
+        Bitmap strip = null;
+        int stripDecodeRows = 0;
+        try {
+            // half the budget for a decoded strip, which is reused for the next one, the other half as slack
+            long sampledRowBytes = ((long) sourceWidth / sampleSize + 1) * 4;
+            int sampledRows = (int) Math.min(sourceHeight / sampleSize + 1, stripBytes / 2 / sampledRowBytes);
+            int stripRows = Math.max(sampledRows - 2 * STRIP_OVERLAP, 8) * sampleSize;
+            int overlapRows = STRIP_OVERLAP * sampleSize;
+            for (int top = 0; top < sourceHeight; top += stripRows) {
+                int bottom = Math.min(sourceHeight, top + stripRows);
+                int decodeTop = Math.max(0, top - overlapRows);
+                int decodeBottom = Math.min(sourceHeight, bottom + overlapRows);
+
+                // strips are all the same size except the last one, so the previous one can usually be reused
+                opts.inBitmap = strip != null && stripDecodeRows == decodeBottom - decodeTop ? strip : null;
+                Bitmap decoded;
+                try {
+                    decoded = decoder.decodeRegion(new Rect(0, decodeTop, sourceWidth, decodeBottom), opts);
+                } catch (IllegalArgumentException e) {
+                    if (opts.inBitmap == null) throw e;
+                    opts.inBitmap = null;
+                    decoded = decoder.decodeRegion(new Rect(0, decodeTop, sourceWidth, decodeBottom), opts);
+                }
+                if (decoded == null) throw new IOException("Could not decode image.");
+                if (strip != null && strip != decoded) {
+                    strip.recycle();
+                }
+                strip = decoded;
+                stripDecodeRows = decodeBottom - decodeTop;
+
+                // only draw this strip's own rows; the overlap is only there for filtering
+                canvas.save();
+                canvas.clipRect(0, top, sourceWidth, bottom);
+                canvas.drawBitmap(strip, null, new RectF(0, decodeTop, sourceWidth, decodeBottom), paint);
+                canvas.restore();
+            }
+        } finally {
+            if (strip != null) {
+                strip.recycle();
+            }
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Blurs the image in strips. Each strip is blurred along with the rows around it that the blur reaches, taken
+     * from before any blurring was applied to them.
+     */
+    private static void blur(Bitmap image, long stripBytes) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // an input and an output bitmap per strip
+        long rowBytes = (long) width * 4 * 2;
+        int stripRows = (int) Math.max(BLUR_OVERLAP * 2, Math.min(height, stripBytes / rowBytes - 2 * BLUR_OVERLAP));
+
+        Paint copy = new Paint();
+        copy.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        Canvas imageCanvas = new Canvas(image);
+        ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
+        script.setRadius(BLUR_RADIUS);
+        // unblurred copy of the rows just above the current strip
+        Bitmap rowsAbove = null;
+        try {
+            for (int top = 0; top < height; top += stripRows) {
+                int bottom = Math.min(height, top + stripRows);
+                int inputTop = Math.max(0, top - BLUR_OVERLAP);
+                int inputBottom = Math.min(height, bottom + BLUR_OVERLAP);
+                int inputHeight = inputBottom - inputTop;
+
+                Bitmap in = Bitmap.createBitmap(width, inputHeight, Bitmap.Config.ARGB_8888);
+                Canvas inCanvas = new Canvas(in);
+                inCanvas.drawBitmap(image,
+                        new Rect(0, top, width, inputBottom),
+                        new Rect(0, top - inputTop, width, inputHeight),
+                        copy
+                );
+                if (rowsAbove != null) {
+                    inCanvas.drawBitmap(rowsAbove, 0, 0, copy);
+                    rowsAbove.recycle();
+                    rowsAbove = null;
+                }
+                if (bottom < height) {
+                    int nextInputTop = Math.max(0, bottom - BLUR_OVERLAP);
+                    rowsAbove = Bitmap.createBitmap(image, 0, nextInputTop, width, bottom - nextInputTop);
+                }
+
+                Bitmap out = Bitmap.createBitmap(width, inputHeight, Bitmap.Config.ARGB_8888);
+                Allocation inAllocation = Allocation.createFromBitmap(rs, in);
+                Allocation outAllocation = Allocation.createFromBitmap(rs, out);
+                script.setInput(inAllocation);
+                script.forEach(outAllocation);
+                outAllocation.copyTo(out);
+                inAllocation.destroy();
+                outAllocation.destroy();
+                in.recycle();
+
+                imageCanvas.drawBitmap(out,
+                        new Rect(0, top - inputTop, width, bottom - inputTop),
+                        new Rect(0, top, width, bottom),
+                        copy
+                );
+                out.recycle();
+            }
+        } finally {
+            script.destroy();
+            if (rowsAbove != null) {
+                rowsAbove.recycle();
+            }
+        }
+    }
+
+    /**
+     * Slightly changes one pixel of the image to change its checksum.
+     */
+    private static void changeChecksum(Bitmap bitmap) {
+        int randomX = Math.abs(Random.Default.nextInt()) % bitmap.getWidth();
+        int randomY = Math.abs(Random.Default.nextInt()) % bitmap.getHeight();
+
+        // one pixel is enough to change the checksum of an image
+        int pixel = bitmap.getPixel(randomX, randomY);
+
+        // NOTE: apparently when re-encoding jpegs, changing a pixel by 1 is sometimes not enough
+        // due to the jpeg's compression algorithm (it may even out this pixel with surrounding
+        // pixels like it wasn't changed at all) so we have to increase the difference a little bit
+        if (pixel - PIXEL_DIFF >= 0) {
+            pixel -= PIXEL_DIFF;
+        } else {
+            pixel += PIXEL_DIFF;
+        }
+
+        bitmap.setPixel(randomX, randomY, pixel);
+    }
+
+    private static File write(Bitmap bitmap, CompressFormat format, int quality)
+            throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        REENCODE_DIR.mkdirs();
+        File outputFile = File.createTempFile("reencoded", null, REENCODE_DIR);
+        try (FileOutputStream output = new FileOutputStream(outputFile)) {
+            if (!bitmap.compress(format, quality, output)) throw new IOException("Could not encode image.");
+        } catch (Throwable error) {
+            //noinspection ResultOfMethodCallIgnored
+            outputFile.delete();
+            throw error;
+        }
+        deleteOtherOutputs(outputFile);
+        return outputFile;
+    }
+
+    /**
+     * Earlier outputs are no longer needed once a new one is written, as each re-encode replaces the attachment.
+     */
+    private static void deleteOtherOutputs(File keep) {
+        File[] files = REENCODE_DIR.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.equals(keep) && !file.delete()) {
+                Logger.w(TAG, "Could not delete old re-encoded file: " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static int getRotationDegrees(File file) {
+        try {
+            return new ExifInterface(file.getAbsolutePath()).getRotationDegrees();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -3,8 +3,6 @@ package com.github.adamantcheese.chan.utils;
 import static android.graphics.Bitmap.CompressFormat.JPEG;
 import static android.graphics.Bitmap.CompressFormat.PNG;
 import static android.graphics.Bitmap.CompressFormat.WEBP;
-import static com.github.adamantcheese.chan.core.di.AppModule.getCacheDir;
-import static com.github.adamantcheese.chan.core.repository.BitmapRepository.rs;
 import static com.github.adamantcheese.chan.utils.AndroidUtils.getRes;
 
 import android.content.Context;
@@ -15,132 +13,27 @@ import android.util.Base64;
 
 import androidx.annotation.*;
 import androidx.core.util.Pair;
-import androidx.exifinterface.media.ExifInterface;
-import androidx.renderscript.*;
 
 import com.github.adamantcheese.chan.R;
-import com.github.adamantcheese.chan.core.presenter.ImageReencodingPresenter;
 import com.github.adamantcheese.chan.core.repository.BitmapRepository;
-import com.google.common.io.Files;
+import com.google.common.io.ByteStreams;
 
 import java.io.*;
 import java.util.Arrays;
-
-import kotlin.random.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BitmapUtils {
     private static final String TAG = "BitmapUtils";
-    private static final int PIXEL_DIFF = 5;
 
     private static final byte[] PNG_HEADER = new byte[]{(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
     private static final byte[] JPEG_HEADER = new byte[]{(byte) 0xFF, (byte) 0xD8};
     private static final byte[] WEBP_HEADER1 = new byte[]{'R', 'I', 'F', 'F'};
     private static final byte[] WEBP_HEADER2 = new byte[]{'W', 'E', 'B', 'P'};
 
-    private static final BitmapFactory.Options options = new BitmapFactory.Options();
-
-    static {
-        options.inMutable = true;
-    }
-
-    public static File reencodeBitmapFile(
-            @NonNull File inputBitmapFile,
-            @NonNull ImageReencodingPresenter.ImageOptions imageOptions,
-            @Nullable CompressFormat newFormat
-    )
-            throws IOException {
-        if (imageOptions.areOptionsInvalid())
-            throw new IllegalArgumentException("Image options not formatted correctly.");
-        Bitmap bitmap = BitmapFactory.decodeFile(inputBitmapFile.getAbsolutePath(), options);
-        Matrix matrix = new Matrix();
-
-        //slightly change one pixel of the image to change it's checksum
-        if (imageOptions.changeImageChecksum) {
-            int randomX = Math.abs(Random.Default.nextInt()) % bitmap.getWidth();
-            int randomY = Math.abs(Random.Default.nextInt()) % bitmap.getHeight();
-
-            // one pixel is enough to change the checksum of an image
-            int pixel = bitmap.getPixel(randomX, randomY);
-
-            // NOTE: apparently when re-encoding jpegs, changing a pixel by 1 is sometimes not enough
-            // due to the jpeg's compression algorithm (it may even out this pixel with surrounding
-            // pixels like it wasn't changed at all) so we have to increase the difference a little bit
-            if (pixel - PIXEL_DIFF >= 0) {
-                pixel -= PIXEL_DIFF;
-            } else {
-                pixel += PIXEL_DIFF;
-            }
-
-            bitmap.setPixel(randomX, randomY, pixel);
-        }
-
-        //scale the image down
-        if (imageOptions.reducePercent > 0) {
-            float scale = (100f - (float) imageOptions.reducePercent) / 100f;
-            matrix.setScale(scale, scale);
-        }
-
-        //fix exif
-        if (imageOptions.fixExif) {
-            try {
-                ExifInterface exif = new ExifInterface(inputBitmapFile.getAbsolutePath());
-                matrix.postRotate(exif.getRotationDegrees());
-            } catch (Exception ignored) {}
-        }
-
-        Bitmap newBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        bitmap.recycle();
-
-        if (imageOptions.blur && rs != null) {
-            Allocation input = Allocation.createFromBitmap(rs, newBitmap);
-            Allocation output = Allocation.createTyped(rs, input.getType());
-            ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
-            script.setRadius(16f);
-            script.setInput(input);
-            script.forEach(output);
-            output.copyTo(newBitmap);
-            input.destroy();
-            output.destroy();
-        }
-
-        File tempFile = null;
-
-        try {
-            deleteOldTempFiles(getCacheDir().listFiles());
-
-            tempFile = File.createTempFile("temp_file_name", null, getCacheDir());
-
-            try (FileOutputStream output = new FileOutputStream(tempFile)) {
-                newBitmap.compress(newFormat, imageOptions.reencodeQuality, output);
-            }
-
-            return tempFile;
-        } catch (Throwable error) {
-            File[] list = new File[1];
-            list[0] = tempFile;
-            deleteOldTempFiles(list);
-
-            throw error;
-        } finally {
-            if (newBitmap != null) {
-                newBitmap.recycle();
-            }
-        }
-    }
-
-    private static void deleteOldTempFiles(File[] files) {
-        if (files == null || files.length == 0) {
-            return;
-        }
-
-        for (File file : files) {
-            if ("tmp".equalsIgnoreCase(Files.getFileExtension(file.getAbsolutePath()))) {
-                if (!file.delete()) {
-                    Logger.w(TAG, "Could not delete old temp image file: " + file.getAbsolutePath());
-                }
-            }
-        }
-    }
+    private static final AtomicLong decodeCount = new AtomicLong();
+    private static final AtomicLong decodeNanos = new AtomicLong();
+    private static final AtomicLong decodeBytesAllocated = new AtomicLong();
 
     public static boolean isFileSupportedForReencoding(File file) {
         return getImageFormat(file) != null;
@@ -196,14 +89,113 @@ public class BitmapUtils {
      * @return a bitmap, scaled to the max width and height if needed
      */
     public static Bitmap decode(InputStream data, float maxWidth, float maxHeight) {
-        Bitmap tempBitmap = BitmapFactory.decodeStream(data);
-        if (tempBitmap == null || options.outWidth == -1 || options.outHeight == -1) return null;
+        byte[] bytes;
+        try {
+            // read everything first, the stream needs to be decoded twice; once for bounds and once for the image
+            bytes = ByteStreams.toByteArray(data);
+        } catch (IOException e) {
+            return null;
+        }
+        return decode(opts -> BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts), maxWidth, maxHeight);
+    }
+
+    /**
+     * Decodes a bitmap in two passes; the first only reads the image bounds, which are used to pick the largest
+     * power-of-two inSampleSize that still leaves the image at least as big as the requested size, so that the
+     * full-size image is never allocated. The decode reuses a bitmap from {@link BitmapPool} if one is available.
+     */
+    private static Bitmap decode(DecodeSource source, float maxWidth, float maxHeight) {
+        long start = System.nanoTime();
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        source.decode(opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) return null;
+
+        int desiredWidth = (int) getResizedDimension(maxWidth, maxHeight, opts.outWidth, opts.outHeight);
+        int desiredHeight = (int) getResizedDimension(maxHeight, maxWidth, opts.outHeight, opts.outWidth);
+        opts.inSampleSize = getSampleSize(opts.outWidth, opts.outHeight, desiredWidth, desiredHeight);
+        opts.inJustDecodeBounds = false;
+        opts.inMutable = true;
+        opts.inBitmap = BitmapPool.get((int) Math.ceil(opts.outWidth / (double) opts.inSampleSize),
+                (int) Math.ceil(opts.outHeight / (double) opts.inSampleSize),
+                opts.inPreferredConfig
+        );
+        boolean reused = opts.inBitmap != null;
+
+        Bitmap decoded;
+        try {
+            decoded = source.decode(opts);
+        } catch (IllegalArgumentException e) {
+            if (opts.inBitmap == null) throw e;
+            // the pooled bitmap couldn't be used for this image after all
+            opts.inBitmap.recycle();
+            opts.inBitmap = null;
+            reused = false;
+            decoded = source.decode(opts);
+        }
+        if (decoded == null) {
+            BitmapPool.put(opts.inBitmap);
+            return null;
+        }
 
-        // Scale this image, if necessary
-        return scaleBitmap(tempBitmap, maxWidth, maxHeight);
+        Bitmap result = scaleBitmap(decoded, maxWidth, maxHeight);
+        long time = System.nanoTime() - start;
+        long allocated = (reused ? 0 : decoded.getAllocationByteCount()) + (result != decoded
+                ? result.getAllocationByteCount()
+                : 0);
+        decodeCount.incrementAndGet();
+        decodeNanos.addAndGet(time);
+        decodeBytesAllocated.addAndGet(allocated);
+        Logger.vd(TAG,
+                "Decoded %dx%d at 1/%d to %dx%d in %dus, allocated %dKiB%s",
+                opts.outWidth,
+                opts.outHeight,
+                opts.inSampleSize,
+                result.getWidth(),
+                result.getHeight(),
+                TimeUnit.NANOSECONDS.toMicros(time),
+                allocated / 1024,
+                reused ? " (reused pooled bitmap)" : ""
+        );
+        return result;
+    }
+
+    /**
+     * @return the largest power of two sample size that keeps both dimensions at or above the desired ones
+     */
+    private static int getSampleSize(int actualWidth, int actualHeight, int desiredWidth, int desiredHeight) {
+        int sampleSize = 1;
+        if (desiredWidth <= 0 || desiredHeight <= 0) return sampleSize;
+        while (actualWidth / (sampleSize * 2) >= desiredWidth && actualHeight / (sampleSize * 2) >= desiredHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    public static String getDecodeStats() {
+        long count = decodeCount.get();
+        return "Decodes: " + count + ", avg " + (count == 0
+                ? 0
+                : TimeUnit.NANOSECONDS.toMicros(decodeNanos.get() / count)) + "us, " + (decodeBytesAllocated.get()
+                / 1024) + "KiB allocated total\n" + BitmapPool.getStats();
     }
 
     private static Bitmap scaleBitmap(Bitmap input, float maxWidth, float maxHeight) {
+        Bitmap bitmap = scaleDown(input, maxWidth, maxHeight);
+        if (bitmap != input) {
+            // the intermediate isn't referenced anywhere, so it can be used for a later decode
+            BitmapPool.put(input);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param input     the bitmap to scale; this is left untouched
+     * @param maxWidth  the max width of the image, 0 to leave as-is
+     * @param maxHeight the max height of the image, 0 to leave as-is
+     * @return a new bitmap scaled down to fit the max width and height, or the input if it already fits
+     */
+    public static Bitmap scaleDown(Bitmap input, float maxWidth, float maxHeight) {
         int actualWidth = input.getWidth();
         int actualHeight = input.getHeight();
 
@@ -212,14 +204,11 @@ public class BitmapUtils {
         float desiredHeight = getResizedDimension(maxHeight, maxWidth, actualHeight, actualWidth);
 
         // If necessary, scale down to the maximal acceptable size.
-        Bitmap bitmap;
         if (actualWidth > desiredWidth || actualHeight > desiredHeight) {
-            bitmap = Bitmap.createScaledBitmap(input, (int) desiredWidth, (int) desiredHeight, true);
-            input.recycle();
+            return Bitmap.createScaledBitmap(input, (int) desiredWidth, (int) desiredHeight, true);
         } else {
-            bitmap = input;
+            return input;
         }
-        return bitmap;
     }
 
     private static float getResizedDimension(
@@ -252,8 +241,8 @@ public class BitmapUtils {
      * @return a bitmap, scaled to the max width and height if needed
      */
     public static Bitmap decodeFile(File file, float maxWidth, float maxHeight) {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            return BitmapUtils.decode(fis, maxWidth, maxHeight);
+        try {
+            return decode(opts -> BitmapFactory.decodeFile(file.getAbsolutePath(), opts), maxWidth, maxHeight);
         } catch (Throwable e) {
             Logger.w(TAG, "", e);
             return null;
@@ -332,4 +321,8 @@ public class BitmapUtils {
     public interface ImageDecoderCallback {
         void onImageBitmap(Bitmap bitmap);
     }
+
+    private interface DecodeSource {
+        Bitmap decode(BitmapFactory.Options opts);
+    }
 }
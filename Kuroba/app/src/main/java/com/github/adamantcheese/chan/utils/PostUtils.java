@@ -39,34 +39,21 @@ public class PostUtils {
     }
 
     public static Post findPostById(int id, @Nullable ChanThread thread) {
-        if (thread != null) {
-            for (Post post : thread.getPosts()) {
-                if (post.no == id) {
-                    return post;
-                }
-            }
-        }
-        return null;
+        return thread == null ? null : thread.getReplyGraph().getPost(id);
     }
 
-    public static Set<Post> findPostWithReplies(int id, List<Post> posts) {
-        Set<Post> postsSet = new HashSet<>();
-        findPostWithRepliesRecursive(id, posts, postsSet);
-        return postsSet;
+    /**
+     * Finds a post by it's id and then finds all posts that has replied to this post recursively
+     */
+    public static Set<Post> findPostWithReplies(int id, @Nullable ChanThread thread) {
+        return thread == null ? new HashSet<>() : thread.getReplyGraph().findPostWithReplies(id);
     }
 
     /**
-     * Finds a post by it's id and then finds all posts that has replied to this post recursively
+     * Same as above, for posts that aren't in a thread yet
      */
-    private static void findPostWithRepliesRecursive(int id, List<Post> posts, Set<Post> postsSet) {
-        for (Post post : posts) {
-            if (post.no == id && !postsSet.contains(post)) {
-                postsSet.add(post);
-                for (Integer replyId : post.repliesFrom) {
-                    findPostWithRepliesRecursive(replyId, posts, postsSet);
-                }
-            }
-        }
+    public static Set<Post> findPostWithReplies(int id, List<Post> posts) {
+        return ReplyGraph.build(posts, Collections.emptySet(), null).findPostWithReplies(id);
     }
 
     /**